@@ -0,0 +1,46 @@
+package com.github.onsdigital.rekey.benchmark;
+
+import com.github.onsdigital.rekey.files.FileArchiver;
+import com.github.onsdigital.rekey.files.FileArchiverImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Benchmark {@link FileArchiverImpl#createTarGz} - archive the whole keyring to a tar.gz.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@State(Scope.Benchmark)
+public class FileArchiverBenchmark {
+
+    private Path tarFile;
+
+    @Setup
+    public void setUp(KeyringState state) {
+        this.tarFile = state.zebedeeDir.resolve("keyring-backup.tar.gz");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(tarFile);
+    }
+
+    @Benchmark
+    public void createTarGz(KeyringState state) throws Exception {
+        FileArchiver archiver = new FileArchiverImpl();
+        archiver.createTarGz(state.keyringDir, tarFile, (p) -> Files.isRegularFile(p));
+    }
+}
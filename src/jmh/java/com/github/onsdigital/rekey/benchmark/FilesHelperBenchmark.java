@@ -0,0 +1,32 @@
+package com.github.onsdigital.rekey.benchmark;
+
+import com.github.onsdigital.rekey.files.FilesHelper;
+import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Benchmark {@link FilesHelperImpl#listFiles} - enumerate the keyring dir with the same filter used by the rekey
+ * command.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class FilesHelperBenchmark {
+
+    @Benchmark
+    public List<Path> listFiles(KeyringState state) throws Exception {
+        FilesHelper filesHelper = new FilesHelperImpl();
+        return filesHelper.listFiles(state.keyringDir,
+                (p) -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(".txt"));
+    }
+}
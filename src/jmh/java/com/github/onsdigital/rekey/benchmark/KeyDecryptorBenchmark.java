@@ -0,0 +1,31 @@
+package com.github.onsdigital.rekey.benchmark;
+
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.KeyDecryptor;
+import com.github.onsdigital.rekey.encryption.KeyDecryptorImpl;
+import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Benchmark {@link KeyDecryptorImpl#decreptKeys} - read and decrypt every key file in the keyring.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class KeyDecryptorBenchmark {
+
+    @Benchmark
+    public List<CollectionKey> decryptKeys(KeyringState state) throws Exception {
+        KeyDecryptor decryptor = new KeyDecryptorImpl(new FilesHelperImpl(), (p) -> Files.isRegularFile(p));
+        return decryptor.decreptKeys(state.keyringDir, state.key, state.iv);
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.onsdigital.rekey.benchmark;
+
+import com.github.onsdigital.rekey.encryption.KeyEncryptor;
+import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Benchmark {@link KeyEncryptorImpl#encryptToFile} - encrypt every collection key with the new key and write the key
+ * files to an output keyring dir.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@State(Scope.Benchmark)
+public class KeyEncryptorBenchmark {
+
+    private Path outputDir;
+
+    @Setup
+    public void setUp(KeyringState state) throws Exception {
+        this.outputDir = Files.createDirectory(state.zebedeeDir.resolve("keyring-encrypted"));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(outputDir.toFile());
+    }
+
+    @Benchmark
+    public void encryptToFile(KeyringState state) throws Exception {
+        KeyEncryptor encryptor = new KeyEncryptorImpl();
+        encryptor.encryptToFile(state.collectionKeys, outputDir, state.newKey, state.newIv);
+    }
+}
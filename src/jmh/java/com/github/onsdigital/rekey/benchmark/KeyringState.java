@@ -0,0 +1,87 @@
+package com.github.onsdigital.rekey.benchmark;
+
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared benchmark state - generates a keyring of <code>keyCount</code> collection key files encrypted with a
+ * random key/iv in a local temp dir.
+ */
+@State(Scope.Benchmark)
+public class KeyringState {
+
+    static final String KEYRING_DIR = "keyring";
+
+    @Param({"1000", "100000", "1000000"})
+    public int keyCount;
+
+    public Path zebedeeDir;
+    public Path keyringDir;
+    public SecretKey key;
+    public IvParameterSpec iv;
+    public SecretKey newKey;
+    public IvParameterSpec newIv;
+    public List<CollectionKey> collectionKeys;
+
+    private SecureRandom random = new SecureRandom();
+
+    @Setup
+    public void setUp() throws Exception {
+        // Per file logging would dominate the measurements.
+        Configurator.setRootLevel(Level.WARN);
+
+        this.zebedeeDir = Files.createTempDirectory("rekey-benchmark");
+        this.keyringDir = Files.createDirectory(zebedeeDir.resolve(KEYRING_DIR));
+
+        this.key = newSecretKey();
+        this.iv = newIV();
+        this.newKey = newSecretKey();
+        this.newIv = newIV();
+
+        this.collectionKeys = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            collectionKeys.add(new CollectionKey(newSecretKey(), "collection-" + i));
+        }
+
+        try (WorkerPool pool = new WorkerPoolImpl()) {
+            pool.start(Runtime.getRuntime().availableProcessors());
+            new KeyEncryptorImpl(pool).encryptToFile(collectionKeys, keyringDir, key, iv);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(zebedeeDir.toFile());
+    }
+
+    SecretKey newSecretKey() {
+        byte[] b = new byte[16];
+        random.nextBytes(b);
+        return new SecretKeySpec(b, "AES");
+    }
+
+    IvParameterSpec newIV() {
+        byte[] b = new byte[16];
+        random.nextBytes(b);
+        return new IvParameterSpec(b);
+    }
+}
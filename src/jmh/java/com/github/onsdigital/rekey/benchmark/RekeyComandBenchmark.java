@@ -0,0 +1,95 @@
+package com.github.onsdigital.rekey.benchmark;
+
+import com.github.onsdigital.rekey.RekeyComand;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import com.github.onsdigital.rekey.config.ConfigParserImpl;
+import com.github.onsdigital.rekey.encryption.KeyDecryptorImpl;
+import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import com.github.onsdigital.rekey.files.DurableFileWriterImpl;
+import com.github.onsdigital.rekey.files.FileArchiverImpl;
+import com.github.onsdigital.rekey.files.FilesHelper;
+import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import com.github.onsdigital.rekey.files.KeyFileIOImpl;
+import com.github.onsdigital.rekey.report.RekeyReportImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import picocli.CommandLine;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.function.Predicate;
+
+/**
+ * Benchmark {@link RekeyComand#call()} end to end - backup, decrypt, re-encrypt, delete and verify.
+ * <p>
+ * Each invocation rekeys the keyring in place, so the current and new keys are swapped after every invocation and
+ * the backup tar.gz removed, leaving the keyring ready for the next invocation.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@State(Scope.Benchmark)
+public class RekeyComandBenchmark {
+
+    private RekeyComand cmd;
+    private boolean swapped;
+
+    @Setup(Level.Invocation)
+    public void setUp(KeyringState state) {
+        FilesHelper filesHelper = new FilesHelperImpl();
+        Predicate<Path> keyFileFilter = (p) -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(".txt");
+        WorkerPool workerPool = new WorkerPoolImpl();
+
+        this.cmd = new RekeyComand(new ConfigParserImpl(),
+                new KeyDecryptorImpl(filesHelper, keyFileFilter, workerPool),
+                new KeyEncryptorImpl(workerPool),
+                new FileArchiverImpl(), filesHelper, keyFileFilter, workerPool, new DurableFileWriterImpl(),
+                new KeyFileIOImpl(workerPool), new RekeyReportImpl());
+
+        SecretKey current = swapped ? state.newKey : state.key;
+        IvParameterSpec currentIv = swapped ? state.newIv : state.iv;
+        SecretKey next = swapped ? state.key : state.newKey;
+        IvParameterSpec nextIv = swapped ? state.iv : state.newIv;
+
+        new CommandLine(cmd).parseArgs(
+                "-k=" + encode(current.getEncoded()),
+                "-i=" + encode(currentIv.getIV()),
+                "-k2=" + encode(next.getEncoded()),
+                "-i2=" + encode(nextIv.getIV()),
+                "-z=" + state.zebedeeDir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown(KeyringState state) throws Exception {
+        try (DirectoryStream<Path> backups = Files.newDirectoryStream(state.zebedeeDir, "keyring-backup-*")) {
+            for (Path p : backups) {
+                Files.delete(p);
+            }
+        }
+        swapped = !swapped;
+    }
+
+    @Benchmark
+    public Integer rekey() throws Exception {
+        return cmd.call();
+    }
+
+    private static String encode(byte[] b) {
+        return Base64.getEncoder().encodeToString(b);
+    }
+}
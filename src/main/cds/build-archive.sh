@@ -0,0 +1,38 @@
+#!/bin/sh
+#
+# Builds the AppCDS archive for rekey.jar - run by the cds profile during the package phase.
+#
+# The classes to archive are recorded from a training run of rekey against a small synthetic keyring (see the
+# generate command), then dumped into target/rekey.jsa with the target/rekey launcher that uses it. The training keys
+# below are throwaway values for the synthetic keyring only.
+#
+# Usage: build-archive.sh <java> <target-dir>
+
+set -eu
+
+JAVA="$1"
+TARGET=$(cd "$2" && pwd)
+JAR="$TARGET/rekey.jar"
+TRAINING="$TARGET/cds-training"
+CLASS_LIST="$TRAINING/rekey.classlist"
+ARCHIVE="$TARGET/rekey.jsa"
+
+KEY="AAAAAAAAAAAAAAAAAAAAAA=="
+NEW_KEY="AQEBAQEBAQEBAQEBAQEBAQ=="
+
+rm -rf "$TRAINING" "$ARCHIVE"
+mkdir -p "$TRAINING/zebedee"
+
+"$JAVA" -jar "$JAR" generate -k "$KEY" -i "$KEY" -z "$TRAINING/zebedee" -n 1000 > "$TRAINING/generate.log"
+
+"$JAVA" -XX:DumpLoadedClassList="$CLASS_LIST" -jar "$JAR" -k "$KEY" -i "$KEY" -k2 "$NEW_KEY" -i2 "$NEW_KEY" \
+    -z "$TRAINING/zebedee" > "$TRAINING/rekey.log"
+
+# The class path must match the one the launcher runs the jar with - the absolute path of rekey.jar.
+"$JAVA" -Xshare:dump -XX:SharedClassListFile="$CLASS_LIST" -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" \
+    > "$TRAINING/dump.log"
+
+cp "$(dirname "$0")/rekey" "$TARGET/rekey"
+chmod +x "$TARGET/rekey"
+
+echo "AppCDS archive created: $ARCHIVE ($(wc -l < "$CLASS_LIST") classes listed)"
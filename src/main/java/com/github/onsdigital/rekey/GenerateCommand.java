@@ -0,0 +1,212 @@
+package com.github.onsdigital.rekey;
+
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.config.ConfigParser;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.EncryptedKey;
+import com.github.onsdigital.rekey.encryption.KeyEncryptor;
+import com.github.onsdigital.rekey.files.FilesHelper;
+import com.github.onsdigital.rekey.report.ProgressLogger;
+import com.github.onsdigital.rekey.report.RekeyReport;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Generates a synthetic keyring of collection key files - encrypted in exactly the format the rekey command reads -
+ * so rekey can be load tested locally against keyrings of realistic sizes.
+ *
+ * <p>The generated collection keys are random but <b>not</b> cryptographically secure and must never be used for
+ * real collections.</p>
+ */
+@Command(name = "generate", mixinStandardHelpOptions = true,
+        description = "Generate a keyring of synthetic collection key files for load testing rekey.")
+public class GenerateCommand implements Callable<Integer> {
+
+    private static final Logger LOG = LogManager.getLogger(GenerateCommand.class);
+
+    static final String NON_KEY_FILE_EXT = ".json";
+    static final String COLLECTION_ID_PREFIX = "loadtest";
+
+    // The number of files handed to the worker pool at a time - keeps memory flat for keyrings of millions of keys.
+    static final int CHUNK_SIZE = 4096;
+
+    static final int COLLECTION_KEY_LENGTH = 16;
+
+    @Option(names = {"-k"}, required = true, paramLabel = "<key>",
+            description = "The secret key to encrypt the collection keys with, as a Base64 encoded string.")
+    private String key;
+
+    @Option(names = {"-i"}, required = true, paramLabel = "<init-vector>",
+            description = "The init vector to encrypt the collection keys with, as a Base64 encoded string.")
+    private String iv;
+
+    @Option(names = {"-z"}, required = true, paramLabel = "<dir>",
+            description = "The Zebedee root dir to create the keyring dir in. The keyring dir must not already " +
+                    "contain any files.")
+    private String zebedeeDir;
+
+    @Option(names = {"-n", "--count"}, required = true, paramLabel = "<count>",
+            description = "The number of collection key files to generate.")
+    private long count;
+
+    @Option(names = {"--corrupt"}, paramLabel = "<count>",
+            description = "The number of additional corrupt (truncated) .txt key files to generate (default: 0).")
+    private long corrupt;
+
+    @Option(names = {"--non-key"}, paramLabel = "<count>",
+            description = "The number of additional non .txt files to generate (default: 0).")
+    private long nonKey;
+
+    @Option(names = {"-t", "--threads"}, paramLabel = "<threads>",
+            description = "The number of worker threads to generate the key files with. Defaults to the number of " +
+                    "available cores.")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private ConfigParser parser;
+    private KeyEncryptor encryptor;
+    private FilesHelper filesHelper;
+    private WorkerPool workerPool;
+    private final AtomicLong generated = new AtomicLong();
+
+    /**
+     * @param parser      the {@link ConfigParser} to parse the keyring secret key and init vector with.
+     * @param encryptor   the {@link KeyEncryptor} to encrypt and write the collection keys with.
+     * @param filesHelper the filehelper to use.
+     * @param workerPool  the {@link WorkerPool} used by the encryptor, started with the requested number of threads
+     *                    when the command is run.
+     */
+    public GenerateCommand(final ConfigParser parser, KeyEncryptor encryptor, FilesHelper filesHelper,
+                           WorkerPool workerPool) {
+        this.parser = parser;
+        this.encryptor = encryptor;
+        this.filesHelper = filesHelper;
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Generate the keyring - the valid key files first then the corrupt and non key files. The files are written in
+     * chunks across the worker threads and the progress is logged periodically.
+     */
+    @Override
+    public Integer call() throws Exception {
+        if (count < 0 || corrupt < 0 || nonKey < 0) {
+            throw new RekeyException("generate file counts must not be negative");
+        }
+
+        SecretKey secretKey = parser.parseKey(key);
+        IvParameterSpec initVector = parser.parseIV(iv);
+        Path keyringDir = createKeyringDir(Paths.get(zebedeeDir));
+
+        long total = count + corrupt + nonKey;
+        LOG.info("generating keyring (keys: {}, corrupt: {}, non-key files: {}, threads: {}, dir: {})", count,
+                corrupt, nonKey, threads, keyringDir);
+
+        workerPool.start(threads);
+        generated.set(0);
+        try (ProgressLogger progress = new ProgressLogger()) {
+            progress.start(TimeUnit.SECONDS.toMillis(ProgressLogger.DEFAULT_INTERVAL_SECONDS));
+            progress.setTotal(total);
+
+            try (RekeyReport.Phase p = progress.track("generate", generated::get)) {
+                List<Long> chunk = new ArrayList<>(CHUNK_SIZE);
+                for (long i = 0; i < total; i++) {
+                    chunk.add(i);
+                    if (chunk.size() == CHUNK_SIZE || i == total - 1) {
+                        workerPool.map(chunk, (n) -> generate(n, keyringDir, secretKey, initVector));
+                        chunk.clear();
+                    }
+                }
+            }
+        } finally {
+            workerPool.close();
+        }
+
+        LOG.info("generated keyring successfully (total files: {}, dir: {})", generated.get(), keyringDir);
+        return 0;
+    }
+
+    private Path createKeyringDir(Path zebedeeRoot) throws RekeyException {
+        if (!filesHelper.exists(zebedeeRoot)) {
+            throw new RekeyException(format("{0} dir required but does not exist", zebedeeRoot));
+        }
+
+        Path keyringDir = zebedeeRoot.resolve("keyring");
+        if (!filesHelper.exists(keyringDir)) {
+            return filesHelper.createDir(keyringDir);
+        }
+
+        // Never add synthetic keys to an existing keyring.
+        if (filesHelper.countFiles(keyringDir, "*", (p) -> true) > 0) {
+            throw new RekeyException(format("generate requires an empty keyring dir but found files in: {0}",
+                    keyringDir));
+        }
+        return keyringDir;
+    }
+
+    private Void generate(long n, Path keyringDir, SecretKey secretKey, IvParameterSpec initVector)
+            throws RekeyException {
+        String collectionID = newCollectionID(n);
+
+        if (n < count + corrupt) {
+            EncryptedKey encrypted = encryptor.encryptKey(new CollectionKey(newCollectionKey(), collectionID),
+                    secretKey, initVector);
+
+            if (n >= count) {
+                // Drop the last byte so the file is no longer a whole number of cipher blocks and can't be decrypted.
+                byte[] bytes = encrypted.getEncrypted();
+                encrypted = new EncryptedKey(collectionID, Arrays.copyOf(bytes, bytes.length - 1));
+            }
+            encryptor.writeKey(encrypted, keyringDir);
+        } else {
+            writeNonKeyFile(keyringDir.resolve(collectionID + NON_KEY_FILE_EXT));
+        }
+
+        generated.incrementAndGet();
+        return null;
+    }
+
+    private void writeNonKeyFile(Path dest) throws RekeyException {
+        try {
+            Files.write(dest, "{}".getBytes(StandardCharsets.UTF_8));
+        } catch (Exception ex) {
+            throw new RekeyException(format("error writing non key file: {0}", dest), ex);
+        }
+    }
+
+    /**
+     * @return a collection ID in the same form as Zebedee's - a name followed by a 64 character hex string.
+     */
+    static String newCollectionID(long n) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder id = new StringBuilder(COLLECTION_ID_PREFIX).append(n).append('-');
+        for (int i = 0; i < 4; i++) {
+            id.append(String.format("%016x", random.nextLong()));
+        }
+        return id.toString();
+    }
+
+    private static SecretKey newCollectionKey() {
+        byte[] keyBytes = new byte[COLLECTION_KEY_LENGTH];
+        ThreadLocalRandom.current().nextBytes(keyBytes);
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+}
@@ -1,17 +1,36 @@
 package com.github.onsdigital.rekey;
 
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
 import com.github.onsdigital.rekey.config.Config;
 import com.github.onsdigital.rekey.config.ConfigParser;
 import com.github.onsdigital.rekey.config.ConfigParserImpl;
 import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.DigestingKeyDecryptor;
 import com.github.onsdigital.rekey.encryption.KeyDecryptor;
 import com.github.onsdigital.rekey.encryption.KeyDecryptorImpl;
+import com.github.onsdigital.rekey.encryption.KeyDigests;
 import com.github.onsdigital.rekey.encryption.KeyEncryptor;
 import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import com.github.onsdigital.rekey.encryption.KeySlab;
+import com.github.onsdigital.rekey.encryption.SlabStorage;
+import com.github.onsdigital.rekey.files.ArchiveFormat;
+import com.github.onsdigital.rekey.files.ArchiveWriter;
+import com.github.onsdigital.rekey.files.DurableFileWriter;
+import com.github.onsdigital.rekey.files.DurableFileWriterImpl;
 import com.github.onsdigital.rekey.files.FileArchiver;
 import com.github.onsdigital.rekey.files.FileArchiverImpl;
 import com.github.onsdigital.rekey.files.FilesHelper;
 import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import com.github.onsdigital.rekey.files.KeyFileIO;
+import com.github.onsdigital.rekey.files.KeyFileIOImpl;
+import com.github.onsdigital.rekey.journal.RekeyJournal;
+import com.github.onsdigital.rekey.journal.RekeyJournalImpl;
+import com.github.onsdigital.rekey.pipeline.RekeyPipelineImpl;
+import com.github.onsdigital.rekey.report.Operation;
+import com.github.onsdigital.rekey.report.ProgressLogger;
+import com.github.onsdigital.rekey.report.RekeyReport;
+import com.github.onsdigital.rekey.report.RekeyReportImpl;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import picocli.CommandLine;
@@ -19,32 +38,84 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.zip.Deflater;
 import java.util.stream.Collectors;
 
-import static java.nio.file.Files.isRegularFile;
 import static java.text.MessageFormat.format;
 import static org.apache.commons.compress.utils.FileNameUtils.getExtension;
 import static org.apache.commons.lang3.StringUtils.joinWith;
 
 @Command(name = "rekey", version = "Rekey v1.0.0", mixinStandardHelpOptions = true,
-        description = "Re-encrypt all existing collection keys with a new secret key.")
+        description = "Re-encrypt all existing collection keys with a new secret key.",
+        footer = "%nUse 'generate --help' for the synthetic keyring generator used to load test rekey and " +
+                "'restore --help' to restore single collection keys from an indexed backup.")
 public class RekeyComand implements Callable<Integer> {
 
-    private static Logger LOG = LogManager.getLogger(RekeyComand.class);
     private static final String ROCKET = "\uD83D\uDE80";
     private static final String TADA = "\uD83C\uDF89";
     private static final String LOCK = "\uD83D\uDD12";
 
+    static final String KEY_FILE_GLOB = "*.txt";
+
+    static final String KEYRING_DIR = "keyring";
+
+    static final String GENERATE_CMD = "generate";
+    static final String RESTORE_CMD = "restore";
+
+    static final int DEFAULT_PARALLEL_ROOTS = 4;
+
+    static final String ROOT_THREAD_NAME_FMT = "rekey-root-{0}";
+
+    static final String DRY_RUN_DIR_PREFIX = "rekey-dry-run-";
+
+    static final String MISSING_KEYS_FMT = "expected collection keys were missing: {0}";
+
+    static final String MISMATCHED_KEYS_FMT = "collection keys did not match the original keys: {0}";
+
+    static final String STAGED_VERIFICATION_ERR_FMT = "staged keyring verification error, {0} " +
+            "\n\nThe live keyring dir has not been modified, the incomplete keyring has been left in: {1}\n";
+
     static final String VERIFICATION_ERR_FMT = "rekey verification error, expected collection keys " +
             "were missing: {0} " +
             "\n\nTo rollback these changes:" +
             "\n\t1) Untar the backup keying tar.gz: {1}" +
             "\n\t2) Rename the backup dir to \"keyring\"\n";
 
+    static final String DEEP_VERIFICATION_ERR_FMT = "rekey verification error, collection keys did not match the " +
+            "original keys: {0} " +
+            "\n\nTo rollback these changes:" +
+            "\n\t1) Untar the backup keying tar.gz: {1}" +
+            "\n\t2) Rename the backup dir to \"keyring\"\n";
+
+    static final String INCREMENTAL_VERIFICATION_ERR_FMT = "rekey verification error, {0} " +
+            "\n\nTo rollback these changes (see \"Incremental backups\" in the README):" +
+            "\n\t1) Extract every archive listed in the backup manifest: {1}" +
+            "\n\t2) Copy each key file from the dir extracted from the archive it is listed under into a new " +
+            "\"keyring\" dir\n";
+
     @Option(names = {"-k"}, required = true, paramLabel = "<current-key>",
             description = "The current Secret Key as a Base 64 encoded string.")
     private String key;
@@ -61,9 +132,145 @@ public class RekeyComand implements Callable<Integer> {
             description = "The new Init Vector to use as a Base 64 encoded string.")
     private String newIv;
 
-    @Option(names = {"-z"}, required = true, paramLabel = "<dir>",
-            description = "The CMS collection keyring directory")
-    private String zebedeeDir;
+    @Option(names = {"-z"}, paramLabel = "<dir>", split = ",",
+            description = "The CMS collection keyring directory. Repeat the option or separate the dirs with commas " +
+                    "to rekey several Zebedee roots in one run.")
+    private List<String> zebedeeDirs;
+
+    @Option(names = {"--manifest"}, paramLabel = "<file>",
+            description = "A file listing the Zebedee root dirs to rekey, one per line. Blank lines and lines " +
+                    "starting with # are ignored.")
+    private String manifest;
+
+    @Option(names = {"--parallel-roots"}, paramLabel = "<count>",
+            description = "The maximum number of Zebedee roots to rekey at the same time. The decrypt/encrypt work " +
+                    "of every root shares the same worker threads (default: 4).")
+    private int parallelRoots = DEFAULT_PARALLEL_ROOTS;
+
+    @Option(names = {"-t", "--threads"}, paramLabel = "<threads>",
+            description = "The number of worker threads to compress the backup and decrypt/encrypt the keys with " +
+                    "(default: available cores).")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = {"--virtual-threads"},
+            description = "Run each worker on a virtual thread (Java 21+) so -t can be set far higher than the number " +
+                    "of cores - blocking file I/O then releases the core to another key file. Falls back to platform " +
+                    "threads on older JVMs.")
+    private boolean virtualThreads;
+
+    @Option(names = {"--io-threads"}, paramLabel = "<threads>",
+            description = "The number of dedicated I/O threads to read and write the key files on, overlapping the " +
+                    "storage latency with the decrypt/encrypt work on the worker threads. 0 reads and writes each " +
+                    "file on the worker threads (default: ${DEFAULT-VALUE}). Ignored with --streaming.")
+    private int ioThreads;
+
+    @Option(names = {"--io-in-flight"}, paramLabel = "<count>",
+            description = "The maximum number of key files between being read/encrypted and decrypted/written " +
+                    "when --io-threads is used (default: ${DEFAULT-VALUE}).")
+    private int ioInFlight = KeyFileIOImpl.DEFAULT_MAX_IN_FLIGHT;
+
+    @Option(names = {"--streaming"},
+            description = "Decrypt, re-encrypt and write each key file on the worker threads as it is listed rather " +
+                    "than decrypting every key before encrypting any of them.")
+    private boolean streaming;
+
+    @Option(names = {"--queue-size"}, paramLabel = "<size>",
+            description = "The maximum number of key files queued for the worker threads in streaming mode " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private int queueSize = RekeyPipelineImpl.DEFAULT_QUEUE_CAPACITY;
+
+    @Option(names = {"--backup-format"}, paramLabel = "<format>",
+            description = "The keyring backup archive format, one of: ${COMPLETION-CANDIDATES} " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private ArchiveFormat backupFormat = ArchiveFormat.TAR_GZ;
+
+    @Option(names = {"--compression-level"}, paramLabel = "<level>",
+            description = "The backup deflate compression level 0-9, or -1 for the default level. Ignored for TAR " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    @Option(names = {"--incremental-backup"},
+            description = "Only archive the key files that are new or have changed since the previous backup. A " +
+                    "manifest of the content hash of every key file, chained to the previous backup's manifest, is " +
+                    "written next to the archive (keyring-backup-<timestamp>.manifest).")
+    private boolean incrementalBackup;
+
+    @Option(names = {"--backup-index"},
+            description = "Write an index of the position and SHA-256 of every key file next to the backup archive " +
+                    "(keyring-backup-<timestamp>.index) so single collection keys can be restored with the restore " +
+                    "command. Requires a TAR or TAR_GZ backup.")
+    private boolean backupIndex;
+
+    @Option(names = {"--key-slab"}, paramLabel = "<storage>",
+            description = "Hold the decrypted keys in a single compact slab instead of an object per key, one of: " +
+                    "${COMPLETION-CANDIDATES}. The slab is wiped once the keys are re-encrypted. Ignored with " +
+                    "--streaming.")
+    private SlabStorage keySlab;
+
+    @Option(names = {"--single-read"},
+            description = "Read each key file once, writing it to the backup archive and decrypting it in the same " +
+                    "pass so the backup and the rekey overlap. Implies --streaming.")
+    private boolean singleRead;
+
+    @Option(names = {"--resume"}, paramLabel = "<backup-dir>",
+            description = "Resume an interrupted streaming rekey from its keyring backup dir, skipping the keys " +
+                    "recorded as complete in its journal. Implies --streaming.")
+    private String resumeDir;
+
+    @Option(names = {"--staged"},
+            description = "Build and verify the new keyring in a staging dir, leaving the live keyring dir " +
+                    "untouched, then swap it into place with dir renames.")
+    private boolean staged;
+
+    @Option(names = {"--staging-dir"}, paramLabel = "<dir>",
+            description = "The dir to create the staging keyring in, e.g. on faster scratch storage " +
+                    "(default: the zebedee root dir). Only applies in staged mode.")
+    private String stagingDir;
+
+    @Option(names = {"--journal-batch-size"}, paramLabel = "<size>",
+            description = "The number of completed keys to buffer before syncing the rekey journal to disk " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private int journalBatchSize = RekeyJournalImpl.DEFAULT_BATCH_SIZE;
+
+    @Option(names = {"--durable"},
+            description = "Write each re-encrypted key to a temporary file, fsync it and rename it into place so the " +
+                    "new keyring survives a power loss once the rekey has completed.")
+    private boolean durable;
+
+    @Option(names = {"--sync-batch-size"}, paramLabel = "<size>",
+            description = "The number of key files to write before syncing them to disk in durable mode " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private int syncBatchSize = DurableFileWriterImpl.DEFAULT_BATCH_SIZE;
+
+    @Option(names = {"--background-sync"},
+            description = "Sync each batch of key files on a background thread while the next batch is written. " +
+                    "Only applies in durable mode.")
+    private boolean backgroundSync;
+
+    @Option(names = {"--verify-deep"},
+            description = "Decrypt every re-encrypted key with the new key and check it matches a digest of the " +
+                    "original key, rather than only checking the key file exists.")
+    private boolean verifyDeep;
+
+    @Option(names = {"--report"}, paramLabel = "<file>",
+            description = "The file to write the JSON timing report to (default: next to the keyring backup, " +
+                    "keyring-backup-<timestamp>.report.json).")
+    private String reportFile;
+
+    @Option(names = {"--dry-run"},
+            description = "Rekey a throwaway copy of the keyring in a temp workspace to measure how long the rekey " +
+                    "will take on this host. The live keyring is not modified and the timing report is printed.")
+    private boolean dryRun;
+
+    @Option(names = {"--dry-run-dir"}, paramLabel = "<dir>",
+            description = "The dir to create the --dry-run workspace in, e.g. /dev/shm for tmpfs (default: the " +
+                    "system temp dir).")
+    private String dryRunDir;
+
+    @Option(names = {"--progress-interval"}, paramLabel = "<seconds>",
+            description = "The number of seconds between progress lines (count, rate and ETA of the current phase). " +
+                    "0 disables progress logging (default: 5).")
+    private long progressInterval = ProgressLogger.DEFAULT_INTERVAL_SECONDS;
 
     private ConfigParser parser;
     private FilesHelper filesHelper;
@@ -71,90 +278,836 @@ public class RekeyComand implements Callable<Integer> {
     private KeyEncryptor encryptor;
     private FileArchiver archiver;
     private Predicate<Path> keyFileFilter;
+    private WorkerPool workerPool;
+    private DurableFileWriter fileWriter;
+    private KeyFileIO io;
+    private RekeyReport report;
+    private ProgressLogger progress;
 
     /**
+     * Construct the command without its collaborators - they are created by {@link #wire()} when the command is run.
+     * Printing the usage or rejecting an invalid command line then never initialises log4j2 or loads the rekey
+     * classes, see {@link #main(String[])}.
+     */
+    RekeyComand() {
+    }
+
+    /**
+     * Construct the command with its own worker pool, file writer, key file I/O and report.
+     *
      * @param parser
      */
     public RekeyComand(final ConfigParser parser, KeyDecryptor decryptor, KeyEncryptor encryptor,
                        FileArchiver archiver, FilesHelper filesHelper, Predicate<Path> keyFileFilter) {
+        this(parser, decryptor, encryptor, archiver, filesHelper, keyFileFilter, new WorkerPoolImpl(),
+                new DurableFileWriterImpl());
+    }
+
+    private RekeyComand(final ConfigParser parser, KeyDecryptor decryptor, KeyEncryptor encryptor,
+                        FileArchiver archiver, FilesHelper filesHelper, Predicate<Path> keyFileFilter,
+                        WorkerPool workerPool, DurableFileWriter fileWriter) {
+        this(parser, decryptor, encryptor, archiver, filesHelper, keyFileFilter, workerPool, fileWriter,
+                new KeyFileIOImpl(workerPool), new RekeyReportImpl());
+    }
+
+    /**
+     * @param parser
+     * @param workerPool the {@link WorkerPool} shared by the decryptor and encryptor, started with the requested
+     *                   number of threads when the command is run.
+     * @param fileWriter the {@link DurableFileWriter} the encryptor writes the key files with, started when durable
+     *                   writes are requested.
+     * @param io         the {@link KeyFileIO} shared by the decryptor and encryptor, started when I/O threads are
+     *                   requested.
+     * @param report     the {@link RekeyReport} the decryptor and encryptor record their per file metrics in, the
+     *                   command times each phase in it and writes it once the run has finished.
+     */
+    public RekeyComand(final ConfigParser parser, KeyDecryptor decryptor, KeyEncryptor encryptor,
+                       FileArchiver archiver, FilesHelper filesHelper, Predicate<Path> keyFileFilter,
+                       WorkerPool workerPool, DurableFileWriter fileWriter, KeyFileIO io, RekeyReport report) {
         this.parser = parser;
         this.decryptor = decryptor;
         this.encryptor = encryptor;
         this.archiver = archiver;
         this.filesHelper = filesHelper;
         this.keyFileFilter = keyFileFilter;
+        this.workerPool = workerPool;
+        this.fileWriter = fileWriter;
+        this.io = io;
+        this.report = report;
+        this.progress = new ProgressLogger();
+    }
+
+    /**
+     * Create the default collaborators for a command constructed by {@link #RekeyComand()}.
+     */
+    private void wire() {
+        this.filesHelper = new FilesHelperImpl();
+        // Match on the file name only - a stat per key file is expensive for very large keyrings. Walks that already
+        // have the attributes of each entry (the keyring backup) also require it to be a regular file.
+        this.keyFileFilter = (p) -> "txt".equals(getExtension(p.getFileName().toString()));
+        this.workerPool = new WorkerPoolImpl();
+        this.report = new RekeyReportImpl();
+        this.archiver = new FileArchiverImpl(workerPool, report);
+        this.parser = new ConfigParserImpl();
+        this.io = new KeyFileIOImpl(workerPool);
+        this.decryptor = new KeyDecryptorImpl(filesHelper, keyFileFilter, workerPool, io, report);
+        this.fileWriter = new DurableFileWriterImpl();
+        this.encryptor = new KeyEncryptorImpl(workerPool, io, fileWriter, report);
+        this.progress = new ProgressLogger();
     }
 
     /**
      * Re-encrypt the Zebedee collection keys with a new {@link SecretKey}.
      *
      * <ul>
-     *     <li>Creates a backup tar.gz so the keys can be reverted if necessary</li>
+     *     <li>Creates a backup archive (tar.gz by default) so the keys can be reverted if necessary</li>
      *     <li>Moves the current keyring dir to a backup dir and creates a new empty keyring dir.</li>
      *     <li>Decrypts the collection keys from the backup dir using the current {@link SecretKey}</li>
      *     <li>Re-encrypts the collection keys with the new {@link SecretKey} and writes them to disk in the keyring
-     *     dir</li>
+     *     dir. In streaming mode each key file is decrypted, re-encrypted and written by a worker on its own so only a
+     *     bounded number of decrypted keys are held in memory</li>
      *     <li>Removes the backup keyring dir</li>
      * </ul>
+     *
+     * <p>In streaming mode the collection IDs of the keys written are recorded in a journal next to the backup so an
+     * interrupted run can be resumed from its backup dir rather than starting again.</p>
      */
     @Override
     public Integer call() throws Exception {
-        Config cfg = parser.parseConfig(key, iv, newKey, newIv, zebedeeDir);
-        LOG.info("config parsed successfully");
+        if (parser == null) {
+            wire();
+        }
 
-        createBackup(cfg, keyFileFilter);
+        List<String> roots = zebedeeRoots();
 
-        List<CollectionKey> rawKeys = decryptor.decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv());
-        encryptor.encryptToFile(rawKeys, cfg.getKeyringDir(), cfg.getNewKey(), cfg.getNewIV());
+        workerPool.start(threads, virtualThreads);
+        if (durable) {
+            fileWriter.start(syncBatchSize, backgroundSync);
+        }
+        if (ioThreads > 0) {
+            io.start(ioThreads, ioInFlight);
+        }
+        progress.start(TimeUnit.SECONDS.toMillis(progressInterval));
 
-        // Remove the old dir as it's no longer needed (keep the tar.gz).
-        filesHelper.deleteDir(cfg.getKeyringBackupDir());
+        report.start();
+        List<RootRekey> runs = new ArrayList<>();
+        boolean success = false;
+        try {
+            Integer code;
+            if (roots.size() == 1) {
+                RootRekey run = new RootRekey(roots.get(0), false);
+                runs.add(run);
+                code = run.rekey();
+            } else {
+                code = rekeyRoots(roots, runs);
+            }
+            success = true;
+            return code;
+        } finally {
+            report.setKeyCount(runs.stream().mapToLong((r) -> r.keyCount).sum());
+            report.finish(success);
+            progress.close();
+            io.close();
+            fileWriter.close();
+            workerPool.close();
+            writeReport(runs);
+            if (dryRun) {
+                log().info("dry run timing report:\n{}", report.toJson());
+            }
+        }
+    }
 
-        verifyComplete(rawKeys, cfg);
+    /**
+     * @return the Zebedee root dirs to rekey, from -z and the manifest file, as absolute normalized paths.
+     */
+    private List<String> zebedeeRoots() throws RekeyException {
+        Set<String> roots = new LinkedHashSet<>();
+        List<String> dirs = new ArrayList<>();
+        if (zebedeeDirs != null) {
+            dirs.addAll(zebedeeDirs);
+        }
+        if (manifest != null) {
+            dirs.addAll(readManifest(Paths.get(manifest)));
+        }
 
-        LOG.info("{} rekey completed successfully {} {}", LOCK, ROCKET, TADA);
-        LOG.info("a backup of the original keyring dir has been created here: {}", cfg.getKeyringBackupTar());
+        for (String dir : dirs) {
+            // Two runs against the same keyring would each try to move it to a backup dir.
+            if (!roots.add(Paths.get(dir).toAbsolutePath().normalize().toString())) {
+                throw new RekeyException(format("zebedee root listed more than once: {0}", dir));
+            }
+        }
+
+        if (roots.isEmpty()) {
+            throw new RekeyException("zebedee root dir required, use -z or --manifest");
+        }
+        return new ArrayList<>(roots);
+    }
+
+    private List<String> readManifest(Path manifestFile) throws RekeyException {
+        try {
+            return Files.readAllLines(manifestFile, StandardCharsets.UTF_8).stream()
+                    .map(String::trim)
+                    .filter((l) -> !l.isEmpty() && !l.startsWith("#"))
+                    .collect(Collectors.toList());
+        } catch (Exception ex) {
+            throw new RekeyException(format("error reading zebedee root manifest: {0}", manifestFile), ex);
+        }
+    }
+
+    /**
+     * Rekey several Zebedee roots, up to --parallel-roots at a time. Each root is rekeyed by its own {@link RootRekey}
+     * sharing the started worker pool, key file I/O, file writer and report. The decrypt/encrypt work of every root
+     * - including the per-file tasks of the streaming pipeline - runs on the one worker pool, so the crypto threads
+     * stay bounded by -t however many roots run at once. A failed root doesn't stop the others - the outcome of each
+     * root is logged in a summary once they have all finished.
+     */
+    private Integer rekeyRoots(List<String> roots, List<RootRekey> runs) throws RekeyException {
+        if (resumeDir != null) {
+            throw new RekeyException("--resume can only be used with a single zebedee root");
+        }
+
+        if (parallelRoots < 1) {
+            throw new RekeyException(format("parallel roots must be greater than 0 but was {0}", parallelRoots));
+        }
+
+        for (String root : roots) {
+            runs.add(new RootRekey(root, true));
+        }
+
+        // Concurrent phases of different roots can't be told apart in the report counts, so a single progress line
+        // is logged for all of the roots.
+        if (progress.isStarted()) {
+            progress.setTotal(countRootKeys(roots));
+        }
+
+        log().info("rekeying zebedee roots (count: {}, parallel: {})", roots.size(), Math.min(parallelRoots,
+                roots.size()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelRoots, roots.size()),
+                newRootThreadFactory());
+        try (RekeyReport.Phase p = progress.track("rekey", () -> report.getCount(Operation.WRITE))) {
+            List<Future<?>> futures = new ArrayList<>(runs.size());
+            for (RootRekey run : runs) {
+                futures.add(executor.submit(run::run));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RekeyException("interrupted waiting for zebedee roots to be rekeyed", ex);
+        } catch (ExecutionException ex) {
+            throw new RekeyException("unexpected error rekeying zebedee roots", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long failed = logSummary(runs);
+        if (failed > 0) {
+            throw new RekeyException(format("rekey failed for {0} of {1} zebedee roots", failed, runs.size()));
+        }
         return 0;
     }
 
-    private void createBackup(Config cfg, Predicate<Path> filter) throws RekeyException {
-        // Move the current keyring dir to a backup dir.
-        filesHelper.move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
+    private long countRootKeys(List<String> roots) {
+        long total = 0;
+        for (String root : roots) {
+            try {
+                total += filesHelper.countFiles(Paths.get(root).resolve(KEYRING_DIR), KEY_FILE_GLOB, keyFileFilter);
+            } catch (RekeyException ex) {
+                // The root will fail with its own error when it is rekeyed.
+                log().debug("unable to count key files in zebedee root: {}", root);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of roots that failed.
+     */
+    private long logSummary(List<RootRekey> runs) {
+        long failed = runs.stream().filter((r) -> r.error != null).count();
+        log().info("rekey summary ({} of {} zebedee roots successful):", runs.size() - failed, runs.size());
+        for (RootRekey run : runs) {
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(run.nanos);
+            if (run.error == null) {
+                log().info("  {}: success (keys: {}, time: {}s)", run.zebedeeDir, run.keyCount, seconds);
+            } else {
+                log().info("  {}: failed (time: {}s, error: {})", run.zebedeeDir, seconds, run.error.getMessage());
+            }
+        }
+        return failed;
+    }
 
-        // TAR up the backup dir so we can rollback the change is necessary
-        LOG.info("creating keyring back up tar.gz: {}", cfg.getKeyringBackupTar());
-        archiver.createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), filter);
+    private ThreadFactory newRootThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return (r) -> {
+            Thread t = new Thread(r, format(ROOT_THREAD_NAME_FMT, count.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        };
+    }
 
-        // Create a new empty keyring dir to write the re-encrypted keys to.
-        LOG.info("creating new (empty) keyring dir: {}", cfg.getKeyringDir());
-        filesHelper.createDir(cfg.getKeyringDir());
+    private void writeReport(List<RootRekey> runs) {
+        // Every root writes the same combined report - once per distinct path.
+        Set<Path> paths = new LinkedHashSet<>();
+        for (RootRekey run : runs) {
+            if (run.reportPath != null && paths.add(run.reportPath)) {
+                writeReport(run.reportPath);
+            }
+        }
     }
 
-    public static void main(String[] args) {
-        FilesHelper filesHelper = new FilesHelperImpl();
-        Predicate<Path> keyFileFilter = (p) -> isRegularFile(p) && "txt".equals(getExtension(p.toFile().getName()));
-        FileArchiver archiver = new FileArchiverImpl();
+    private void writeReport(Path reportPath) {
+        try {
+            report.write(reportPath);
+        } catch (RekeyException ex) {
+            // Don't hide the outcome of the rekey itself.
+            log().warn("unable to write rekey report: {}", reportPath, ex);
+        }
+    }
 
-        ConfigParser parser = new ConfigParserImpl();
 
-        KeyDecryptor decryptor = new KeyDecryptorImpl(filesHelper, keyFileFilter);
-        KeyEncryptor encryptor = new KeyEncryptorImpl();
+    public static void main(String[] args) {
+        // picocli validates the required rekey options for every subcommand so generate and restore are dispatched
+        // on their own.
+        if (args.length > 0 && GENERATE_CMD.equals(args[0])) {
+            WorkerPool workerPool = new WorkerPoolImpl();
+            GenerateCommand generate = new GenerateCommand(new ConfigParserImpl(), new KeyEncryptorImpl(workerPool),
+                    new FilesHelperImpl(), workerPool);
+            System.exit(new CommandLine(generate).execute(Arrays.copyOfRange(args, 1, args.length)));
+        }
 
-        RekeyComand cmd = new RekeyComand(parser, decryptor, encryptor, archiver, filesHelper, keyFileFilter);
-        int code = new CommandLine(cmd).execute(args);
+        if (args.length > 0 && RESTORE_CMD.equals(args[0])) {
+            RestoreCommand restore = new RestoreCommand(new FileArchiverImpl());
+            System.exit(new CommandLine(restore).execute(Arrays.copyOfRange(args, 1, args.length)));
+        }
 
+        int code = new CommandLine(new RekeyComand()).execute(args);
         System.exit(code);
     }
 
-    private void verifyComplete(List<CollectionKey> expected, Config cfg) throws RekeyException {
-        List<String> missing = expected.stream()
-                .filter(key -> !filesHelper.exists(key.getKeyPath(cfg.getKeyringDir())))
-                .map(key -> key.getKeyFileName())
-                .collect(Collectors.toList());
+    /**
+     * The logger is held in a nested class so log4j2 is only initialised the first time the command logs.
+     */
+    private static Logger log() {
+        return Log.LOG;
+    }
+
+    private static final class Log {
+        private static final Logger LOG = LogManager.getLogger(RekeyComand.class);
+    }
+
+    /**
+     * The rekey of a single Zebedee root, holding the state of that root's run. The options and the (thread safe)
+     * collaborators of the command are shared by every root.
+     */
+    private final class RootRekey {
+
+        private final String zebedeeDir;
+        private final boolean multiRoot;
+        private Path reportPath;
+        private KeyDigests keyDigests;
+        private int keyCount;
+        private long nanos;
+        private Exception error;
+
+        /**
+         * @param zebedeeDir the Zebedee root dir.
+         * @param multiRoot  true if the root is one of several rekeyed at the same time.
+         */
+        RootRekey(String zebedeeDir, boolean multiRoot) {
+            this.zebedeeDir = zebedeeDir;
+            this.multiRoot = multiRoot;
+        }
+
+        /**
+         * Rekey the root as one of several, recording the outcome rather than throwing it so the other roots carry
+         * on.
+         */
+        void run() {
+            long start = System.nanoTime();
+            try {
+                rekey();
+            } catch (Exception ex) {
+                error = ex;
+                log().error("rekey failed for zebedee root: {}", zebedeeDir, ex);
+            } finally {
+                nanos = System.nanoTime() - start;
+            }
+        }
+
+        private Integer rekey() throws Exception {
+            if (resumeDir != null) {
+                recreateKeyringDir();
+            }
+
+            Config cfg = parser.parseConfig(key, iv, newKey, newIv, zebedeeDir, backupFormat);
+            log().info("config parsed successfully");
+
+            reportPath = reportFile != null ? Paths.get(reportFile) : cfg.getReportFile();
+
+            keyDigests = verifyDeep ? new KeyDigests() : null;
+
+            if (staged && (singleRead || resumeDir != null)) {
+                throw new RekeyException("--staged cannot be combined with --single-read or --resume");
+            }
+
+            if (incrementalBackup && singleRead) {
+                throw new RekeyException("--incremental-backup cannot be combined with --single-read");
+            }
+
+            if (backupIndex && (incrementalBackup || singleRead || backupFormat == ArchiveFormat.ZIP)) {
+                throw new RekeyException("--backup-index cannot be combined with --incremental-backup, --single-read " +
+                        "or a ZIP backup");
+            }
+
+            if (!dryRun) {
+                return rekey(cfg);
+            }
+
+            if (resumeDir != null) {
+                throw new RekeyException("--dry-run cannot be combined with --resume");
+            }
+            return dryRun(cfg);
+        }
+
+        /**
+         * Run the full rekey against a copy of the keyring in a throwaway workspace, removing the workspace afterwards.
+         * The keyring files are hard linked into the workspace when possible - every mode only ever reads the original
+         * key files and writes the new keys to new files, so the live keyring content is never modified.
+         */
+        private Integer dryRun(Config cfg) throws Exception {
+            Path parent = dryRunDir != null ? Paths.get(dryRunDir) : Paths.get(System.getProperty("java.io.tmpdir"));
+            Path workspace = filesHelper.createTempDir(parent, DRY_RUN_DIR_PREFIX);
+            Config dryRunCfg = cfg.withZebedeeRoot(workspace);
+
+            // Only a report requested explicitly is written - the default location is in the workspace.
+            if (reportFile == null) {
+                reportPath = null;
+            }
+
+            try {
+                log().info("dry run, copying keyring dir to workspace: {}", workspace);
+                boolean linked;
+                try (RekeyReport.Phase p = report.phase("workspace")) {
+                    linked = filesHelper.linkDir(cfg.getKeyringDir(), dryRunCfg.getKeyringDir());
+                }
+                log().info("dry run keyring {} (keyring dir: {})", linked ? "hard linked" : "copied",
+                        dryRunCfg.getKeyringDir());
+
+                rekey(dryRunCfg);
+                log().info("dry run completed successfully, the live keyring dir has not been modified: {}",
+                        cfg.getKeyringDir());
+                return 0;
+            } catch (Exception ex) {
+                throw new RekeyException(format("dry run failed, the live keyring dir has not been modified: {0}",
+                        cfg.getKeyringDir()), ex);
+            } finally {
+                filesHelper.deleteDir(workspace);
+            }
+        }
+
+        private Integer rekey(Config cfg) throws Exception {
+
+            if (resumeDir == null) {
+                countKeys(cfg.getKeyringDir());
+            }
+
+            Collection<String> collectionIDs;
+            if (staged) {
+                collectionIDs = rekeyStaged(cfg);
+            } else if (resumeDir != null) {
+                cfg = cfg.withKeyringBackupDir(Paths.get(resumeDir));
+                reportPath = reportFile != null ? reportPath : cfg.getReportFile();
+                collectionIDs = resume(cfg);
+            } else if (singleRead) {
+                moveKeyring(cfg);
+                collectionIDs = rekeySingleRead(cfg);
+            } else {
+                createBackup(cfg, keyFileFilter);
+                collectionIDs = streaming ? rekeyStreaming(cfg) : rekeyAll(cfg);
+            }
+
+            keyCount = collectionIDs.size();
+
+            // The new keys must be on disk before the old dir is removed.
+            sync();
+
+            // Remove the old dir as it's no longer needed (keep the tar.gz).
+            try (RekeyReport.Phase p = report.phase("delete")) {
+                filesHelper.deleteDir(cfg.getKeyringBackupDir());
+            }
+
+            Config rekeyed = cfg;
+            verify(collectionIDs, cfg,
+                    (missing) -> verificationError(rekeyed, VERIFICATION_ERR_FMT, MISSING_KEYS_FMT, missing),
+                    (mismatched) -> verificationError(rekeyed, DEEP_VERIFICATION_ERR_FMT, MISMATCHED_KEYS_FMT,
+                            mismatched));
+
+            // The journal is only needed to resume an incomplete run.
+            filesHelper.deleteFile(cfg.getJournalFile());
+
+            if (!dryRun) {
+                log().info("{} rekey completed successfully {} {}", LOCK, ROCKET, TADA);
+                log().info("a backup of the original keyring dir has been created here: {}", cfg.getKeyringBackupTar());
+                if (incrementalBackup) {
+                    log().info("the backup is incremental, to restore it extract every archive listed in its " +
+                            "manifest: {}", cfg.getBackupManifest());
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the verification error with the rollback steps for the backup created - an incremental backup is
+         * spread across the archives listed in its manifest rather than held in a single archive.
+         */
+        private String verificationError(Config cfg, String fmt, String keysFmt, String keys) {
+            if (incrementalBackup) {
+                return format(INCREMENTAL_VERIFICATION_ERR_FMT, format(keysFmt, keys), cfg.getBackupManifest());
+            }
+            return format(fmt, keys, cfg.getKeyringBackupTar());
+        }
+
+        private Collection<String> rekeyStaged(Config cfg) throws RekeyException {
+            Path stagingRoot = stagingDir != null ? Paths.get(stagingDir) : cfg.getZebedeeRoot();
+            Config stageCfg = cfg.forStaging(cfg.getKeyringStagingDir(stagingRoot));
+
+            // The live keyring is read but not modified until the cutover, so it can be archived in place.
+            log().info("creating keyring back up {}: {}", cfg.getBackupFormat(), cfg.getKeyringBackupTar());
+            try (RekeyReport.Phase p = phase("tar", Operation.ARCHIVE)) {
+                archiveKeyring(cfg, cfg.getKeyringDir(), keyFileFilter);
+            }
+
+            log().info("creating staging keyring dir: {}", stageCfg.getKeyringDir());
+            filesHelper.createDir(stageCfg.getKeyringDir());
+
+            Collection<String> collectionIDs = streaming ? rekeyStreaming(stageCfg, null) : rekeyAll(stageCfg);
+            sync();
+
+            verify(collectionIDs, stageCfg,
+                    (missing) -> format(STAGED_VERIFICATION_ERR_FMT, format(MISSING_KEYS_FMT, missing),
+                            stageCfg.getKeyringDir()),
+                    (mismatched) -> format(STAGED_VERIFICATION_ERR_FMT, format(MISMATCHED_KEYS_FMT, mismatched),
+                            stageCfg.getKeyringDir()));
+
+            // A rename is only atomic within a file system so a keyring staged elsewhere is copied alongside the live
+            // keyring first.
+            Path newKeyring = stageCfg.getKeyringDir();
+            if (!cfg.getZebedeeRoot().equals(stagingRoot)) {
+                newKeyring = cfg.getKeyringStagingDir(cfg.getZebedeeRoot());
+                log().info("copying staging keyring dir to: {}", newKeyring);
+                try (RekeyReport.Phase p = report.phase("copy")) {
+                    filesHelper.copyDir(stageCfg.getKeyringDir(), newKeyring, fileWriter.isStarted());
+                    filesHelper.deleteDir(stageCfg.getKeyringDir());
+                }
+            }
+
+            try (RekeyReport.Phase p = report.phase("cutover")) {
+                cutover(cfg, newKeyring);
+            }
+            return collectionIDs;
+        }
+
+        /**
+         * Time a phase of the run in the report, logging its progress from the per key file count of an operation.
+         */
+        private RekeyReport.Phase phase(String name, Operation op) {
+            RekeyReport.Phase phase = report.phase(name);
+            if (multiRoot) {
+                return phase;
+            }
+
+            RekeyReport.Phase tracker = progress.track(name, () -> report.getCount(op));
+            return () -> {
+                tracker.close();
+                phase.close();
+            };
+        }
+
+        /**
+         * Count the key files to be rekeyed once up front so the progress lines can include an estimate of the time
+         * remaining.
+         */
+        private void countKeys(Path keyringDir) throws RekeyException {
+            if (progress.isStarted() && !multiRoot) {
+                progress.setTotal(filesHelper.countFiles(keyringDir, KEY_FILE_GLOB, keyFileFilter));
+            }
+        }
+
+        private void sync() throws RekeyException {
+            try (RekeyReport.Phase p = report.phase("sync")) {
+                fileWriter.sync();
+            }
+        }
+
+        private void cutover(Config cfg, Path newKeyring) throws RekeyException {
+            log().info("swapping staged keyring into place: {}", newKeyring);
+            filesHelper.move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
+            try {
+                filesHelper.move(newKeyring, cfg.getKeyringDir());
+            } catch (RekeyException ex) {
+                // Put the original keyring back rather than leave Zebedee without one.
+                filesHelper.move(cfg.getKeyringBackupDir(), cfg.getKeyringDir());
+                throw ex;
+            }
+
+            if (fileWriter.isStarted()) {
+                filesHelper.syncDir(cfg.getZebedeeRoot());
+            }
+        }
+
+        /**
+         * @return the {@link KeyDecryptor} to decrypt the original keys with - recording a digest of each key when the
+         * re-encrypted keys are to be deep verified.
+         */
+        private KeyDecryptor rekeyDecryptor() {
+            return keyDigests == null ? decryptor : new DigestingKeyDecryptor(decryptor, keyDigests);
+        }
+
+        private Collection<String> rekeyAll(Config cfg) throws RekeyException {
+            if (keySlab != null) {
+                return rekeySlab(cfg);
+            }
+
+            List<CollectionKey> rawKeys;
+            try (RekeyReport.Phase p = phase("decrypt", Operation.DECRYPT)) {
+                rawKeys = rekeyDecryptor().decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv());
+            }
+
+            try (RekeyReport.Phase p = phase("encrypt", Operation.WRITE)) {
+                encryptor.encryptToFile(rawKeys, cfg.getKeyringDir(), cfg.getNewKey(), cfg.getNewIV());
+            }
+
+            return rawKeys.stream()
+                    .map(CollectionKey::getCollectionID)
+                    .collect(Collectors.toList());
+        }
+
+        private Collection<String> rekeySlab(Config cfg) throws RekeyException {
+            KeySlab slab;
+            try (RekeyReport.Phase p = phase("decrypt", Operation.DECRYPT)) {
+                slab = rekeyDecryptor().decryptToSlab(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv(), keySlab);
+            }
+
+            try (KeySlab keys = slab; RekeyReport.Phase p = phase("encrypt", Operation.WRITE)) {
+                encryptor.encryptToFile(keys, cfg.getKeyringDir(), cfg.getNewKey(), cfg.getNewIV());
+                return keys.getCollectionIDs();
+            }
+        }
+
+        private Collection<String> rekeyStreaming(Config cfg) throws RekeyException {
+            try (RekeyJournal journal = new RekeyJournalImpl(cfg.getJournalFile(), journalBatchSize, fileWriter)) {
+                journal.recordBackupComplete();
+                return rekeyStreaming(cfg, journal);
+            }
+        }
+
+        private Collection<String> rekeyStreaming(Config cfg, RekeyJournal journal) throws RekeyException {
+            // Decrypt and encrypt overlap when streaming so are timed together as the rekey phase.
+            try (
+                    RekeyReport.Phase p = phase("rekey", Operation.WRITE);
+                    DirectoryStream<Path> keyFiles = filesHelper.streamFiles(cfg.getKeyringBackupDir(), KEY_FILE_GLOB,
+                            keyFileFilter)
+            ) {
+                return new RekeyPipelineImpl(rekeyDecryptor(), encryptor, workerPool, queueSize, journal)
+                        .rekey(keyFiles, cfg);
+            } catch (IOException ex) {
+                throw new RekeyException("error closing keyring dir stream", ex);
+            }
+        }
+
+        private Collection<String> rekeySingleRead(Config cfg) throws RekeyException {
+            log().info("creating keyring back up {} while rekeying: {}", cfg.getBackupFormat(),
+                    cfg.getKeyringBackupTar());
+
+            try (RekeyJournal journal = new RekeyJournalImpl(cfg.getJournalFile(), journalBatchSize, fileWriter)) {
+                Collection<String> collectionIDs;
+
+                // The archive is completed and flushed when the writer is closed, which must happen before the backup
+                // dir can be deleted.
+                try (
+                        RekeyReport.Phase p = phase("rekey", Operation.WRITE);
+                        ArchiveWriter backup = archiver.openArchive(cfg.getKeyringBackupTar(), cfg.getBackupFormat(),
+                                compressionLevel);
+                        DirectoryStream<Path> keyFiles = filesHelper.streamFiles(cfg.getKeyringBackupDir(),
+                                KEY_FILE_GLOB, keyFileFilter)
+                ) {
+                    collectionIDs = new RekeyPipelineImpl(rekeyDecryptor(), encryptor, workerPool, queueSize, journal)
+                            .rekey(keyFiles, cfg, backup);
+                } catch (IOException ex) {
+                    throw new RekeyException("error closing keyring dir stream", ex);
+                }
+
+                journal.recordBackupComplete();
+                return collectionIDs;
+            }
+        }
+
+        private Collection<String> resume(Config cfg) throws RekeyException {
+            if (!filesHelper.exists(cfg.getKeyringBackupDir())) {
+                throw new RekeyException(format("resume keyring backup dir required but does not exist: {0}",
+                        cfg.getKeyringBackupDir()));
+            }
+
+            countKeys(cfg.getKeyringBackupDir());
+
+            try (RekeyJournal journal = new RekeyJournalImpl(cfg.getJournalFile(), journalBatchSize, fileWriter)) {
+                log().info("resuming rekey from: {} (keys already completed: {})", cfg.getKeyringBackupDir(),
+                        journal.getCompletedCount());
+
+                // A single read run may have been interrupted before its backup archive was completed - the backup dir
+                // is never modified so the archive can be recreated from it.
+                if (!journal.isBackupComplete()) {
+                    log().info("recreating incomplete keyring back up {}: {}", cfg.getBackupFormat(),
+                            cfg.getKeyringBackupTar());
+                    try (RekeyReport.Phase p = phase("tar", Operation.ARCHIVE)) {
+                        archiveKeyring(cfg, cfg.getKeyringBackupDir(), keyFileFilter);
+                    }
+                    journal.recordBackupComplete();
+                }
+
+                return rekeyStreaming(cfg, journal);
+            }
+        }
+
+        private void createBackup(Config cfg, Predicate<Path> filter) throws RekeyException {
+            // The new keyring dir is created straight after the move so a run interrupted while archiving can be
+            // resumed - --resume requires the keyring dir.
+            moveKeyring(cfg);
+
+            // TAR up the backup dir so we can rollback the change is necessary
+            log().info("creating keyring back up {}: {}", cfg.getBackupFormat(), cfg.getKeyringBackupTar());
+            try (RekeyReport.Phase p = phase("tar", Operation.ARCHIVE)) {
+                archiveKeyring(cfg, cfg.getKeyringBackupDir(), filter);
+            }
+        }
+
+        private void archiveKeyring(Config cfg, Path src, Predicate<Path> filter) throws RekeyException {
+            if (backupIndex) {
+                archiver.createIndexedArchive(src, cfg.getKeyringBackupTar(), filter, cfg.getBackupFormat(),
+                        compressionLevel);
+                return;
+            }
+
+            if (!incrementalBackup) {
+                archiver.createArchive(src, cfg.getKeyringBackupTar(), filter, cfg.getBackupFormat(), compressionLevel);
+                return;
+            }
+
+            Path previous = findPreviousBackupManifest(cfg);
+            log().info("previous keyring backup manifest: {}", previous == null ? "none" : previous);
+            archiver.createIncrementalArchive(src, cfg.getKeyringBackupTar(), filter, cfg.getBackupFormat(),
+                    compressionLevel, previous);
+        }
+
+        /**
+         * @return the manifest of the most recent earlier backup in the Zebedee root, or null if there isn't one. The
+         * backup dir names end with a sortable timestamp so the latest backup has the greatest name.
+         */
+        private Path findPreviousBackupManifest(Config cfg) throws RekeyException {
+            Path latest = null;
+            try (DirectoryStream<Path> manifests = filesHelper.streamFiles(cfg.getZebedeeRoot(),
+                    Config.BACKUP_MANIFEST_GLOB, (p) -> !p.equals(cfg.getBackupManifest()))) {
+                for (Path p : manifests) {
+                    if (latest == null || p.getFileName().toString().compareTo(latest.getFileName().toString()) > 0) {
+                        latest = p;
+                    }
+                }
+            } catch (IOException ex) {
+                throw new RekeyException("error closing zebedee root dir stream", ex);
+            }
+            return latest;
+        }
+
+        private void moveKeyring(Config cfg) throws RekeyException {
+            // Move the current keyring dir to a backup dir.
+            try (RekeyReport.Phase p = report.phase("move")) {
+                filesHelper.move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
+            }
+            createKeyringDir(cfg);
+        }
+
+        /**
+         * Recreate the keyring dir of a run interrupted between moving the keyring to the backup dir and creating the
+         * new keyring dir, so the run can be resumed.
+         */
+        private void recreateKeyringDir() throws RekeyException {
+            Path keyringDir = Paths.get(zebedeeDir).resolve(Config.KEYRING_DIR);
+            if (filesHelper.exists(Paths.get(zebedeeDir)) && !filesHelper.exists(keyringDir)) {
+                log().info("recreating missing keyring dir to resume rekey: {}", keyringDir);
+                filesHelper.createDir(keyringDir);
+            }
+        }
+
+        private void createKeyringDir(Config cfg) throws RekeyException {
+            // Create a new empty keyring dir to write the re-encrypted keys to.
+            log().info("creating new (empty) keyring dir: {}", cfg.getKeyringDir());
+            try (RekeyReport.Phase p = report.phase("move")) {
+                filesHelper.createDir(cfg.getKeyringDir());
+            }
+        }
+
+        /**
+         * Verify the new keyring contains a key file for each expected collection - listing the keyring dir once rather
+         * than checking each file - and in deep mode that each re-encrypted key matches the original key.
+         */
+        private void verify(Collection<String> expectedIDs, Config cfg, Function<String, String> missingErr,
+                            Function<String, String> mismatchErr) throws RekeyException {
+            try (RekeyReport.Phase p = report.phase("verify")) {
+                verifyComplete(expectedIDs, cfg, missingErr);
+                if (keyDigests != null) {
+                    verifyKeys(expectedIDs, cfg, mismatchErr);
+                }
+            }
+        }
+
+        private void verifyComplete(Collection<String> expectedIDs, Config cfg, Function<String, String> missingErr)
+                throws RekeyException {
+            Set<String> missing = expectedIDs.stream()
+                    .map(CollectionKey::toKeyFileName)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+
+            try (DirectoryStream<Path> keyFiles = filesHelper.streamFiles(cfg.getKeyringDir(), KEY_FILE_GLOB,
+                    keyFileFilter)) {
+                for (Path p : keyFiles) {
+                    missing.remove(p.getFileName().toString());
+                }
+            } catch (IOException ex) {
+                throw new RekeyException("error closing keyring dir stream", ex);
+            }
+
+            if (!missing.isEmpty()) {
+                throw new RekeyException(missingErr.apply(joinWith(",", missing)));
+            }
+        }
+
+        private void verifyKeys(Collection<String> expectedIDs, Config cfg, Function<String, String> mismatchErr)
+                throws RekeyException {
+            // Keys rekeyed by an earlier (resumed) run were never decrypted by this one so have no digest to check.
+            List<String> ids = expectedIDs.stream().filter(keyDigests::contains).collect(Collectors.toList());
+            if (ids.size() < expectedIDs.size()) {
+                log().warn("collection keys rekeyed by a previous run have not been deep verified (count: {})",
+                        expectedIDs.size() - ids.size());
+            }
+
+            log().info("deep verifying re-encrypted collection keys (count: {}, threads: {})", ids.size(),
+                    workerPool.getThreads());
+
+            List<String> mismatched = workerPool.map(ids, (id) -> {
+                Path keyFile = cfg.getKeyringDir().resolve(CollectionKey.toKeyFileName(id));
+                try {
+                    CollectionKey k = decryptor.verifyKey(keyFile, cfg.getNewKey(), cfg.getNewIV());
+                    return keyDigests.matches(k) ? null : keyFile.getFileName().toString();
+                } catch (RekeyException ex) {
+                    return keyFile.getFileName().toString();
+                }
+            }).stream().filter(Objects::nonNull).collect(Collectors.toList());
 
-        if (missing != null && missing.size() > 0) {
-            throw new RekeyException(format(VERIFICATION_ERR_FMT, joinWith(",", missing), cfg.getKeyringBackupTar(),
-                    cfg.getKeyringBackupDir()));
+            if (!mismatched.isEmpty()) {
+                throw new RekeyException(mismatchErr.apply(joinWith(",", mismatched)));
+            }
         }
     }
 }
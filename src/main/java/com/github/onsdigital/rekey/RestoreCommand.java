@@ -0,0 +1,62 @@
+package com.github.onsdigital.rekey;
+
+import com.github.onsdigital.rekey.files.FileArchiver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores individual collection key files from a keyring backup archive created with <code>--backup-index</code>,
+ * reading only the part of the archive holding each requested key rather than extracting the whole backup.
+ *
+ * <p>The key files are restored exactly as they were backed up - encrypted with the secret key in use before the
+ * rekey.</p>
+ */
+@Command(name = "restore", mixinStandardHelpOptions = true,
+        description = "Restore single collection key files from an indexed keyring backup archive.")
+public class RestoreCommand implements Callable<Integer> {
+
+    private static final Logger LOG = LogManager.getLogger(RestoreCommand.class);
+
+    @Option(names = {"-b", "--backup"}, required = true, paramLabel = "<archive>",
+            description = "The keyring backup archive (.tar or .tar.gz) to restore from. Its index " +
+                    "(keyring-backup-<timestamp>.index) must be in the same dir.")
+    private String backup;
+
+    @Option(names = {"-c", "--collection"}, required = true, split = ",", paramLabel = "<collection-id>",
+            description = "The ID of a collection to restore the key file of. Repeat the option or give a comma " +
+                    "separated list to restore several keys.")
+    private List<String> collectionIDs;
+
+    @Option(names = {"-o", "--output"}, required = true, paramLabel = "<dir>",
+            description = "The dir to write the restored key files to, e.g. the keyring dir. Created if it does not " +
+                    "exist, existing key files with the same name are replaced.")
+    private String outputDir;
+
+    private FileArchiver archiver;
+
+    /**
+     * @param archiver the {@link FileArchiver} to restore the key files with.
+     */
+    public RestoreCommand(final FileArchiver archiver) {
+        this.archiver = archiver;
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        long start = System.nanoTime();
+        List<Path> restored = archiver.restoreKeys(Paths.get(backup), collectionIDs, Paths.get(outputDir));
+
+        LOG.info("restored {} collection key(s) from {} in {}ms", restored.size(), backup,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        restored.forEach((p) -> LOG.info("restored collection key: {}", p));
+        return 0;
+    }
+}
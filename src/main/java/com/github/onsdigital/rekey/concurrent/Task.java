@@ -0,0 +1,22 @@
+package com.github.onsdigital.rekey.concurrent;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+/**
+ * A single unit of per-file work executed by a {@link WorkerPool}.
+ *
+ * @param <T> the input type.
+ * @param <R> the result type.
+ */
+@FunctionalInterface
+public interface Task<T, R> {
+
+    /**
+     * Apply the task to the input item.
+     *
+     * @param item the item to process.
+     * @return the result of processing the item.
+     * @throws RekeyException problem processing the item.
+     */
+    R apply(T item) throws RekeyException;
+}
@@ -0,0 +1,31 @@
+package com.github.onsdigital.rekey.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads.
+ *
+ * <p>This is the Java 8 version, used on JVMs older than Java 21 - virtual threads are never supported. The rekey jar
+ * is a multi-release jar and Java 21+ JVMs load the version under <code>src/main/java21</code> instead.</p>
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @param namePrefix the thread name prefix, each thread is named with the prefix followed by a counter.
+     * @return a factory of virtual threads.
+     * @throws UnsupportedOperationException virtual threads are not supported by the running JVM.
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.onsdigital.rekey.concurrent;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A bounded pool of worker threads used to spread per-file work across the available cores.
+ */
+public interface WorkerPool extends AutoCloseable {
+
+    /**
+     * Start the pool with the specified number of worker threads. A pool that has not been started (or is started
+     * with a single thread) runs all work sequentially on the calling thread.
+     *
+     * @param threads the number of worker threads to use.
+     * @throws RekeyException invalid thread count or the pool has already been started.
+     */
+    void start(int threads) throws RekeyException;
+
+    /**
+     * Start the pool with the specified number of workers, optionally running each worker on a virtual thread. With
+     * virtual threads blocking file I/O releases the carrier thread, so the number of workers can be far larger than
+     * the number of cores - it bounds the key files in flight rather than the CPU parallelism. If the running JVM
+     * doesn't support virtual threads the pool falls back to the same number of platform threads.
+     *
+     * @param threads        the number of workers to use.
+     * @param virtualThreads true to run the workers on virtual threads when supported.
+     * @throws RekeyException invalid thread count or the pool has already been started.
+     */
+    void start(int threads, boolean virtualThreads) throws RekeyException;
+
+    /**
+     * @return true if the workers are running on virtual threads.
+     */
+    boolean isVirtual();
+
+    /**
+     * @return the number of worker threads in use.
+     */
+    int getThreads();
+
+    /**
+     * Apply the task to each item. Results are returned in the same order as the input items. Processing stops at
+     * the first failure and the {@link RekeyException} thrown by the failing task is rethrown to the caller.
+     *
+     * @param items the items to process.
+     * @param task  the task to apply to each item.
+     * @return the results in input order.
+     * @throws RekeyException a task failed or the pool was interrupted.
+     */
+    <T, R> List<R> map(List<T> items, Task<T, R> task) throws RekeyException;
+
+    /**
+     * Submit a single task to run on a worker thread. If the pool is running sequentially the task is run on the
+     * calling thread before this method returns.
+     *
+     * @param task the task to run.
+     * @return a {@link Future} for the result of the task.
+     */
+    <R> Future<R> submit(Callable<R> task);
+
+    /**
+     * @return an {@link ExecutorService} view of the pool for libraries that take an executor - tasks submitted to
+     * the view run on the pool's workers. Shutting the view down only stops it accepting tasks, the pool itself is
+     * stopped by {@link #close()}.
+     */
+    ExecutorService asExecutorService();
+
+    /**
+     * Stop the worker threads.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,257 @@
+package com.github.onsdigital.rekey.concurrent;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link WorkerPool} backed by a fixed size {@link ExecutorService}, its workers running on platform threads or on
+ * virtual threads on Java 21+.
+ * <p>
+ * The workers are long-lived in both cases rather than a new virtual thread being started per task, so the thread
+ * local cipher and buffer caches are built once per worker and not once per key file.
+ * <p>
+ * Rather than submitting a task per item each worker claims the next unprocessed index from a shared counter, so
+ * the number of in-flight items never exceeds the number of threads regardless of how many items there are.
+ */
+public class WorkerPoolImpl implements WorkerPool {
+
+    private static final Logger LOG = LogManager.getLogger(WorkerPoolImpl.class);
+
+    static final String THREAD_NAME_PREFIX = "rekey-worker-";
+    static final String THREAD_NAME_FMT = THREAD_NAME_PREFIX + "{0}";
+
+    private ExecutorService executor;
+    private int threads = 1;
+    private boolean virtual;
+
+    @Override
+    public void start(int threads) throws RekeyException {
+        start(threads, false);
+    }
+
+    @Override
+    public synchronized void start(int threads, boolean virtualThreads) throws RekeyException {
+        if (threads < 1) {
+            throw new RekeyException(format("thread count must be greater than 0 but was {0}", threads));
+        }
+
+        if (executor != null) {
+            throw new RekeyException("worker pool already started");
+        }
+
+        this.threads = threads;
+        if (threads < 2) {
+            return;
+        }
+
+        if (virtualThreads && VirtualThreads.isSupported()) {
+            this.executor = Executors.newFixedThreadPool(threads, VirtualThreads.newThreadFactory(THREAD_NAME_PREFIX));
+            this.virtual = true;
+            LOG.info("running workers on virtual threads (workers: {})", threads);
+            return;
+        }
+
+        if (virtualThreads) {
+            LOG.warn("virtual threads require Java 21 or later, falling back to platform threads (java version: {}, " +
+                    "threads: {})", System.getProperty("java.version"), threads);
+        }
+        this.executor = Executors.newFixedThreadPool(threads, newThreadFactory());
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    @Override
+    public int getThreads() {
+        return this.threads;
+    }
+
+    @Override
+    public <T, R> List<R> map(List<T> items, Task<T, R> task) throws RekeyException {
+        if (executor == null || items.size() < 2) {
+            return mapSequential(items, task);
+        }
+
+        return mapParallel(items, task);
+    }
+
+    private <T, R> List<R> mapSequential(List<T> items, Task<T, R> task) throws RekeyException {
+        List<R> results = new ArrayList<>(items.size());
+        for (T item : items) {
+            results.add(task.apply(item));
+        }
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T, R> List<R> mapParallel(List<T> items, Task<T, R> task) throws RekeyException {
+        Object[] results = new Object[items.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RekeyException> failure = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            int i;
+            while (failure.get() == null && (i = next.getAndIncrement()) < results.length) {
+                try {
+                    results[i] = task.apply(items.get(i));
+                } catch (RekeyException ex) {
+                    failure.compareAndSet(null, ex);
+                } catch (RuntimeException ex) {
+                    failure.compareAndSet(null, new RekeyException("unexpected error processing key file", ex));
+                }
+            }
+        };
+
+        int workers = Math.min(threads, results.length);
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            futures.add(executor.submit(worker));
+        }
+
+        awaitAll(futures, failure);
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        return (List<R>) Arrays.asList(results);
+    }
+
+    private void awaitAll(List<Future<?>> futures, AtomicReference<RekeyException> failure) throws RekeyException {
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new RekeyException("interrupted waiting for worker threads", ex));
+            futures.forEach(f -> f.cancel(true));
+        } catch (ExecutionException ex) {
+            failure.compareAndSet(null, new RekeyException("unexpected worker thread error", ex.getCause()));
+        }
+    }
+
+    @Override
+    public <R> Future<R> submit(Callable<R> task) {
+        if (executor == null) {
+            FutureTask<R> f = new FutureTask<>(task);
+            f.run();
+            return f;
+        }
+        return executor.submit(task);
+    }
+
+    @Override
+    public ExecutorService asExecutorService() {
+        return new ExecutorView();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            virtual = false;
+        }
+    }
+
+    private ThreadFactory newThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return (r) -> {
+            Thread t = new Thread(r, format(THREAD_NAME_FMT, count.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * An {@link ExecutorService} running its tasks on the pool. Shutting it down rejects new tasks and lets the
+     * caller wait for the tasks already submitted, without stopping the pool.
+     */
+    private final class ExecutorView extends AbstractExecutorService {
+
+        private int pending;
+        private boolean shutdown;
+
+        @Override
+        public void execute(Runnable task) {
+            synchronized (this) {
+                if (shutdown) {
+                    throw new RejectedExecutionException("executor has been shut down");
+                }
+                pending++;
+            }
+
+            WorkerPoolImpl.this.submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    taskDone();
+                }
+                return null;
+            });
+        }
+
+        private synchronized void taskDone() {
+            if (--pending == 0) {
+                notifyAll();
+            }
+        }
+
+        @Override
+        public synchronized void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public synchronized boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public synchronized boolean isTerminated() {
+            return shutdown && pending == 0;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+}
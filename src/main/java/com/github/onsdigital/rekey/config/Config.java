@@ -1,5 +1,7 @@
 package com.github.onsdigital.rekey.config;
 
+import com.github.onsdigital.rekey.files.ArchiveFormat;
+import com.github.onsdigital.rekey.files.BackupManifest;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import javax.crypto.SecretKey;
@@ -8,10 +10,28 @@ import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
-import static java.text.MessageFormat.format;
-
 public class Config {
 
+    /**
+     * The name of the keyring dir in the Zebedee root.
+     */
+    public static final String KEYRING_DIR = "keyring";
+
+    static final String JOURNAL_EXT = ".journal";
+    static final String REPORT_EXT = ".report.json";
+    static final String BACKUP_DIR_PREFIX = "keyring-backup";
+    static final String STAGING_DIR_PREFIX = "keyring-staging";
+
+    /**
+     * Matches the backup dir names of every run (and the journal, report and manifest files named after them).
+     */
+    public static final String BACKUP_DIR_GLOB = BACKUP_DIR_PREFIX + "-*";
+
+    /**
+     * Matches the backup manifest file names of every run, e.g. to find the manifest of the previous backup.
+     */
+    public static final String BACKUP_MANIFEST_GLOB = BACKUP_DIR_GLOB + BackupManifest.EXTENSION;
+
     private SecretKey key;
     private IvParameterSpec iv;
     private SecretKey newKey;
@@ -20,9 +40,18 @@ public class Config {
     private Path keyringDir;
     private Path keyringBackupDir;
     private Path keyringBackupTar;
+    private ArchiveFormat backupFormat;
+    private Path backupManifest;
+    private Path journalFile;
+    private Path reportFile;
 
     public Config(SecretKey key, IvParameterSpec iv, SecretKey newKey, IvParameterSpec newIv, Path zebedeeRoot,
                   Path keyringDir, Path keyringBackupDir) {
+        this(key, iv, newKey, newIv, zebedeeRoot, keyringDir, keyringBackupDir, ArchiveFormat.TAR_GZ);
+    }
+
+    public Config(SecretKey key, IvParameterSpec iv, SecretKey newKey, IvParameterSpec newIv, Path zebedeeRoot,
+                  Path keyringDir, Path keyringBackupDir, ArchiveFormat backupFormat) {
         this.key = key;
         this.iv = iv;
         this.newKey = newKey;
@@ -30,7 +59,37 @@ public class Config {
         this.zebedeeRoot = zebedeeRoot;
         this.keyringDir = keyringDir;
         this.keyringBackupDir = keyringBackupDir;
-        this.keyringBackupTar = Paths.get(format("{0}.tar.gz", keyringBackupDir.toString()));
+        this.backupFormat = backupFormat;
+        this.keyringBackupTar = Paths.get(keyringBackupDir.toString() + backupFormat.getExtension());
+        this.backupManifest = Paths.get(keyringBackupDir.toString() + BackupManifest.EXTENSION);
+        this.journalFile = Paths.get(keyringBackupDir.toString() + JOURNAL_EXT);
+        this.reportFile = Paths.get(keyringBackupDir.toString() + REPORT_EXT);
+    }
+
+    /**
+     * @param keyringBackupDir the keyring backup dir of a previous (interrupted) run.
+     * @return a copy of this config using the keyring backup dir, backup archive and journal of the previous run.
+     */
+    public Config withKeyringBackupDir(Path keyringBackupDir) {
+        return new Config(key, iv, newKey, newIV, zebedeeRoot, keyringDir, keyringBackupDir, backupFormat);
+    }
+
+    /**
+     * @param zebedeeRoot the dir to use as the Zebedee root instead, e.g. a throwaway dry run workspace.
+     * @return a copy of this config with the keyring and keyring backup dirs moved under the Zebedee root.
+     */
+    public Config withZebedeeRoot(Path zebedeeRoot) {
+        return new Config(key, iv, newKey, newIV, zebedeeRoot, zebedeeRoot.resolve(keyringDir.getFileName()),
+                zebedeeRoot.resolve(keyringBackupDir.getFileName()), backupFormat);
+    }
+
+    /**
+     * @param stagingDir the dir to build the new keyring in.
+     * @return a copy of this config that reads the collection keys from the live keyring dir and writes the
+     * re-encrypted keys to the staging dir.
+     */
+    public Config forStaging(Path stagingDir) {
+        return new Config(key, iv, newKey, newIV, zebedeeRoot, stagingDir, keyringDir, backupFormat);
     }
 
     public SecretKey getKey() {
@@ -65,6 +124,31 @@ public class Config {
         return this.keyringBackupTar;
     }
 
+    public ArchiveFormat getBackupFormat() {
+        return this.backupFormat;
+    }
+
+    public Path getBackupManifest() {
+        return this.backupManifest;
+    }
+
+    public Path getJournalFile() {
+        return this.journalFile;
+    }
+
+    public Path getReportFile() {
+        return this.reportFile;
+    }
+
+    /**
+     * @param stagingRoot the parent dir to build the new keyring in.
+     * @return the staging dir for this run, named to match the keyring backup dir.
+     */
+    public Path getKeyringStagingDir(Path stagingRoot) {
+        String name = keyringBackupDir.getFileName().toString().replaceFirst(BACKUP_DIR_PREFIX, STAGING_DIR_PREFIX);
+        return stagingRoot.resolve(name);
+    }
+
     public Path getCollectionKeyPath(File f) {
         return getKeyringDir().resolve(f.getName());
     }
@@ -80,6 +164,10 @@ public class Config {
                 .append("keyringDir", keyringDir)
                 .append("keyringBackup", keyringBackupDir)
                 .append("keyringBackupTar", keyringBackupTar)
+                .append("backupFormat", backupFormat)
+                .append("backupManifest", backupManifest)
+                .append("journalFile", journalFile)
+                .append("reportFile", reportFile)
                 .toString();
     }
 }
@@ -1,6 +1,10 @@
 package com.github.onsdigital.rekey.config;
 
 import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.files.ArchiveFormat;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
 
 /**
  * Parse in the input values.
@@ -19,4 +23,37 @@ public interface ConfigParser {
      * @throws RekeyException
      */
     Config parseConfig(String keyStr, String ivStr, String newKeyStr, String newIvStr, String zebedeeDir) throws RekeyException;
+
+    /**
+     * Parse the input parameters.
+     *
+     * @param keyStr       The current keyring encryption key as a Base64 encoded string.
+     * @param ivStr        The current keyring encryption init vector as a Base64 encoded string.
+     * @param newKeyStr    The new keyring encryption key to use as a Base64 encoded string.
+     * @param newIvStr     The new keyring encryption init vector as a Base64 encoded string.
+     * @param zebedeeDir   The Zebedee root dir.
+     * @param backupFormat The {@link ArchiveFormat} to create the keyring backup in.
+     * @return
+     * @throws RekeyException
+     */
+    Config parseConfig(String keyStr, String ivStr, String newKeyStr, String newIvStr, String zebedeeDir,
+                       ArchiveFormat backupFormat) throws RekeyException;
+
+    /**
+     * Parse a keyring encryption key.
+     *
+     * @param keyStr The keyring encryption key as a Base64 encoded string.
+     * @return the {@link SecretKey}.
+     * @throws RekeyException the value is empty or not valid Base64.
+     */
+    SecretKey parseKey(String keyStr) throws RekeyException;
+
+    /**
+     * Parse a keyring encryption init vector.
+     *
+     * @param ivStr The keyring encryption init vector as a Base64 encoded string.
+     * @return the {@link IvParameterSpec}.
+     * @throws RekeyException the value is empty or not valid Base64.
+     */
+    IvParameterSpec parseIV(String ivStr) throws RekeyException;
 }
@@ -1,6 +1,7 @@
 package com.github.onsdigital.rekey.config;
 
 import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.files.ArchiveFormat;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.crypto.SecretKey;
@@ -9,21 +10,31 @@ import javax.crypto.spec.SecretKeySpec;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.Date;
 
 import static java.text.MessageFormat.format;
 
 public class ConfigParserImpl implements ConfigParser {
 
-    static DateFormat dateFormat = new SimpleDateFormat("yy-MM-dd-HHmmssSSS");
+    // Immutable and thread safe - several Zebedee roots may be parsed at the same time.
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yy-MM-dd-HHmmssSSS");
 
     @Override
     public Config parseConfig(String keyStr,  String ivStr, String newKeyStr, String newIvStr, String zebedeeDir)
             throws RekeyException {
+        return parseConfig(keyStr, ivStr, newKeyStr, newIvStr, zebedeeDir, ArchiveFormat.TAR_GZ);
+    }
+
+    @Override
+    public Config parseConfig(String keyStr, String ivStr, String newKeyStr, String newIvStr, String zebedeeDir,
+                              ArchiveFormat backupFormat) throws RekeyException {
+        if (backupFormat == null) {
+            throw new RekeyException("backup format value required but was null");
+        }
+
         SecretKey key = parseKey(keyStr);
         IvParameterSpec iv = parseIV(ivStr);
 
@@ -34,10 +45,11 @@ public class ConfigParserImpl implements ConfigParser {
         Path keyringDir = parseKeyringPath(zebedeeRoot);
         Path keyringBackDir = getKeyringBackUpPath(zebedeeRoot);
 
-        return new Config(key, iv, newKey, newIv, zebedeeRoot, keyringDir, keyringBackDir);
+        return new Config(key, iv, newKey, newIv, zebedeeRoot, keyringDir, keyringBackDir, backupFormat);
     }
 
-    private SecretKey parseKey(String keyStr) throws RekeyException {
+    @Override
+    public SecretKey parseKey(String keyStr) throws RekeyException {
         if (StringUtils.isEmpty(keyStr)) {
             throw new RekeyException("secret key value required but was null/empty");
         }
@@ -54,7 +66,8 @@ public class ConfigParserImpl implements ConfigParser {
         return secretKey;
     }
 
-    private IvParameterSpec parseIV(String ivStr) throws RekeyException {
+    @Override
+    public IvParameterSpec parseIV(String ivStr) throws RekeyException {
         if (StringUtils.isEmpty(ivStr)) {
             throw new RekeyException("init vector value required but was null/empty");
         }
@@ -80,11 +93,11 @@ public class ConfigParserImpl implements ConfigParser {
     }
 
     private Path parseKeyringPath(Path zebedeeDir) throws RekeyException {
-        return validateDir(zebedeeDir.resolve("keyring"));
+        return validateDir(zebedeeDir.resolve(Config.KEYRING_DIR));
     }
 
     private Path getKeyringBackUpPath(Path zebedeeDir) {
-        String backupDir = format("keyring-backup-{0}", dateFormat.format(new Date()));
+        String backupDir = format("keyring-backup-{0}", DATE_FORMAT.format(LocalDateTime.now()));
         return zebedeeDir.resolve(backupDir);
     }
 
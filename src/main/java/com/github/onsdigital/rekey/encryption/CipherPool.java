@@ -0,0 +1,36 @@
+package com.github.onsdigital.rekey.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.GeneralSecurityException;
+
+/**
+ * Provides reusable, initialised {@link Cipher} instances so the provider lookup and key schedule setup are paid
+ * once per worker thread rather than once per key file.
+ */
+public interface CipherPool {
+
+    /**
+     * Get a {@link Cipher} for the calling thread initialised with the specified mode, key and init vector. The
+     * cipher must only be used by the calling thread and must be left in its initialised state (i.e. each operation
+     * completed with <code>doFinal</code>) before it is requested again.
+     *
+     * @param mode the cipher mode - {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param key  the {@link SecretKey} to initialise the cipher with.
+     * @param iv   the init vector to initialise the cipher with.
+     * @return an initialised {@link Cipher}.
+     * @throws GeneralSecurityException problem creating or initialising the cipher.
+     */
+    Cipher getCipher(int mode, SecretKey key, IvParameterSpec iv) throws GeneralSecurityException;
+
+    /**
+     * Discard the calling thread's cipher for the specified mode, key and init vector. Must be called if an
+     * operation using the cipher failed part way through, leaving it in an unknown state.
+     *
+     * @param mode the cipher mode.
+     * @param key  the {@link SecretKey} the cipher was initialised with.
+     * @param iv   the init vector the cipher was initialised with.
+     */
+    void invalidate(int mode, SecretKey key, IvParameterSpec iv);
+}
@@ -0,0 +1,85 @@
+package com.github.onsdigital.rekey.encryption;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * {@link CipherPool} that keeps a small cache of initialised ciphers per thread. Ciphers are keyed on the identity of
+ * the key and init vector objects, which for a rekey run are the few long lived values held by the config.
+ */
+public class CipherPoolImpl implements CipherPool {
+
+    static final int MAX_CIPHERS_PER_THREAD = 4;
+
+    private final String algorithm;
+    private final ThreadLocal<Map<CipherSpec, Cipher>> ciphers;
+
+    /**
+     * Construct a new pool.
+     *
+     * @param algorithm the cipher transformation, e.g. <code>AES/CBC/PKCS5Padding</code>.
+     */
+    public CipherPoolImpl(final String algorithm) {
+        this.algorithm = algorithm;
+        this.ciphers = ThreadLocal.withInitial(() -> new LinkedHashMap<CipherSpec, Cipher>(8, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CipherSpec, Cipher> eldest) {
+                return size() > MAX_CIPHERS_PER_THREAD;
+            }
+        });
+    }
+
+    @Override
+    public Cipher getCipher(int mode, SecretKey key, IvParameterSpec iv) throws GeneralSecurityException {
+        Map<CipherSpec, Cipher> cache = ciphers.get();
+        CipherSpec spec = new CipherSpec(mode, key, iv);
+
+        Cipher cipher = cache.get(spec);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(algorithm);
+            cipher.init(mode, key, iv);
+            cache.put(spec, cipher);
+        }
+        return cipher;
+    }
+
+    @Override
+    public void invalidate(int mode, SecretKey key, IvParameterSpec iv) {
+        ciphers.get().remove(new CipherSpec(mode, key, iv));
+    }
+
+    private static final class CipherSpec {
+
+        private final int mode;
+        private final SecretKey key;
+        private final IvParameterSpec iv;
+
+        CipherSpec(int mode, SecretKey key, IvParameterSpec iv) {
+            this.mode = mode;
+            this.key = key;
+            this.iv = iv;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CipherSpec)) {
+                return false;
+            }
+            CipherSpec other = (CipherSpec) o;
+            return mode == other.mode && key == other.key && iv == other.iv;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mode, System.identityHashCode(key), System.identityHashCode(iv));
+        }
+    }
+}
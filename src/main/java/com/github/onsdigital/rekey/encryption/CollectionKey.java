@@ -1,12 +1,13 @@
 package com.github.onsdigital.rekey.encryption;
 
 import javax.crypto.SecretKey;
+import javax.security.auth.DestroyFailedException;
 import java.nio.file.Path;
 
-import static java.text.MessageFormat.format;
-
 public class CollectionKey {
 
+    static final String KEY_FILE_EXT = ".txt";
+
     private SecretKey key;
     private String collectionID;
 
@@ -23,11 +24,34 @@ public class CollectionKey {
         return this.collectionID;
     }
 
+    /**
+     * Destroy the key material, if the key implementation supports it, and drop the reference to the key. A key that
+     * can't be destroyed is left for the garbage collector.
+     */
+    public void wipe() {
+        if (key != null && !key.isDestroyed()) {
+            try {
+                key.destroy();
+            } catch (DestroyFailedException ex) {
+                // Not supported by the key implementation.
+            }
+        }
+        key = null;
+    }
+
     public Path getKeyPath(Path keyringDir) {
-        return keyringDir.resolve(format("{0}.txt", collectionID));
+        return keyringDir.resolve(getKeyFileName());
     }
 
     public String getKeyFileName() {
-        return format("{0}.txt", collectionID);
+        return toKeyFileName(collectionID);
+    }
+
+    /**
+     * @param collectionID the collection ID.
+     * @return the name of the keyring file for the collection ID.
+     */
+    public static String toKeyFileName(String collectionID) {
+        return collectionID + KEY_FILE_EXT;
     }
 }
@@ -0,0 +1,63 @@
+package com.github.onsdigital.rekey.encryption;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * {@link KeyDecryptor} decorator that records a digest of every key it decrypts in {@link KeyDigests}, so the
+ * re-encrypted keys can be verified against the originals once the rekey has completed.
+ */
+public class DigestingKeyDecryptor implements KeyDecryptor {
+
+    private KeyDecryptor decryptor;
+    private KeyDigests digests;
+
+    /**
+     * @param decryptor the {@link KeyDecryptor} to decrypt the keys with.
+     * @param digests   the {@link KeyDigests} to record the key digests in.
+     */
+    public DigestingKeyDecryptor(final KeyDecryptor decryptor, final KeyDigests digests) {
+        this.decryptor = decryptor;
+        this.digests = digests;
+    }
+
+    @Override
+    public List<CollectionKey> decreptKeys(Path keyringDir, SecretKey key, IvParameterSpec iv)
+            throws RekeyException {
+        List<CollectionKey> keys = decryptor.decreptKeys(keyringDir, key, iv);
+        keys.forEach(digests::record);
+        return keys;
+    }
+
+    @Override
+    public KeySlab decryptToSlab(Path keyringDir, SecretKey key, IvParameterSpec iv, SlabStorage storage)
+            throws RekeyException {
+        KeySlab slab = decryptor.decryptToSlab(keyringDir, key, iv, storage);
+        digests.record(slab);
+        return slab;
+    }
+
+    @Override
+    public CollectionKey decryptKey(Path keyFile, SecretKey key, IvParameterSpec iv) throws RekeyException {
+        CollectionKey collectionKey = decryptor.decryptKey(keyFile, key, iv);
+        digests.record(collectionKey);
+        return collectionKey;
+    }
+
+    @Override
+    public CollectionKey decryptKey(Path keyFile, byte[] encrypted, SecretKey key, IvParameterSpec iv)
+            throws RekeyException {
+        CollectionKey collectionKey = decryptor.decryptKey(keyFile, encrypted, key, iv);
+        digests.record(collectionKey);
+        return collectionKey;
+    }
+
+    @Override
+    public CollectionKey verifyKey(Path keyFile, SecretKey key, IvParameterSpec iv) throws RekeyException {
+        return decryptor.verifyKey(keyFile, key, iv);
+    }
+}
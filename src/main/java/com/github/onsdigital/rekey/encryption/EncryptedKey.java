@@ -0,0 +1,29 @@
+package com.github.onsdigital.rekey.encryption;
+
+import java.nio.file.Path;
+
+/**
+ * A collection key that has been encrypted with the keyring secret key and is waiting to be written to disk.
+ */
+public class EncryptedKey {
+
+    private String collectionID;
+    private byte[] encrypted;
+
+    public EncryptedKey(final String collectionID, final byte[] encrypted) {
+        this.collectionID = collectionID;
+        this.encrypted = encrypted;
+    }
+
+    public String getCollectionID() {
+        return this.collectionID;
+    }
+
+    public byte[] getEncrypted() {
+        return this.encrypted;
+    }
+
+    public Path getKeyPath(Path keyringDir) {
+        return keyringDir.resolve(CollectionKey.toKeyFileName(collectionID));
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.onsdigital.rekey.encryption;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Per thread scratch buffers for the small file fast path. Collection key files are only one or two AES blocks so
+ * each worker thread reuses the same input/output arrays rather than allocating streams and byte arrays per file.
+ * The buffers hold key material and must be zeroed with {@link #wipe()} once each file has been processed.
+ */
+final class KeyBuffers {
+
+    /**
+     * The largest file/key handled by the fast path - anything bigger falls back to the streaming path.
+     */
+    static final int MAX_SMALL_FILE_SIZE = 256;
+
+    static final int AES_BLOCK_SIZE = 16;
+
+    private static final ThreadLocal<KeyBuffers> BUFFERS = ThreadLocal.withInitial(KeyBuffers::new);
+
+    private final byte[] in = new byte[MAX_SMALL_FILE_SIZE];
+    private final byte[] out = new byte[MAX_SMALL_FILE_SIZE + AES_BLOCK_SIZE];
+    private final ByteBuffer inBuffer = ByteBuffer.wrap(in);
+    private final ByteBuffer outBuffer = ByteBuffer.wrap(out);
+
+    private KeyBuffers() {
+    }
+
+    static KeyBuffers get() {
+        return BUFFERS.get();
+    }
+
+    byte[] in() {
+        return in;
+    }
+
+    byte[] out() {
+        return out;
+    }
+
+    /**
+     * @return a {@link ByteBuffer} view of the input array, cleared ready for reading into.
+     */
+    ByteBuffer inBuffer() {
+        inBuffer.clear();
+        return inBuffer;
+    }
+
+    /**
+     * @param length the number of bytes of the output array to expose.
+     * @return a {@link ByteBuffer} view of the first <code>length</code> bytes of the output array.
+     */
+    ByteBuffer outBuffer(int length) {
+        outBuffer.clear();
+        outBuffer.limit(length);
+        return outBuffer;
+    }
+
+    void wipe() {
+        Arrays.fill(in, (byte) 0);
+        Arrays.fill(out, (byte) 0);
+    }
+}
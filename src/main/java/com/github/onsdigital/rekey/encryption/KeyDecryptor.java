@@ -10,4 +10,54 @@ import java.util.List;
 public interface KeyDecryptor {
 
     List<CollectionKey> decreptKeys(Path keyringDir, SecretKey key, IvParameterSpec iv) throws RekeyException;
+
+    /**
+     * Decrypt the collection key files in the keyring dir straight into a {@link KeySlab}, without creating a
+     * {@link CollectionKey} per key. The caller owns the returned slab and must close it to wipe the keys.
+     *
+     * @param keyringDir the keyring dir to decrypt.
+     * @param key        the {@link SecretKey} the files are encrypted with.
+     * @param iv         the init vector the files are encrypted with.
+     * @param storage    where the slab holds the key bytes.
+     * @return a {@link KeySlab} holding the decrypted keys.
+     * @throws RekeyException problem decrypting a key file.
+     */
+    KeySlab decryptToSlab(Path keyringDir, SecretKey key, IvParameterSpec iv, SlabStorage storage)
+            throws RekeyException;
+
+    /**
+     * Decrypt a single collection key file.
+     *
+     * @param keyFile the collection key file to decrypt.
+     * @param key     the {@link SecretKey} the file is encrypted with.
+     * @param iv      the init vector the file is encrypted with.
+     * @return the decrypted {@link CollectionKey}.
+     * @throws RekeyException problem decrypting the key file.
+     */
+    CollectionKey decryptKey(Path keyFile, SecretKey key, IvParameterSpec iv) throws RekeyException;
+
+    /**
+     * Decrypt a single collection key file that has already been rekeyed to verify it. The time taken is recorded as
+     * a verify operation - the read and decrypt are not counted again.
+     *
+     * @param keyFile the collection key file to decrypt.
+     * @param key     the {@link SecretKey} the file is encrypted with.
+     * @param iv      the init vector the file is encrypted with.
+     * @return the decrypted {@link CollectionKey}.
+     * @throws RekeyException problem decrypting the key file.
+     */
+    CollectionKey verifyKey(Path keyFile, SecretKey key, IvParameterSpec iv) throws RekeyException;
+
+    /**
+     * Decrypt the content of a collection key file that has already been read.
+     *
+     * @param keyFile   the collection key file the content was read from.
+     * @param encrypted the encrypted content of the key file.
+     * @param key       the {@link SecretKey} the file is encrypted with.
+     * @param iv        the init vector the file is encrypted with.
+     * @return the decrypted {@link CollectionKey}.
+     * @throws RekeyException problem decrypting the key.
+     */
+    CollectionKey decryptKey(Path keyFile, byte[] encrypted, SecretKey key, IvParameterSpec iv)
+            throws RekeyException;
 }
@@ -1,7 +1,13 @@
 package com.github.onsdigital.rekey.encryption;
 
 import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
 import com.github.onsdigital.rekey.files.FilesHelper;
+import com.github.onsdigital.rekey.files.KeyFileIO;
+import com.github.onsdigital.rekey.files.KeyFileIOImpl;
+import com.github.onsdigital.rekey.report.Operation;
+import com.github.onsdigital.rekey.report.RekeyMetrics;
 import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,8 +18,12 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Predicate;
@@ -34,43 +44,262 @@ public class KeyDecryptorImpl implements KeyDecryptor {
 
     private FilesHelper filesHelper;
     private Predicate<Path> keyFileFilter;
+    private WorkerPool workerPool;
+    private KeyFileIO io;
+    private CipherPool cipherPool;
+    private RekeyMetrics metrics;
 
     /**
-     * Construct a new instance of the KeyDecryptor
+     * Construct a new instance of the KeyDecryptor that decrypts the key files sequentially.
      *
      * @param filesHelper   the filehelper to use.
      * @param keyFileFilter a predicate to filter which files to decrypt.
      */
     public KeyDecryptorImpl(final FilesHelper filesHelper, Predicate<Path> keyFileFilter) {
+        this(filesHelper, keyFileFilter, new WorkerPoolImpl());
+    }
+
+    /**
+     * Construct a new instance of the KeyDecryptor
+     *
+     * @param filesHelper   the filehelper to use.
+     * @param keyFileFilter a predicate to filter which files to decrypt.
+     * @param workerPool    the {@link WorkerPool} to spread the decryption work across.
+     */
+    public KeyDecryptorImpl(final FilesHelper filesHelper, Predicate<Path> keyFileFilter,
+                            final WorkerPool workerPool) {
+        this(filesHelper, keyFileFilter, workerPool, RekeyMetrics.NONE);
+    }
+
+    /**
+     * Construct a new instance of the KeyDecryptor
+     *
+     * @param filesHelper   the filehelper to use.
+     * @param keyFileFilter a predicate to filter which files to decrypt.
+     * @param workerPool    the {@link WorkerPool} to spread the decryption work across.
+     * @param metrics       the {@link RekeyMetrics} to record the read/decrypt time and bytes read of each file in.
+     */
+    public KeyDecryptorImpl(final FilesHelper filesHelper, Predicate<Path> keyFileFilter,
+                            final WorkerPool workerPool, final RekeyMetrics metrics) {
+        this(filesHelper, keyFileFilter, workerPool, new KeyFileIOImpl(workerPool), metrics);
+    }
+
+    /**
+     * Construct a new instance of the KeyDecryptor
+     *
+     * @param filesHelper   the filehelper to use.
+     * @param keyFileFilter a predicate to filter which files to decrypt.
+     * @param workerPool    the {@link WorkerPool} to spread the decryption work across.
+     * @param io            the {@link KeyFileIO} to overlap the key file reads with the decryption, when started.
+     * @param metrics       the {@link RekeyMetrics} to record the read/decrypt time and bytes read of each file in.
+     */
+    public KeyDecryptorImpl(final FilesHelper filesHelper, Predicate<Path> keyFileFilter,
+                            final WorkerPool workerPool, final KeyFileIO io, final RekeyMetrics metrics) {
         this.filesHelper = filesHelper;
         this.keyFileFilter = keyFileFilter;
+        this.workerPool = workerPool;
+        this.io = io;
+        this.metrics = metrics;
+        this.cipherPool = new CipherPoolImpl(CIPHER_ALGORITHM);
     }
 
     @Override
     public List<CollectionKey> decreptKeys(Path keyringDir, SecretKey key, IvParameterSpec iv) throws RekeyException {
-        List<CollectionKey> results = new ArrayList<>();
-
         List<Path> keyFiles = filesHelper.listFiles(keyringDir, keyFileFilter);
-        LOG.info("decrypting existing collection keys (count: {})", keyFiles.size());
+        LOG.info("decrypting existing collection keys (count: {}, threads: {}, io threads: {})", keyFiles.size(),
+                workerPool.getThreads(), io.getIOThreads());
 
-        for (Path p : keyFiles) {
-            SecretKey k = decryptKey(p, key, iv);
-            results.add(new CollectionKey(k, removeExtension(p.getFileName().toString())));
+        List<CollectionKey> results;
+        if (io.isStarted()) {
+            // Keep many reads in flight on the I/O threads, decrypting each file as soon as its read completes.
+            results = io.ioThenCompute(keyFiles, this::readKeyFile,
+                    (f) -> decryptKey(f.keyFile, f.encrypted, key, iv));
+        } else {
+            results = workerPool.map(keyFiles, (p) -> decryptKey(p, key, iv));
         }
 
         LOG.info("successfully decrypted existing collection keys (total: {})", results.size());
         return results;
     }
 
-    private SecretKey decryptKey(Path keyFile, SecretKey key, IvParameterSpec iv) throws RekeyException {
+    @Override
+    public KeySlab decryptToSlab(Path keyringDir, SecretKey key, IvParameterSpec iv, SlabStorage storage)
+            throws RekeyException {
+        List<Path> keyFiles = filesHelper.listFiles(keyringDir, keyFileFilter);
+        LOG.info("decrypting existing collection keys into key slab (count: {}, threads: {}, storage: {})",
+                keyFiles.size(), workerPool.getThreads(), storage);
+
+        KeySlab slab = new KeySlabImpl(keyFiles.size(), storage);
+        try {
+            workerPool.map(keyFiles, (p) -> decryptKeyFile(p, key, iv, slab));
+        } catch (RekeyException ex) {
+            slab.close();
+            throw ex;
+        }
+
+        LOG.info("successfully decrypted existing collection keys (total: {})", slab.size());
+        return slab;
+    }
+
+    @Override
+    public CollectionKey decryptKey(Path keyFile, SecretKey key, IvParameterSpec iv) throws RekeyException {
+        SecretKey k = decryptKeyFile(keyFile, key, iv, metrics);
+        return new CollectionKey(k, removeExtension(keyFile.getFileName().toString()));
+    }
+
+    @Override
+    public CollectionKey verifyKey(Path keyFile, SecretKey key, IvParameterSpec iv) throws RekeyException {
+        long start = System.nanoTime();
+        // The key file has already been counted when it was written so the read/decrypt are not recorded again.
+        SecretKey k = decryptKeyFile(keyFile, key, iv, RekeyMetrics.NONE);
+        metrics.recordLatency(Operation.VERIFY, System.nanoTime() - start);
+        return new CollectionKey(k, removeExtension(keyFile.getFileName().toString()));
+    }
+
+    @Override
+    public CollectionKey decryptKey(Path keyFile, byte[] encrypted, SecretKey key, IvParameterSpec iv)
+            throws RekeyException {
         byte[] keyBytes = null;
+        KeyBuffers buffers = KeyBuffers.get();
+        long start = System.nanoTime();
+        try {
+            Cipher cipher = getDecryptCipher(key, iv);
+            SecretKey k;
+            if (encrypted.length <= KeyBuffers.MAX_SMALL_FILE_SIZE) {
+                int len = cipher.doFinal(encrypted, 0, encrypted.length, buffers.out(), 0);
+                k = new SecretKeySpec(buffers.out(), 0, len, ENCRYPTION_ALGORITHM);
+            } else {
+                keyBytes = cipher.doFinal(encrypted);
+                k = new SecretKeySpec(keyBytes, 0, keyBytes.length, ENCRYPTION_ALGORITHM);
+            }
+
+            metrics.recordLatency(Operation.DECRYPT, System.nanoTime() - start);
+            metrics.addBytesRead(encrypted.length);
+            return new CollectionKey(k, removeExtension(keyFile.getFileName().toString()));
+        } catch (Exception ex) {
+            cipherPool.invalidate(Cipher.DECRYPT_MODE, key, iv);
+            throw new RekeyException(format("error decrypting secret key: {0}", keyFile), ex);
+        } finally {
+            buffers.wipe();
+            if (keyBytes != null) {
+                Arrays.fill(keyBytes, (byte) 0);
+            }
+        }
+    }
+
+    private SecretKey decryptKeyFile(Path keyFile, SecretKey key, IvParameterSpec iv, RekeyMetrics metrics)
+            throws RekeyException {
+        KeyBuffers buffers = KeyBuffers.get();
+        try {
+            int len = decryptSmallKeyFile(keyFile, key, iv, buffers, metrics);
+            if (len >= 0) {
+                return new SecretKeySpec(buffers.out(), 0, len, ENCRYPTION_ALGORITHM);
+            }
+        } finally {
+            buffers.wipe();
+        }
+
+        return decryptLargeKeyFile(keyFile, key, iv, metrics);
+    }
+
+    private Void decryptKeyFile(Path keyFile, SecretKey key, IvParameterSpec iv, KeySlab slab)
+            throws RekeyException {
+        String collectionID = removeExtension(keyFile.getFileName().toString());
+        KeyBuffers buffers = KeyBuffers.get();
+        try {
+            int len = decryptSmallKeyFile(keyFile, key, iv, buffers, metrics);
+            if (len >= 0) {
+                slab.put(collectionID, buffers.out(), 0, len);
+                return null;
+            }
+        } finally {
+            buffers.wipe();
+        }
+
+        byte[] keyBytes = decryptLargeKeyFile(keyFile, key, iv, metrics).getEncoded();
+        try {
+            slab.put(collectionID, keyBytes, 0, keyBytes.length);
+            return null;
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * Read and decrypt a key file into the output array of the buffers. The caller must wipe the buffers.
+     *
+     * @return the length of the decrypted key or -1 if the file is too large for the buffers.
+     */
+    private int decryptSmallKeyFile(Path keyFile, SecretKey key, IvParameterSpec iv, KeyBuffers buffers,
+                                    RekeyMetrics metrics) throws RekeyException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(keyFile, StandardOpenOption.READ)) {
+            int n = readSmallFile(channel, buffers.inBuffer());
+            if (n < 0) {
+                return -1;
+            }
+
+            long read = System.nanoTime();
+            metrics.recordLatency(Operation.READ, read - start);
+            metrics.addBytesRead(n);
+
+            Cipher cipher = getDecryptCipher(key, iv);
+            int len = cipher.doFinal(buffers.in(), 0, n, buffers.out(), 0);
+            metrics.recordLatency(Operation.DECRYPT, System.nanoTime() - read);
+            return len;
+        } catch (Exception ex) {
+            cipherPool.invalidate(Cipher.DECRYPT_MODE, key, iv);
+            throw new RekeyException(format("error decrypting secret key: {0}", keyFile), ex);
+        }
+    }
+
+    /**
+     * Read the whole of a key file on an I/O thread - decrypting it is timed separately by
+     * {@link #decryptKey(Path, byte[], SecretKey, IvParameterSpec)} which also counts the bytes read.
+     */
+    private KeyFileContent readKeyFile(Path keyFile) throws RekeyException {
+        long start = System.nanoTime();
+        try {
+            byte[] encrypted = Files.readAllBytes(keyFile);
+            metrics.recordLatency(Operation.READ, System.nanoTime() - start);
+            return new KeyFileContent(keyFile, encrypted);
+        } catch (Exception ex) {
+            throw new RekeyException(format("error reading collection key file: {0}", keyFile), ex);
+        }
+    }
+
+    /**
+     * Read the whole file into the buffer.
+     *
+     * @return the number of bytes read or -1 if the file is too large for the buffer.
+     */
+    private int readSmallFile(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // keep reading until the buffer is full or end of file.
+        }
+
+        if (!buffer.hasRemaining() && channel.position() < channel.size()) {
+            return -1;
+        }
+        return buffer.position();
+    }
+
+    private SecretKey decryptLargeKeyFile(Path keyFile, SecretKey key, IvParameterSpec iv, RekeyMetrics metrics)
+            throws RekeyException {
+        byte[] keyBytes = null;
+        long start = System.nanoTime();
         try (
                 FileInputStream fin = new FileInputStream(keyFile.toFile());
                 CipherInputStream cin = new CipherInputStream(fin, getDecryptCipher(key, iv))
         ) {
             keyBytes = IOUtils.toByteArray(cin);
+
+            // Read and decrypt are interleaved by the stream so are recorded together as the decrypt time.
+            metrics.recordLatency(Operation.DECRYPT, System.nanoTime() - start);
+            metrics.addBytesRead(fin.getChannel().position());
             return new SecretKeySpec(keyBytes, 0, keyBytes.length, ENCRYPTION_ALGORITHM);
         } catch (Exception ex) {
+            cipherPool.invalidate(Cipher.DECRYPT_MODE, key, iv);
             throw new RekeyException(format("error decrypting secret key: {0}", keyFile), ex);
         } finally {
             if (keyBytes != null) {
@@ -81,11 +310,23 @@ public class KeyDecryptorImpl implements KeyDecryptor {
 
     private Cipher getDecryptCipher(SecretKey key, IvParameterSpec iv) throws RekeyException {
         try {
-            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            return cipher;
+            return cipherPool.getCipher(Cipher.DECRYPT_MODE, key, iv);
         } catch (Exception ex) {
             throw new RekeyException("error creating decryption cypher", ex);
         }
     }
+
+    /**
+     * The encrypted content of a key file, handed from the I/O threads to the worker pool.
+     */
+    private static class KeyFileContent {
+
+        private final Path keyFile;
+        private final byte[] encrypted;
+
+        KeyFileContent(Path keyFile, byte[] encrypted) {
+            this.keyFile = keyFile;
+            this.encrypted = encrypted;
+        }
+    }
 }
@@ -0,0 +1,105 @@
+package com.github.onsdigital.rekey.encryption;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * SHA-256 digests of the original collection keys, recorded as they are decrypted so the re-encrypted keys can be
+ * checked against them without keeping the key material itself. Safe for use by multiple threads.
+ */
+public class KeyDigests {
+
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(KeyDigests::newDigest);
+
+    private final Map<String, byte[]> digests = new ConcurrentHashMap<>();
+
+    /**
+     * Record the digest of a decrypted collection key.
+     *
+     * @param key the decrypted collection key.
+     */
+    public void record(CollectionKey key) {
+        digests.put(key.getCollectionID(), digest(key));
+    }
+
+    /**
+     * Record the digest of every collection key held in a {@link KeySlab}.
+     *
+     * @param keys the decrypted collection keys.
+     */
+    public void record(KeySlab keys) {
+        byte[] keyBytes = new byte[KeySlab.SLOT_WIDTH];
+        try {
+            for (int slot = 0; slot < keys.size(); slot++) {
+                int len = keys.copyKey(slot, keyBytes, 0);
+                digests.put(keys.getCollectionID(slot), digest(keyBytes, len));
+            }
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+
+    /**
+     * @param collectionID the collection ID.
+     * @return true if a digest has been recorded for the collection.
+     */
+    public boolean contains(String collectionID) {
+        return digests.containsKey(collectionID);
+    }
+
+    /**
+     * Compare the digest of a decrypted collection key with the digest recorded for the original key in constant
+     * time.
+     *
+     * @param key the decrypted collection key.
+     * @return true if the key matches the original key.
+     * @throws RekeyException no digest has been recorded for the collection.
+     */
+    public boolean matches(CollectionKey key) throws RekeyException {
+        byte[] expected = digests.get(key.getCollectionID());
+        if (expected == null) {
+            throw new RekeyException(format("no digest recorded for collection key: {0}", key.getCollectionID()));
+        }
+        return MessageDigest.isEqual(expected, digest(key));
+    }
+
+    /**
+     * @return the number of digests recorded.
+     */
+    public int size() {
+        return digests.size();
+    }
+
+    private static byte[] digest(CollectionKey key) {
+        byte[] keyBytes = key.getKey().getEncoded();
+        try {
+            return digest(keyBytes, keyBytes.length);
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+
+    private static byte[] digest(byte[] keyBytes, int length) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(keyBytes, 0, length);
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+}
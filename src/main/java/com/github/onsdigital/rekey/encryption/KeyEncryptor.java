@@ -11,4 +11,38 @@ public interface KeyEncryptor {
 
     void encryptToFile(List<CollectionKey> toEncrypt, Path dest, SecretKey encryptionKey, IvParameterSpec encryptionIV)
             throws RekeyException;
+
+    /**
+     * Encrypt every collection key held in a {@link KeySlab} and write each to its key file in the dest dir. The slab
+     * is not wiped - it remains owned by the caller.
+     *
+     * @param keys          the keys to encrypt.
+     * @param dest          the keyring dir to write to.
+     * @param encryptionKey the {@link SecretKey} to encrypt with.
+     * @param encryptionIV  the init vector to encrypt with.
+     * @throws RekeyException problem encrypting or writing a key.
+     */
+    void encryptToFile(KeySlab keys, Path dest, SecretKey encryptionKey, IvParameterSpec encryptionIV)
+            throws RekeyException;
+
+    /**
+     * Encrypt a single collection key without writing it to disk.
+     *
+     * @param toEncrypt     the collection key to encrypt.
+     * @param encryptionKey the {@link SecretKey} to encrypt with.
+     * @param encryptionIV  the init vector to encrypt with.
+     * @return the {@link EncryptedKey}.
+     * @throws RekeyException problem encrypting the key.
+     */
+    EncryptedKey encryptKey(CollectionKey toEncrypt, SecretKey encryptionKey, IvParameterSpec encryptionIV)
+            throws RekeyException;
+
+    /**
+     * Write an encrypted collection key to its key file in the specified keyring dir.
+     *
+     * @param encrypted the encrypted key to write.
+     * @param dest      the keyring dir to write to.
+     * @throws RekeyException problem writing the key file.
+     */
+    void writeKey(EncryptedKey encrypted, Path dest) throws RekeyException;
 }
@@ -1,15 +1,24 @@
 package com.github.onsdigital.rekey.encryption;
 
 import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import com.github.onsdigital.rekey.files.DurableFileWriter;
+import com.github.onsdigital.rekey.files.DurableFileWriterImpl;
+import com.github.onsdigital.rekey.files.KeyFileIO;
+import com.github.onsdigital.rekey.files.KeyFileIOImpl;
+import com.github.onsdigital.rekey.report.Operation;
+import com.github.onsdigital.rekey.report.RekeyMetrics;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
-import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static java.text.MessageFormat.format;
@@ -21,43 +30,230 @@ public class KeyEncryptorImpl implements KeyEncryptor {
     static final String CIPHER_ALGORITHM = "AES/CBC/PKCS5Padding";
     static final String ENCRYPTION_ALGORITHM = "AES";
 
+    // The number of key slab slots encrypted by a worker per task.
+    static final int SLAB_CHUNK_SIZE = 256;
+
+    private WorkerPool workerPool;
+    private KeyFileIO io;
+    private CipherPool cipherPool;
+    private DurableFileWriter fileWriter;
+    private RekeyMetrics metrics;
+
+    /**
+     * Construct a new instance of the KeyEncryptor that encrypts the keys sequentially.
+     */
+    public KeyEncryptorImpl() {
+        this(new WorkerPoolImpl());
+    }
+
+    /**
+     * Construct a new instance of the KeyEncryptor
+     *
+     * @param workerPool the {@link WorkerPool} to spread the encryption work across.
+     */
+    public KeyEncryptorImpl(final WorkerPool workerPool) {
+        this(workerPool, new DurableFileWriterImpl());
+    }
+
+    /**
+     * Construct a new instance of the KeyEncryptor
+     *
+     * @param workerPool the {@link WorkerPool} to spread the encryption work across.
+     * @param fileWriter the {@link DurableFileWriter} to write the key files with.
+     */
+    public KeyEncryptorImpl(final WorkerPool workerPool, final DurableFileWriter fileWriter) {
+        this(workerPool, fileWriter, RekeyMetrics.NONE);
+    }
+
+    /**
+     * Construct a new instance of the KeyEncryptor
+     *
+     * @param workerPool the {@link WorkerPool} to spread the encryption work across.
+     * @param fileWriter the {@link DurableFileWriter} to write the key files with.
+     * @param metrics    the {@link RekeyMetrics} to record the encrypt/write time and bytes written of each file in.
+     */
+    public KeyEncryptorImpl(final WorkerPool workerPool, final DurableFileWriter fileWriter,
+                            final RekeyMetrics metrics) {
+        this(workerPool, new KeyFileIOImpl(workerPool), fileWriter, metrics);
+    }
+
+    /**
+     * Construct a new instance of the KeyEncryptor
+     *
+     * @param workerPool the {@link WorkerPool} to spread the encryption work across.
+     * @param io         the {@link KeyFileIO} to overlap the key file writes with the encryption, when started.
+     * @param fileWriter the {@link DurableFileWriter} to write the key files with.
+     * @param metrics    the {@link RekeyMetrics} to record the encrypt/write time and bytes written of each file in.
+     */
+    public KeyEncryptorImpl(final WorkerPool workerPool, final KeyFileIO io, final DurableFileWriter fileWriter,
+                            final RekeyMetrics metrics) {
+        this.workerPool = workerPool;
+        this.io = io;
+        this.fileWriter = fileWriter;
+        this.metrics = metrics;
+        this.cipherPool = new CipherPoolImpl(CIPHER_ALGORITHM);
+    }
+
     @Override
     public void encryptToFile(List<CollectionKey> toEncrypt, Path dest, SecretKey encryptionKey,
                               IvParameterSpec encryptionIV)
             throws RekeyException {
 
-        LOG.info("encrypting collection keys with new secret key, (count: {})", toEncrypt.size());
-        for (CollectionKey key : toEncrypt) {
-            encryptToFile(key.getKeyPath(dest), key.getKey(), encryptionKey, encryptionIV);
+        LOG.info("encrypting collection keys with new secret key, (count: {}, threads: {}, io threads: {})",
+                toEncrypt.size(), workerPool.getThreads(), io.getIOThreads());
+
+        if (io.isStarted()) {
+            // Encrypt on the worker pool and keep many writes in flight on the I/O threads.
+            io.computeThenIO(toEncrypt, (key) -> encryptKey(key, encryptionKey, encryptionIV), (encrypted) -> {
+                writeKey(encrypted, dest);
+                return encrypted.getCollectionID();
+            });
+        } else {
+            workerPool.map(toEncrypt, (key) -> {
+                encryptToFile(key.getKeyPath(dest), key.getKey(), encryptionKey, encryptionIV);
+                return key.getCollectionID();
+            });
         }
 
         LOG.info("re-encrypt collection keys completed successfully, (total: {})", toEncrypt.size());
     }
 
+    @Override
+    public void encryptToFile(KeySlab keys, Path dest, SecretKey encryptionKey, IvParameterSpec encryptionIV)
+            throws RekeyException {
+        int size = keys.size();
+        LOG.info("encrypting collection keys from key slab with new secret key, (count: {}, threads: {})", size,
+                workerPool.getThreads());
+
+        // Hand the slots to the workers as ranges rather than one task per key.
+        List<Integer> chunks = new ArrayList<>(size / SLAB_CHUNK_SIZE + 1);
+        for (int start = 0; start < size; start += SLAB_CHUNK_SIZE) {
+            chunks.add(start);
+        }
+
+        workerPool.map(chunks, (start) -> encryptToFile(keys, start, Math.min(start + SLAB_CHUNK_SIZE, size), dest,
+                encryptionKey, encryptionIV));
+
+        LOG.info("re-encrypt collection keys completed successfully, (total: {})", size);
+    }
+
     private void encryptToFile(Path dest, SecretKey toEncrypt, SecretKey encryptionKey, IvParameterSpec encryptionIV)
             throws RekeyException {
-        try (
-                FileOutputStream fos = new FileOutputStream(dest.toFile());
-                CipherOutputStream cos = new CipherOutputStream(fos, getEncryptCipher(encryptionKey, encryptionIV))
-        ) {
-            cos.write(toEncrypt.getEncoded());
-            cos.flush();
+        byte[] keyBytes = toEncrypt.getEncoded();
+        if (keyBytes.length > KeyBuffers.MAX_SMALL_FILE_SIZE) {
+            Arrays.fill(keyBytes, (byte) 0);
+            encryptLargeKeyToFile(dest, toEncrypt, encryptionKey, encryptionIV);
+            return;
+        }
+
+        KeyBuffers buffers = KeyBuffers.get();
+        try {
+            encryptSmallKeyToFile(dest, keyBytes, keyBytes.length, encryptionKey, encryptionIV, buffers);
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+            buffers.wipe();
+        }
+    }
+
+    /**
+     * Encrypt the slots of the key slab from <code>start</code> (inclusive) to <code>end</code> (exclusive). Each key
+     * is copied straight from the slab into the thread's input buffer so no other copy of the key is made.
+     */
+    private Void encryptToFile(KeySlab keys, int start, int end, Path dest, SecretKey encryptionKey,
+                               IvParameterSpec encryptionIV) throws RekeyException {
+        KeyBuffers buffers = KeyBuffers.get();
+        for (int slot = start; slot < end; slot++) {
+            Path keyFile = dest.resolve(CollectionKey.toKeyFileName(keys.getCollectionID(slot)));
+            try {
+                int len = keys.copyKey(slot, buffers.in(), 0);
+                encryptSmallKeyToFile(keyFile, buffers.in(), len, encryptionKey, encryptionIV, buffers);
+            } finally {
+                buffers.wipe();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encrypt a key into the output array of the buffers and write it to the dest file. The caller must wipe the
+     * buffers.
+     */
+    private void encryptSmallKeyToFile(Path dest, byte[] keyBytes, int length, SecretKey encryptionKey,
+                                       IvParameterSpec encryptionIV, KeyBuffers buffers) throws RekeyException {
+        try {
+            long start = System.nanoTime();
+            Cipher cipher = getEncryptCipher(encryptionKey, encryptionIV);
+            int len = cipher.doFinal(keyBytes, 0, length, buffers.out(), 0);
+            metrics.recordLatency(Operation.ENCRYPT, System.nanoTime() - start);
+
+            write(dest, buffers.outBuffer(len));
         } catch (Exception ex) {
+            cipherPool.invalidate(Cipher.ENCRYPT_MODE, encryptionKey, encryptionIV);
             throw new RekeyException(format("error re-encryption collection key: {0}", dest.toString()), ex);
         }
     }
 
-    private Cipher getEncryptCipher(SecretKey newKey, IvParameterSpec newIv) throws RekeyException {
+    private void encryptLargeKeyToFile(Path dest, SecretKey toEncrypt, SecretKey encryptionKey,
+                                       IvParameterSpec encryptionIV) throws RekeyException {
+        byte[] keyBytes = toEncrypt.getEncoded();
         try {
-            Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, newKey, newIv);
-            return cipher;
+            long start = System.nanoTime();
+            byte[] encrypted = getEncryptCipher(encryptionKey, encryptionIV).doFinal(keyBytes);
+            metrics.recordLatency(Operation.ENCRYPT, System.nanoTime() - start);
+
+            write(dest, ByteBuffer.wrap(encrypted));
         } catch (Exception ex) {
-            throw new RekeyException("error creating encryption cypher", ex);
+            cipherPool.invalidate(Cipher.ENCRYPT_MODE, encryptionKey, encryptionIV);
+            throw new RekeyException(format("error re-encryption collection key: {0}", dest.toString()), ex);
+        } finally {
+            Arrays.fill(keyBytes, (byte) 0);
+        }
+    }
+
+    @Override
+    public EncryptedKey encryptKey(CollectionKey toEncrypt, SecretKey encryptionKey, IvParameterSpec encryptionIV)
+            throws RekeyException {
+        byte[] keyBytes = null;
+        try {
+            keyBytes = toEncrypt.getKey().getEncoded();
+            long start = System.nanoTime();
+            byte[] encrypted = getEncryptCipher(encryptionKey, encryptionIV).doFinal(keyBytes);
+            metrics.recordLatency(Operation.ENCRYPT, System.nanoTime() - start);
+            return new EncryptedKey(toEncrypt.getCollectionID(), encrypted);
+        } catch (Exception ex) {
+            cipherPool.invalidate(Cipher.ENCRYPT_MODE, encryptionKey, encryptionIV);
+            throw new RekeyException(format("error re-encryption collection key: {0}", toEncrypt.getKeyFileName()),
+                    ex);
+        } finally {
+            if (keyBytes != null) {
+                Arrays.fill(keyBytes, (byte) 0);
+            }
+        }
+    }
+
+    @Override
+    public void writeKey(EncryptedKey encrypted, Path dest) throws RekeyException {
+        Path keyFile = encrypted.getKeyPath(dest);
+        try {
+            write(keyFile, ByteBuffer.wrap(encrypted.getEncrypted()));
+        } catch (Exception ex) {
+            throw new RekeyException(format("error writing collection key: {0}", keyFile.toString()), ex);
         }
     }
 
-    private Path getFilename(Path keyringDir, String collectionId) {
-        return keyringDir.resolve(collectionId + ".txt");
+    private void write(Path dest, ByteBuffer content) throws RekeyException {
+        int len = content.remaining();
+        long start = System.nanoTime();
+        fileWriter.write(dest, content);
+        metrics.recordLatency(Operation.WRITE, System.nanoTime() - start);
+        metrics.addBytesWritten(len);
+    }
+
+    private Cipher getEncryptCipher(SecretKey newKey, IvParameterSpec newIv) throws RekeyException {
+        try {
+            return cipherPool.getCipher(Cipher.ENCRYPT_MODE, newKey, newIv);
+        } catch (Exception ex) {
+            throw new RekeyException("error creating encryption cypher", ex);
+        }
     }
 }
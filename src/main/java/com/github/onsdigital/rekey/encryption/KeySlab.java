@@ -0,0 +1,81 @@
+package com.github.onsdigital.rekey.encryption;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.util.List;
+
+/**
+ * A compact store of decrypted collection keys. The key bytes are held in fixed width slots of a single contiguous
+ * slab rather than one {@link CollectionKey}/{@link javax.crypto.spec.SecretKeySpec} per key, so a keyring of millions
+ * of keys is a handful of objects and every copy of the key material can be zeroed with a single {@link #wipe()}.
+ *
+ * <p>Keys can be added and read by multiple threads concurrently. Closing the slab wipes it.</p>
+ */
+public interface KeySlab extends AutoCloseable {
+
+    /**
+     * The width of each slot in bytes - the largest AES key length.
+     */
+    int SLOT_WIDTH = 32;
+
+    /**
+     * Add a decrypted collection key to the next free slot.
+     *
+     * @param collectionID the collection ID the key belongs to.
+     * @param key          the array holding the decrypted key bytes.
+     * @param offset       the offset of the key in the array.
+     * @param length       the length of the key.
+     * @return the slot the key was added to.
+     * @throws RekeyException the key is larger than {@link #SLOT_WIDTH}, the collection ID has already been added
+     *                        or the slab is full.
+     */
+    int put(String collectionID, byte[] key, int offset, int length) throws RekeyException;
+
+    /**
+     * Copy the key in a slot into the destination array.
+     *
+     * @param slot   the slot to read.
+     * @param dest   the array to copy the key into. The caller is responsible for zeroing it after use.
+     * @param offset the offset in the destination array to copy the key to.
+     * @return the length of the key.
+     */
+    int copyKey(int slot, byte[] dest, int offset);
+
+    /**
+     * @param collectionID the collection ID.
+     * @return the slot holding the key for the collection or -1 if the collection has not been added.
+     */
+    int slotOf(String collectionID);
+
+    /**
+     * @param slot the slot.
+     * @return the collection ID of the key in the slot.
+     */
+    String getCollectionID(int slot);
+
+    /**
+     * @return the collection IDs of the keys held, in slot order.
+     */
+    List<String> getCollectionIDs();
+
+    /**
+     * @return the number of keys held.
+     */
+    int size();
+
+    /**
+     * @return the maximum number of keys the slab can hold.
+     */
+    int capacity();
+
+    /**
+     * Zero every slot and forget the collection IDs. The slab is empty and can be reused afterwards.
+     */
+    void wipe();
+
+    /**
+     * Wipe the slab.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,144 @@
+package com.github.onsdigital.rekey.encryption;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link KeySlab} backed by a single {@link ByteBuffer} of <code>capacity * SLOT_WIDTH</code> bytes, either on the heap
+ * or a direct buffer off the heap. Key lengths are held in a parallel byte array and the collection IDs in a parallel
+ * String array, indexed by slot.
+ *
+ * <p>Slots are claimed under a lock but the key bytes are copied in and out without one - each slot is only written
+ * by the thread that claimed it.</p>
+ */
+public class KeySlabImpl implements KeySlab {
+
+    static final int MAX_CAPACITY = Integer.MAX_VALUE / SLOT_WIDTH;
+
+    private static final int WIPE_CHUNK_SIZE = 4096;
+
+    private final ByteBuffer slab;
+    private final byte[] lengths;
+    private final String[] collectionIDs;
+    private final Map<String, Integer> index;
+    private int size;
+
+    /**
+     * Construct a new empty KeySlab.
+     *
+     * @param capacity the maximum number of keys the slab can hold.
+     * @param storage  where to hold the key bytes.
+     * @throws RekeyException the capacity is negative or larger than {@link #MAX_CAPACITY}.
+     */
+    public KeySlabImpl(int capacity, SlabStorage storage) throws RekeyException {
+        if (capacity < 0 || capacity > MAX_CAPACITY) {
+            throw new RekeyException(format("key slab capacity must be between 0 and {0} but was {1}",
+                    String.valueOf(MAX_CAPACITY), String.valueOf(capacity)));
+        }
+
+        int bytes = capacity * SLOT_WIDTH;
+        this.slab = storage == SlabStorage.OFF_HEAP ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+        this.lengths = new byte[capacity];
+        this.collectionIDs = new String[capacity];
+        this.index = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    @Override
+    public int put(String collectionID, byte[] key, int offset, int length) throws RekeyException {
+        if (length > SLOT_WIDTH) {
+            throw new RekeyException(format("collection key is too large for the key slab (collection: {0}, " +
+                    "length: {1}, max: {2})", collectionID, length, SLOT_WIDTH));
+        }
+
+        int slot = claim(collectionID);
+
+        int start = slot * SLOT_WIDTH;
+        for (int i = 0; i < length; i++) {
+            slab.put(start + i, key[offset + i]);
+        }
+        lengths[slot] = (byte) length;
+        return slot;
+    }
+
+    private synchronized int claim(String collectionID) throws RekeyException {
+        if (size == lengths.length) {
+            throw new RekeyException(format("key slab is full (capacity: {0})", lengths.length));
+        }
+        if (index.containsKey(collectionID)) {
+            throw new RekeyException(format("collection key already added to the key slab: {0}", collectionID));
+        }
+
+        int slot = size++;
+        collectionIDs[slot] = collectionID;
+        index.put(collectionID, slot);
+        return slot;
+    }
+
+    @Override
+    public int copyKey(int slot, byte[] dest, int offset) {
+        int length = lengths[slot];
+        int start = slot * SLOT_WIDTH;
+        for (int i = 0; i < length; i++) {
+            dest[offset + i] = slab.get(start + i);
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized int slotOf(String collectionID) {
+        Integer slot = index.get(collectionID);
+        return slot == null ? -1 : slot;
+    }
+
+    @Override
+    public String getCollectionID(int slot) {
+        return collectionIDs[slot];
+    }
+
+    @Override
+    public synchronized List<String> getCollectionIDs() {
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(collectionIDs, size)));
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return lengths.length;
+    }
+
+    @Override
+    public synchronized void wipe() {
+        if (slab.hasArray()) {
+            Arrays.fill(slab.array(), (byte) 0);
+        } else {
+            byte[] zeros = new byte[WIPE_CHUNK_SIZE];
+            ByteBuffer view = slab.duplicate();
+            view.clear();
+            while (view.hasRemaining()) {
+                view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+            }
+        }
+
+        Arrays.fill(lengths, (byte) 0);
+        Arrays.fill(collectionIDs, null);
+        index.clear();
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        wipe();
+    }
+}
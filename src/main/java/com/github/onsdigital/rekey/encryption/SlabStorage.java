@@ -0,0 +1,17 @@
+package com.github.onsdigital.rekey.encryption;
+
+/**
+ * Where a {@link KeySlab} holds the key bytes.
+ */
+public enum SlabStorage {
+
+    /**
+     * A single heap byte array.
+     */
+    HEAP,
+
+    /**
+     * A direct buffer outside of the Java heap - the key bytes are never moved or copied by the garbage collector.
+     */
+    OFF_HEAP
+}
@@ -0,0 +1,59 @@
+package com.github.onsdigital.rekey.files;
+
+/**
+ * The supported keyring backup archive formats.
+ */
+public enum ArchiveFormat {
+
+    /**
+     * Uncompressed tar - the entry bodies are copied directly from the key files using zero-copy transfers.
+     */
+    TAR(".tar"),
+
+    /**
+     * Gzip compressed tar.
+     */
+    TAR_GZ(".tar.gz"),
+
+    /**
+     * Zip archive, with the entries compressed in parallel.
+     */
+    ZIP(".zip");
+
+    private final String extension;
+
+    ArchiveFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return the file extension for the format including the leading ".".
+     */
+    public String getExtension() {
+        return this.extension;
+    }
+
+    /**
+     * @param archiveName the archive file name.
+     * @return the archive file name with the format extension removed.
+     */
+    public String removeExtension(String archiveName) {
+        if (archiveName.endsWith(extension)) {
+            return archiveName.substring(0, archiveName.length() - extension.length());
+        }
+        return archiveName;
+    }
+
+    /**
+     * @param archiveName the archive file name.
+     * @return the format with the file name's extension, or null if the extension is not a supported format.
+     */
+    public static ArchiveFormat fromFileName(String archiveName) {
+        for (ArchiveFormat format : values()) {
+            if (archiveName.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,253 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * A sidecar index of a backup archive, mapping each collection ID to the position of its key file in the archive and
+ * the SHA-256 of the key file content, so a single key can be restored without reading the rest of the archive.
+ *
+ * <p>The index is a UTF-8 text file with one tab separated line per key file, sorted by collection ID:</p>
+ * <pre>
+ * # rekey backup index v1
+ * &lt;collection-id&gt;  &lt;block-offset&gt;  &lt;entry-offset&gt;  &lt;sha256&gt;
+ * </pre>
+ * <p>The block offset is the position in the archive file of the compressed block holding the start of the key
+ * file's tar entry and the entry offset is the position of the entry within that block's uncompressed data. For an
+ * uncompressed tar the block offset is the position of the entry itself and the entry offset is always 0.</p>
+ *
+ * <p>Entries are found with a binary search over the file, reading a few KB regardless of the number of keys.</p>
+ */
+public class ArchiveIndex {
+
+    /**
+     * The index file extension, including the leading ".".
+     */
+    public static final String EXTENSION = ".index";
+
+    static final String HEADER = "# rekey backup index v1";
+
+    // Once the search range is this small the remaining lines are scanned in a single read.
+    private static final int SCAN_SIZE = 8 * 1024;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Add a key file to the index.
+     *
+     * @param collectionID the collection ID.
+     * @param blockOffset  the offset of the compressed block holding the start of the key file's archive entry.
+     * @param entryOffset  the offset of the archive entry within the uncompressed block.
+     * @param digest       the hex SHA-256 of the key file content.
+     */
+    void add(String collectionID, long blockOffset, long entryOffset, String digest) {
+        entries.add(new Entry(collectionID, blockOffset, entryOffset, digest));
+    }
+
+    /**
+     * @return the number of entries in the index.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write the index to disk, sorted by collection ID.
+     *
+     * @param dest the file to write the index to.
+     * @throws RekeyException problem writing the index.
+     */
+    public void write(Path dest) throws RekeyException {
+        entries.sort(Comparator.comparing(Entry::getCollectionID));
+
+        try (BufferedWriter writer = Files.newBufferedWriter(dest, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Entry e : entries) {
+                writer.write(String.join("\t", e.getCollectionID(), String.valueOf(e.getBlockOffset()),
+                        String.valueOf(e.getEntryOffset()), e.getDigest()));
+                writer.write('\n');
+            }
+        } catch (IOException ex) {
+            throw new RekeyException(format("error writing backup index: {0}", dest), ex);
+        }
+    }
+
+    /**
+     * @param archive the backup archive.
+     * @param format  the {@link ArchiveFormat} of the archive.
+     * @return the index file to write alongside the archive, named after the archive without its extension.
+     */
+    public static Path getIndexFile(Path archive, ArchiveFormat format) {
+        return archive.resolveSibling(format.removeExtension(archive.getFileName().toString()) + EXTENSION);
+    }
+
+    /**
+     * Find the entry for a collection in an index file.
+     *
+     * @param index        the index file.
+     * @param collectionID the collection ID to find.
+     * @return the entry, or null if the index does not contain the collection.
+     * @throws RekeyException problem reading the index or the index is invalid.
+     */
+    public static Entry find(Path index, String collectionID) throws RekeyException {
+        try (RandomAccessFile file = new RandomAccessFile(index.toFile(), "r")) {
+            byte[] header = (HEADER + "\n").getBytes(StandardCharsets.UTF_8);
+            byte[] actual = new byte[header.length];
+            if (file.read(actual) != header.length || !Arrays.equals(header, actual)) {
+                throw new RekeyException(format("invalid backup index, unexpected header: {0}", index));
+            }
+
+            // Both bounds are always at the start of a line.
+            long lo = header.length;
+            long hi = file.length();
+
+            while (hi - lo > SCAN_SIZE) {
+                long mid = (lo + hi) >>> 1;
+                long start = nextLineStart(file, mid, hi);
+                if (start >= hi) {
+                    break;
+                }
+
+                String line = readLine(file, start, hi);
+                Entry e = parse(index, line);
+                int cmp = e.getCollectionID().compareTo(collectionID);
+                if (cmp == 0) {
+                    return e;
+                } else if (cmp < 0) {
+                    lo = start + line.getBytes(StandardCharsets.UTF_8).length + 1;
+                } else {
+                    hi = start;
+                }
+            }
+
+            return scan(file, index, lo, hi, collectionID);
+        } catch (IOException ex) {
+            throw new RekeyException(format("error reading backup index: {0}", index), ex);
+        }
+    }
+
+    /**
+     * @return the start of the first line after the one containing pos, or hi if there isn't one before hi.
+     */
+    private static long nextLineStart(RandomAccessFile file, long pos, long hi) throws IOException {
+        byte[] buf = new byte[512];
+        file.seek(pos);
+        while (pos < hi) {
+            int n = file.read(buf, 0, (int) Math.min(buf.length, hi - pos));
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf[i] == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+        return hi;
+    }
+
+    private static String readLine(RandomAccessFile file, long start, long hi) throws IOException {
+        long end = nextLineStart(file, start, hi);
+        byte[] line = new byte[(int) (end - start)];
+        file.seek(start);
+        file.readFully(line);
+
+        int len = line.length > 0 && line[line.length - 1] == '\n' ? line.length - 1 : line.length;
+        return new String(line, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private static Entry scan(RandomAccessFile file, Path index, long lo, long hi, String collectionID)
+            throws IOException, RekeyException {
+        byte[] buf = new byte[(int) (hi - lo)];
+        file.seek(lo);
+        file.readFully(buf);
+
+        for (String line : new String(buf, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            Entry e = parse(index, line);
+            int cmp = e.getCollectionID().compareTo(collectionID);
+            if (cmp == 0) {
+                return e;
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private static Entry parse(Path index, String line) throws RekeyException {
+        String[] fields = line.split("\t");
+        if (fields.length != 4) {
+            throw new RekeyException(format("invalid backup index, malformed line: {0}", index));
+        }
+
+        try {
+            return new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]);
+        } catch (NumberFormatException ex) {
+            throw new RekeyException(format("invalid backup index, malformed line: {0}", index), ex);
+        }
+    }
+
+    /**
+     * The position of a key file in a backup archive and the SHA-256 of its content.
+     */
+    public static class Entry {
+
+        private final String collectionID;
+        private final long blockOffset;
+        private final long entryOffset;
+        private final String digest;
+
+        Entry(String collectionID, long blockOffset, long entryOffset, String digest) {
+            this.collectionID = collectionID;
+            this.blockOffset = blockOffset;
+            this.entryOffset = entryOffset;
+            this.digest = digest;
+        }
+
+        /**
+         * @return the collection ID.
+         */
+        public String getCollectionID() {
+            return this.collectionID;
+        }
+
+        /**
+         * @return the offset in the archive file of the compressed block holding the start of the archive entry.
+         */
+        public long getBlockOffset() {
+            return this.blockOffset;
+        }
+
+        /**
+         * @return the offset of the archive entry within the uncompressed block.
+         */
+        public long getEntryOffset() {
+            return this.entryOffset;
+        }
+
+        /**
+         * @return the hex SHA-256 of the key file content.
+         */
+        public String getDigest() {
+            return this.digest;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.nio.file.Path;
+
+/**
+ * Writes an archive one entry at a time. Closing the writer completes the archive and flushes it to disk.
+ */
+public interface ArchiveWriter extends AutoCloseable {
+
+    /**
+     * Add a file to the archive. Entries are written under a dir named after the archive, matching the layout of
+     * {@link FileArchiver#createArchive}.
+     *
+     * @param file    the file the content was read from.
+     * @param content the content of the file.
+     * @throws RekeyException problem writing the entry.
+     */
+    void addEntry(Path file, byte[] content) throws RekeyException;
+
+    /**
+     * Complete the archive and flush it to disk.
+     *
+     * @throws RekeyException problem completing the archive.
+     */
+    @Override
+    void close() throws RekeyException;
+}
@@ -0,0 +1,187 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.report.Operation;
+import com.github.onsdigital.rekey.report.RekeyMetrics;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link ArchiveWriter} backed by the commons-compress archive streams. Not thread safe - entries must be added from
+ * a single thread.
+ * <p>
+ * An indexed writer also writes an {@link ArchiveIndex} next to the archive when it is closed. Tar records are written
+ * straight through rather than buffered into 10KB tar blocks, so the position of each entry is known as it is added,
+ * and tar.gz blocks are compressed independently so they can be decompressed on their own.
+ */
+class ArchiveWriterImpl implements ArchiveWriter {
+
+    private static final Logger LOG = LogManager.getLogger(ArchiveWriterImpl.class);
+
+    private final Path dest;
+    private final FileChannel channel;
+    private final ArchiveOutputStream<? extends ArchiveEntry> archiveOut;
+    private final String backupDir;
+    private final RekeyMetrics metrics;
+    private final ArchiveFormat format;
+    private final boolean indexed;
+    private final List<String> indexIDs = new ArrayList<>();
+    private final List<Long> indexOffsets = new ArrayList<>();
+    private final List<String> indexDigests = new ArrayList<>();
+    private ParallelGzipOutputStream gzOut;
+    private boolean closed;
+
+    ArchiveWriterImpl(Path dest, ArchiveFormat format, int level, WorkerPool workerPool, RekeyMetrics metrics)
+            throws RekeyException {
+        this(dest, format, level, workerPool, metrics, false);
+    }
+
+    ArchiveWriterImpl(Path dest, ArchiveFormat format, int level, WorkerPool workerPool, RekeyMetrics metrics,
+                      boolean indexed) throws RekeyException {
+        if (indexed && format == ArchiveFormat.ZIP) {
+            throw new RekeyException("backup index is only supported for TAR and TAR_GZ archives");
+        }
+
+        this.dest = dest;
+        this.metrics = metrics;
+        this.format = format;
+        this.indexed = indexed;
+        this.backupDir = format.removeExtension(dest.getFileName().toString());
+
+        try {
+            this.channel = FileChannel.open(dest, WRITE, CREATE, TRUNCATE_EXISTING);
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+
+            switch (format) {
+                case ZIP:
+                    ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(out);
+                    zipOut.setLevel(level);
+                    this.archiveOut = zipOut;
+                    break;
+                case TAR:
+                    this.archiveOut = newTarStream(out, indexed);
+                    break;
+                default:
+                    this.gzOut = new ParallelGzipOutputStream(out, workerPool, level, indexed);
+                    this.archiveOut = newTarStream(gzOut, indexed);
+            }
+        } catch (IOException ex) {
+            throw new RekeyException(format("error creating archive: {0}", dest), ex);
+        }
+    }
+
+    private static TarArchiveOutputStream newTarStream(OutputStream out, boolean indexed) {
+        TarArchiveOutputStream tarOut = indexed ? new TarArchiveOutputStream(out, ChannelTarWriter.RECORD_SIZE)
+                : new TarArchiveOutputStream(out);
+        // Required to handle long file names.
+        tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        return tarOut;
+    }
+
+    @Override
+    public void addEntry(Path file, byte[] content) throws RekeyException {
+        long start = System.nanoTime();
+        String name = FileArchiverImpl.getTarEntryName(backupDir, file);
+        LOG.debug("archive entry: {}", file.getFileName());
+
+        try {
+            if (archiveOut instanceof ZipArchiveOutputStream) {
+                ZipArchiveEntry entry = new ZipArchiveEntry(name);
+                entry.setMethod(ZipEntry.DEFLATED);
+                entry.setSize(content.length);
+                ((ZipArchiveOutputStream) archiveOut).putArchiveEntry(entry);
+            } else {
+                if (indexed) {
+                    addIndexEntry(file, content);
+                }
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                entry.setSize(content.length);
+                ((TarArchiveOutputStream) archiveOut).putArchiveEntry(entry);
+            }
+
+            archiveOut.write(content);
+            archiveOut.closeArchiveEntry();
+            metrics.recordLatency(Operation.ARCHIVE, System.nanoTime() - start);
+        } catch (IOException ex) {
+            throw new RekeyException(format("error adding archive entry: {0}", file), ex);
+        }
+    }
+
+    private void addIndexEntry(Path file, byte[] content) {
+        // Every record before this entry has been written through, so this is the (uncompressed) offset of its header.
+        indexIDs.add(FilenameUtils.removeExtension(file.getFileName().toString()));
+        indexOffsets.add(archiveOut.getBytesWritten());
+        indexDigests.add(BackupManifest.digest(content));
+    }
+
+    @Override
+    public void close() throws RekeyException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            archiveOut.finish();
+            if (gzOut != null) {
+                // Write the gzip trailer before syncing so the archive on disk is complete.
+                gzOut.finish();
+            }
+            archiveOut.flush();
+            channel.force(true);
+        } catch (IOException ex) {
+            throw new RekeyException(format("error completing archive: {0}", dest), ex);
+        } finally {
+            try {
+                archiveOut.close();
+            } catch (IOException ex) {
+                LOG.warn("error closing archive: {}", dest);
+            }
+        }
+
+        if (indexed) {
+            writeIndex();
+        }
+    }
+
+    private void writeIndex() throws RekeyException {
+        ArchiveIndex index = new ArchiveIndex();
+        for (int i = 0; i < indexIDs.size(); i++) {
+            long offset = indexOffsets.get(i);
+            if (gzOut == null) {
+                index.add(indexIDs.get(i), offset, 0, indexDigests.get(i));
+            } else {
+                int block = (int) (offset / gzOut.getBlockSize());
+                index.add(indexIDs.get(i), gzOut.getBlockOffset(block), offset % gzOut.getBlockSize(),
+                        indexDigests.get(i));
+            }
+        }
+
+        Path indexFile = ArchiveIndex.getIndexFile(dest, format);
+        index.write(indexFile);
+        LOG.info("backup index written (keys: {}): {}", index.size(), indexFile);
+    }
+}
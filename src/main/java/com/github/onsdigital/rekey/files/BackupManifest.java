@@ -0,0 +1,312 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * A content hash manifest of a keyring backup. Records the SHA-256 of every key file in the keyring at the time of
+ * the backup and the archive holding its content - the backup's own archive for a new or changed file, or the archive
+ * of an earlier backup for a file that has not changed since. Each manifest names the manifest of the previous backup
+ * along with its SHA-256, and lists every archive it references along with the archive's SHA-256. Before an
+ * incremental backup reuses the previous manifest it checks both against the files on disk, so a replaced or corrupted
+ * manifest or archive is never built on.
+ *
+ * <p>The manifest is a UTF-8 text file, the entries grouped by the archive they are stored in:</p>
+ * <pre>
+ * # rekey backup manifest v1
+ * previous &lt;sha256&gt; keyring-backup-24-01-01-120000000.manifest
+ * archive &lt;sha256&gt; keyring-backup-24-01-01-120000000.tar.gz
+ * &lt;sha256&gt; collection1.txt
+ * archive &lt;sha256&gt; keyring-backup-24-02-01-120000000.tar.gz
+ * &lt;sha256&gt; collection2.txt
+ * </pre>
+ * <p>Archive names are relative to the dir holding the manifest.</p>
+ */
+public class BackupManifest {
+
+    /**
+     * The manifest file extension, including the leading ".".
+     */
+    public static final String EXTENSION = ".manifest";
+
+    static final String HEADER = "# rekey backup manifest v1";
+    static final String PREVIOUS = "previous";
+    static final String ARCHIVE = "archive";
+    static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(BackupManifest::newDigest);
+
+    private final String previous;
+    private final String previousDigest;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, String> archiveDigests = new LinkedHashMap<>();
+
+    /**
+     * Construct a new empty BackupManifest.
+     *
+     * @param previous       the file name of the previous backup's manifest, or null if this is the first backup.
+     * @param previousDigest the SHA-256 of the previous backup's manifest, or null if this is the first backup.
+     */
+    public BackupManifest(String previous, String previousDigest) {
+        this.previous = previous;
+        this.previousDigest = previousDigest;
+    }
+
+    /**
+     * Add a key file to the manifest, replacing any existing entry with the same name.
+     *
+     * @param fileName the key file name.
+     * @param digest   the hex SHA-256 of the key file content.
+     * @param archive  the file name of the archive holding the key file content.
+     */
+    public void put(String fileName, String digest, String archive) {
+        entries.put(fileName, new Entry(digest, archive));
+    }
+
+    /**
+     * Record the content hash of an archive, replacing any existing hash for the archive.
+     *
+     * @param archive the file name of the archive.
+     * @param digest  the hex SHA-256 of the archive.
+     */
+    public void putArchive(String archive, String digest) {
+        archiveDigests.put(archive, digest);
+    }
+
+    /**
+     * @param archive the file name of the archive.
+     * @return the hex SHA-256 of the archive, or null if the manifest does not contain it.
+     */
+    public String getArchiveDigest(String archive) {
+        return archiveDigests.get(archive);
+    }
+
+    /**
+     * @param fileName the key file name.
+     * @return the entry for the key file, or null if the manifest does not contain it.
+     */
+    public Entry get(String fileName) {
+        return entries.get(fileName);
+    }
+
+    /**
+     * @return an unmodifiable view of the entries by key file name.
+     */
+    public Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * @return the file names of every archive holding content referenced by the manifest.
+     */
+    public Set<String> getArchives() {
+        Set<String> archives = new LinkedHashSet<>();
+        entries.values().forEach((e) -> archives.add(e.getArchive()));
+        return archives;
+    }
+
+    /**
+     * @return the file name of the previous backup's manifest, or null if this is the first backup in the chain.
+     */
+    public String getPrevious() {
+        return this.previous;
+    }
+
+    /**
+     * @return the hex SHA-256 of the previous backup's manifest, or null if this is the first backup in the chain.
+     */
+    public String getPreviousDigest() {
+        return this.previousDigest;
+    }
+
+    /**
+     * Write the manifest to disk.
+     *
+     * @param dest the file to write the manifest to.
+     * @throws RekeyException problem writing the manifest.
+     */
+    public void write(Path dest) throws RekeyException {
+        Map<String, List<String>> byArchive = new LinkedHashMap<>();
+        entries.forEach((name, e) -> byArchive.computeIfAbsent(e.getArchive(), (a) -> new ArrayList<>()).add(name));
+        for (String archive : byArchive.keySet()) {
+            if (!archiveDigests.containsKey(archive)) {
+                throw new RekeyException(format("backup manifest has no digest for archive: {0}", archive));
+            }
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(dest, StandardCharsets.UTF_8)) {
+            writeLine(writer, HEADER);
+            if (previous != null) {
+                writeLine(writer, String.join(" ", PREVIOUS, previousDigest, previous));
+            }
+
+            for (Map.Entry<String, List<String>> archive : byArchive.entrySet()) {
+                writeLine(writer, String.join(" ", ARCHIVE, archiveDigests.get(archive.getKey()), archive.getKey()));
+                for (String name : archive.getValue()) {
+                    writeLine(writer, String.join(" ", entries.get(name).getDigest(), name));
+                }
+            }
+        } catch (IOException ex) {
+            throw new RekeyException(format("error writing backup manifest: {0}", dest), ex);
+        }
+    }
+
+    private static void writeLine(BufferedWriter writer, String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    /**
+     * Read a manifest from disk.
+     *
+     * @param src the manifest file.
+     * @return the manifest.
+     * @throws RekeyException problem reading the manifest or the manifest is invalid.
+     */
+    public static BackupManifest read(Path src) throws RekeyException {
+        try (BufferedReader reader = Files.newBufferedReader(src, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new RekeyException(format("invalid backup manifest, unexpected header: {0}", src));
+            }
+
+            String line = reader.readLine();
+            BackupManifest manifest;
+            if (line != null && line.startsWith(PREVIOUS + " ")) {
+                String[] previous = split(src, line, 3);
+                manifest = new BackupManifest(previous[2], previous[1]);
+                line = reader.readLine();
+            } else {
+                manifest = new BackupManifest(null, null);
+            }
+
+            String archive = null;
+            for (; line != null; line = reader.readLine()) {
+                if (line.startsWith(ARCHIVE + " ")) {
+                    String[] values = split(src, line, 3);
+                    archive = values[2];
+                    manifest.putArchive(archive, values[1]);
+                } else if (archive == null) {
+                    throw new RekeyException(format("invalid backup manifest, entry before archive: {0}", src));
+                } else {
+                    String[] entry = split(src, line, 2);
+                    manifest.put(entry[1], entry[0], archive);
+                }
+            }
+            return manifest;
+        } catch (IOException ex) {
+            throw new RekeyException(format("error reading backup manifest: {0}", src), ex);
+        }
+    }
+
+    private static String[] split(Path src, String line, int fields) throws RekeyException {
+        // The last field is the key/archive file name and is taken as is.
+        String[] values = line.split(" ", fields);
+        if (values.length != fields || values[fields - 1].isEmpty()) {
+            throw new RekeyException(format("invalid backup manifest, malformed line: {0}", src));
+        }
+        return values;
+    }
+
+    /**
+     * @param archive the backup archive.
+     * @param format  the {@link ArchiveFormat} of the archive.
+     * @return the manifest file to write alongside the archive, named after the archive without its extension.
+     */
+    public static Path getManifestFile(Path archive, ArchiveFormat format) {
+        return archive.resolveSibling(format.removeExtension(archive.getFileName().toString()) + EXTENSION);
+    }
+
+    /**
+     * @param file the file to hash.
+     * @return the hex SHA-256 of the file content.
+     * @throws RekeyException problem reading the file.
+     */
+    public static String digest(Path file) throws RekeyException {
+        // Streamed so an archive can be hashed without reading it into memory.
+        MessageDigest digest = DIGESTS.get();
+        byte[] buf = new byte[READ_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                digest.update(buf, 0, n);
+            }
+            return toHex(digest.digest());
+        } catch (IOException ex) {
+            digest.reset();
+            throw new RekeyException(format("error reading file to hash: {0}", file), ex);
+        }
+    }
+
+    /**
+     * @param content the content to hash.
+     * @return the hex SHA-256 of the content.
+     */
+    public static String digest(byte[] content) {
+        return toHex(DIGESTS.get().digest(content));
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * The content hash of a key file and the archive its content is stored in.
+     */
+    public static class Entry {
+
+        private final String digest;
+        private final String archive;
+
+        Entry(String digest, String archive) {
+            this.digest = digest;
+            this.archive = archive;
+        }
+
+        /**
+         * @return the hex SHA-256 of the key file content.
+         */
+        public String getDigest() {
+            return this.digest;
+        }
+
+        /**
+         * @return the file name of the archive holding the key file content.
+         */
+        public String getArchive() {
+            return this.archive;
+        }
+    }
+}
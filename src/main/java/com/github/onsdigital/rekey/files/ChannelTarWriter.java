@@ -0,0 +1,131 @@
+package com.github.onsdigital.rekey.files;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Writes an uncompressed tar directly to a {@link FileChannel}. Headers are built with commons-compress and the entry
+ * bodies are copied with {@link FileChannel#transferTo} so the key file content never passes through the Java heap.
+ * Names longer than the 100 byte ustar limit are written with a PAX extended header, matching the
+ * <code>LONGFILE_POSIX</code> mode used for the tar.gz backups.
+ */
+class ChannelTarWriter implements Closeable {
+
+    static final int RECORD_SIZE = TarConstants.DEFAULT_RCDSIZE;
+    static final int BLOCK_SIZE = TarConstants.DEFAULT_BLKSIZE;
+
+    private static final String PAX_HEADER_PREFIX = "./PaxHeaders.X/";
+
+    private final FileChannel out;
+    private final byte[] header = new byte[RECORD_SIZE];
+    private long written;
+
+    ChannelTarWriter(Path tarFile) throws IOException {
+        this.out = FileChannel.open(tarFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Add a file entry to the tar.
+     *
+     * @param src   the file to add.
+     * @param name  the entry name.
+     * @param attrs the attributes of the file, used for the entry size and modification time.
+     */
+    void addFile(Path src, String name, BasicFileAttributes attrs) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > TarConstants.NAMELEN) {
+            writePaxPath(name);
+        }
+
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(attrs.size());
+        entry.setModTime(attrs.lastModifiedTime().toMillis());
+        writeHeader(entry);
+
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ)) {
+            long size = attrs.size();
+            long pos = 0;
+            while (pos < size) {
+                long n = in.transferTo(pos, size - pos, out);
+                if (n == 0) {
+                    // The file is shorter than the size already written to the entry header.
+                    throw new IOException(format("file size changed while archiving: {0}", src));
+                }
+                pos += n;
+            }
+            written += size;
+        }
+        padTo(RECORD_SIZE);
+    }
+
+    /**
+     * Write the end of archive marker and pad the output to a whole block.
+     */
+    void finish() throws IOException {
+        writeFully(ByteBuffer.allocate(RECORD_SIZE * 2));
+        padTo(BLOCK_SIZE);
+        out.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writePaxPath(String name) throws IOException {
+        byte[] record = paxRecord("path", name);
+
+        // The name may be over the limit in UTF-8 bytes but not in chars - the header truncates any remaining bytes.
+        String headerName = PAX_HEADER_PREFIX + name;
+        TarArchiveEntry pax = new TarArchiveEntry(
+                headerName.substring(0, Math.min(TarConstants.NAMELEN, headerName.length())),
+                TarConstants.LF_PAX_EXTENDED_HEADER_LC);
+        pax.setSize(record.length);
+        writeHeader(pax);
+
+        writeFully(ByteBuffer.wrap(record));
+        padTo(RECORD_SIZE);
+    }
+
+    /**
+     * A PAX record is "&lt;length&gt; &lt;key&gt;=&lt;value&gt;\n" where the length includes its own digits.
+     */
+    static byte[] paxRecord(String key, String value) {
+        int len = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int total = len + String.valueOf(len).length();
+        if (String.valueOf(total).length() != String.valueOf(len).length()) {
+            total = len + String.valueOf(total).length();
+        }
+        return (total + " " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeHeader(TarArchiveEntry entry) throws IOException {
+        entry.writeEntryHeader(header);
+        writeFully(ByteBuffer.wrap(header));
+    }
+
+    private void padTo(int size) throws IOException {
+        int remainder = (int) (written % size);
+        if (remainder > 0) {
+            writeFully(ByteBuffer.allocate(size - remainder));
+        }
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            written += out.write(buf);
+        }
+    }
+}
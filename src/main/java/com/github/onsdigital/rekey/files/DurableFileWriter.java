@@ -0,0 +1,58 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Writes small files (collection keys) so that they survive a power loss once {@link #sync()} has returned.
+ * <p>
+ * Until {@link #start(int, boolean)} is called files are written in place without being synced, which is the
+ * original (fast but not crash safe) behaviour.
+ */
+public interface DurableFileWriter extends AutoCloseable {
+
+    /**
+     * Enable durable writes. Each file is written to a temporary file next to its target, fsynced in batches and
+     * then renamed into place.
+     *
+     * @param batchSize  the number of files to write before syncing them.
+     * @param background if true batches are synced on a background thread while the caller carries on writing.
+     * @throws RekeyException invalid batch size or the writer was already started.
+     */
+    void start(int batchSize, boolean background) throws RekeyException;
+
+    /**
+     * @return true if durable writes have been enabled.
+     */
+    boolean isStarted();
+
+    /**
+     * Write the content to the target file, replacing it if it already exists.
+     *
+     * @param target  the file to write.
+     * @param content the content to write.
+     * @throws RekeyException problem writing the file, or a previous background sync failed.
+     */
+    void write(Path target, ByteBuffer content) throws RekeyException;
+
+    /**
+     * Sync any files not yet synced, rename them into place and sync each of their parent dirs. Does nothing if the
+     * writer has not been started.
+     *
+     * @throws RekeyException problem syncing or renaming the files.
+     */
+    void sync() throws RekeyException;
+
+    /**
+     * @return the total time spent syncing files and dirs in nanoseconds.
+     */
+    long getSyncNanos();
+
+    /**
+     * Stop the background syncer. Files not yet synced are left as temporary files.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,296 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link DurableFileWriter} that keeps each file of the current batch open until the batch is full and then syncs
+ * the whole batch in one go, so the write of one batch overlaps the sync of the previous one when a background syncer
+ * is used. A file is only renamed into place after it has been synced, so a target file either has its old content
+ * or its complete new content - never a partial write. Parent dirs are synced once, by {@link #sync()}.
+ */
+public class DurableFileWriterImpl implements DurableFileWriter {
+
+    private static final Logger LOG = LogManager.getLogger(DurableFileWriterImpl.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    static final String TEMP_FILE_EXT = ".tmp";
+    static final String THREAD_NAME = "rekey-syncer";
+
+    // Limit the number of batches (and so open files) waiting on the background syncer.
+    static final int MAX_PENDING_BATCHES = 2;
+
+    private int batchSize;
+    private ExecutorService syncer;
+    private Semaphore pendingBatches;
+    private List<PendingFile> batch;
+    // Full batches taken off the writer but not yet synced, guarded by this.
+    private int inFlightBatches;
+    private final Set<Path> dirs = new LinkedHashSet<>();
+    private final AtomicReference<RekeyException> failure = new AtomicReference<>();
+    private final AtomicLong syncNanos = new AtomicLong();
+    private final AtomicLong syncedFiles = new AtomicLong();
+
+    @Override
+    public synchronized void start(int batchSize, boolean background) throws RekeyException {
+        if (batchSize < 1) {
+            throw new RekeyException(format("sync batch size must be greater than 0 but was {0}", batchSize));
+        }
+
+        if (batch != null) {
+            throw new RekeyException("durable file writer already started");
+        }
+
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+
+        if (background) {
+            this.pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+            this.syncer = Executors.newSingleThreadExecutor((r) -> {
+                Thread t = new Thread(r, THREAD_NAME);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    @Override
+    public synchronized boolean isStarted() {
+        return batch != null;
+    }
+
+    @Override
+    public void write(Path target, ByteBuffer content) throws RekeyException {
+        if (!isStarted()) {
+            writeInPlace(target, content);
+            return;
+        }
+
+        checkFailure();
+
+        Path temp = target.resolveSibling(target.getFileName().toString() + TEMP_FILE_EXT);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(temp, WRITE, CREATE, TRUNCATE_EXISTING);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        } catch (IOException ex) {
+            closeQuietly(channel);
+            throw new RekeyException(format("error writing file: {0}", temp), ex);
+        }
+
+        List<PendingFile> full = null;
+        synchronized (this) {
+            batch.add(new PendingFile(channel, temp, target));
+            if (batch.size() >= batchSize) {
+                full = batch;
+                batch = new ArrayList<>(batchSize);
+                inFlightBatches++;
+            }
+        }
+
+        if (full != null) {
+            submit(full);
+        }
+    }
+
+    private void writeInPlace(Path target, ByteBuffer content) throws RekeyException {
+        try (FileChannel channel = FileChannel.open(target, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        } catch (IOException ex) {
+            throw new RekeyException(format("error writing file: {0}", target), ex);
+        }
+    }
+
+    private void submit(List<PendingFile> full) throws RekeyException {
+        if (syncer == null) {
+            try {
+                syncBatch(full);
+            } finally {
+                batchSynced();
+            }
+            return;
+        }
+
+        try {
+            pendingBatches.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            full.forEach((f) -> closeQuietly(f.channel));
+            batchSynced();
+            throw new RekeyException("interrupted waiting for background syncer", ex);
+        }
+
+        syncer.execute(() -> {
+            try {
+                syncBatch(full);
+            } catch (RekeyException ex) {
+                failure.compareAndSet(null, ex);
+            } finally {
+                pendingBatches.release();
+                batchSynced();
+            }
+        });
+    }
+
+    private synchronized void batchSynced() {
+        inFlightBatches--;
+        notifyAll();
+    }
+
+    private void syncBatch(List<PendingFile> files) throws RekeyException {
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                PendingFile f = files.get(i);
+                try {
+                    f.channel.force(false);
+                    f.channel.close();
+                    Files.move(f.temp, f.target, ATOMIC_MOVE, REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    files.subList(i, files.size()).forEach((p) -> closeQuietly(p.channel));
+                    throw new RekeyException(format("error syncing file: {0}", f.target), ex);
+                }
+            }
+        } finally {
+            syncNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        syncedFiles.addAndGet(files.size());
+        synchronized (dirs) {
+            for (PendingFile f : files) {
+                dirs.add(f.target.getParent());
+            }
+        }
+    }
+
+    @Override
+    public void sync() throws RekeyException {
+        List<PendingFile> remaining;
+        synchronized (this) {
+            if (batch == null) {
+                return;
+            }
+            remaining = batch;
+            batch = new ArrayList<>(batchSize);
+        }
+
+        awaitInFlightBatches();
+        checkFailure();
+        syncBatch(remaining);
+
+        long start = System.nanoTime();
+        synchronized (dirs) {
+            for (Path dir : dirs) {
+                syncDir(dir);
+            }
+            dirs.clear();
+        }
+        syncNanos.addAndGet(System.nanoTime() - start);
+
+        LOG.info("synced files to disk (total: {}, sync time: {}ms)", syncedFiles.get(),
+                TimeUnit.NANOSECONDS.toMillis(syncNanos.get()));
+    }
+
+    /**
+     * Wait for every full batch written before the call to be synced, whether by the background syncer or by another
+     * writer thread, so a file that has been written is always on disk once {@link #sync()} returns.
+     */
+    private synchronized void awaitInFlightBatches() throws RekeyException {
+        try {
+            while (inFlightBatches > 0) {
+                wait();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RekeyException("interrupted waiting for file sync", ex);
+        }
+    }
+
+    static void syncDir(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // Not every platform allows a dir to be opened (e.g. Windows) - the renames are still atomic.
+            LOG.warn("unable to sync dir: {}", dir);
+        }
+    }
+
+    private void checkFailure() throws RekeyException {
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Override
+    public long getSyncNanos() {
+        return syncNanos.get();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        if (batch != null) {
+            batch.forEach((f) -> closeQuietly(f.channel));
+            batch.clear();
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOG.warn("error closing file channel");
+        }
+    }
+
+    /**
+     * A file that has been written to its temporary file but not yet synced and renamed into place.
+     */
+    private static final class PendingFile {
+
+        private final FileChannel channel;
+        private final Path temp;
+        private final Path target;
+
+        PendingFile(FileChannel channel, Path temp, Path target) {
+            this.channel = channel;
+            this.temp = temp;
+            this.target = target;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.github.onsdigital.rekey.files;
 import com.github.onsdigital.rekey.RekeyException;
 
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Predicate;
 
 /**
@@ -19,4 +21,77 @@ public interface FileArchiver {
      * @throws RekeyException problem creating tar file.
      */
     void createTarGz(Path src, Path dest, Predicate<Path> filter) throws RekeyException;
+
+    /**
+     * Create an archive of the specified src {@link Path} in the requested format.
+     *
+     * @param src    the file/dir to archive.
+     * @param dest   the destination of the archive to create.
+     * @param filter a {@link Predicate} to filter which files should be added to the archive.
+     * @param format the {@link ArchiveFormat} to create.
+     * @param level  the deflate compression level (0-9, or -1 for the default). Ignored for {@link ArchiveFormat#TAR}.
+     * @throws RekeyException problem creating the archive.
+     */
+    void createArchive(Path src, Path dest, Predicate<Path> filter, ArchiveFormat format, int level)
+            throws RekeyException;
+
+    /**
+     * Open an {@link ArchiveWriter} to add entries to an archive one at a time, for callers that already hold the
+     * content of each file. The archive is only complete once the writer has been closed.
+     *
+     * @param dest   the destination of the archive to create.
+     * @param format the {@link ArchiveFormat} to create.
+     * @param level  the deflate compression level (0-9, or -1 for the default). Ignored for {@link ArchiveFormat#TAR}.
+     * @return the {@link ArchiveWriter}.
+     * @throws RekeyException problem creating the archive.
+     */
+    ArchiveWriter openArchive(Path dest, ArchiveFormat format, int level) throws RekeyException;
+
+    /**
+     * Create an incremental backup of the specified src {@link Path}. The archive only holds the files that are new or
+     * have changed since the previous backup, and a {@link BackupManifest} written next to it records the content
+     * hash of every file and the archive holding its content, chained to the previous backup's manifest. Every file
+     * is archived if there is no previous manifest or an archive it references no longer exists.
+     *
+     * @param src      the file/dir to archive.
+     * @param dest     the destination of the archive to create.
+     * @param filter   a {@link Predicate} to filter which files should be added to the archive.
+     * @param format   the {@link ArchiveFormat} to create.
+     * @param level    the deflate compression level (0-9, or -1 for the default). Ignored for
+     *                 {@link ArchiveFormat#TAR}.
+     * @param previous the manifest of the previous backup, in the same dir as dest, or null if there isn't one.
+     * @return the manifest of the new backup.
+     * @throws RekeyException problem creating the archive or reading/writing a manifest.
+     */
+    BackupManifest createIncrementalArchive(Path src, Path dest, Predicate<Path> filter, ArchiveFormat format,
+                                            int level, Path previous) throws RekeyException;
+
+    /**
+     * Create an archive of the specified src {@link Path} with an {@link ArchiveIndex} written next to it, so
+     * individual key files can be restored with {@link #restoreKeys(Path, Collection, Path)} without reading the rest
+     * of the archive.
+     *
+     * @param src    the file/dir to archive.
+     * @param dest   the destination of the archive to create.
+     * @param filter a {@link Predicate} to filter which files should be added to the archive.
+     * @param format the {@link ArchiveFormat} to create, {@link ArchiveFormat#TAR} or {@link ArchiveFormat#TAR_GZ}.
+     * @param level  the deflate compression level (0-9, or -1 for the default). Ignored for {@link ArchiveFormat#TAR}.
+     * @throws RekeyException problem creating the archive or index, or the format does not support an index.
+     */
+    void createIndexedArchive(Path src, Path dest, Predicate<Path> filter, ArchiveFormat format, int level)
+            throws RekeyException;
+
+    /**
+     * Restore individual collection key files from an indexed backup archive. Each key file is found in the index,
+     * read from its position in the archive and checked against the SHA-256 recorded in the index before it is
+     * written to the dest dir.
+     *
+     * @param archive       the backup archive, with its index alongside it.
+     * @param collectionIDs the IDs of the collections to restore.
+     * @param destDir       the dir to write the restored key files to, created if it does not exist.
+     * @return the restored key files.
+     * @throws RekeyException the archive has no index, a collection is not in the index, the restored content does not
+     *                        match its SHA-256, or there was a problem reading the archive/writing the key files.
+     */
+    List<Path> restoreKeys(Path archive, Collection<String> collectionIDs, Path destDir) throws RekeyException;
 }
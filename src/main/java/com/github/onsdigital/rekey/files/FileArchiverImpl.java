@@ -1,82 +1,435 @@
 package com.github.onsdigital.rekey.files;
 
 import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import com.github.onsdigital.rekey.report.Operation;
+import com.github.onsdigital.rekey.report.RekeyMetrics;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.archivers.zip.DefaultBackingStoreSupplier;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
 
 import static java.text.MessageFormat.format;
 import static org.apache.commons.io.FilenameUtils.getExtension;
+import static org.apache.commons.io.FilenameUtils.removeExtension;
 
 public class FileArchiverImpl implements FileArchiver {
 
     private static final Logger LOG = LogManager.getLogger(FileArchiverImpl.class);
 
+    private WorkerPool workerPool;
+    private RekeyMetrics metrics;
+
+    /**
+     * Construct a new FileArchiver that compresses on the calling thread.
+     */
+    public FileArchiverImpl() {
+        this(new WorkerPoolImpl());
+    }
+
+    /**
+     * Construct a new FileArchiver.
+     *
+     * @param workerPool the {@link WorkerPool} to compress the archive blocks on.
+     */
+    public FileArchiverImpl(final WorkerPool workerPool) {
+        this(workerPool, RekeyMetrics.NONE);
+    }
+
+    /**
+     * Construct a new FileArchiver.
+     *
+     * @param workerPool the {@link WorkerPool} to compress the archive blocks on.
+     * @param metrics    the {@link RekeyMetrics} to record the time taken to archive each file in.
+     */
+    public FileArchiverImpl(final WorkerPool workerPool, final RekeyMetrics metrics) {
+        this.workerPool = workerPool;
+        this.metrics = metrics;
+    }
+
     @Override
     public void createTarGz(Path src, Path dest, Predicate<Path> filter) throws RekeyException {
-        tarFiles(src, dest);
+        createArchive(src, dest, filter, ArchiveFormat.TAR_GZ, Deflater.DEFAULT_COMPRESSION);
     }
 
-    private void tarFiles(Path src, Path tarFile) throws RekeyException {
+    @Override
+    public ArchiveWriter openArchive(Path dest, ArchiveFormat format, int level) throws RekeyException {
+        validateLevel(level);
+        return new ArchiveWriterImpl(dest, format, level, workerPool, metrics);
+    }
+
+    @Override
+    public void createArchive(Path src, Path dest, Predicate<Path> filter, ArchiveFormat format, int level)
+            throws RekeyException {
+        validateLevel(level);
+
+        switch (format) {
+            case TAR:
+                tarFilesZeroCopy(src, dest, format);
+                break;
+            case ZIP:
+                zipFiles(src, dest, format, level);
+                break;
+            default:
+                tarFiles(src, dest, format, level);
+        }
+    }
+
+    @Override
+    public BackupManifest createIncrementalArchive(Path src, Path dest, Predicate<Path> filter, ArchiveFormat format,
+                                                   int level, Path previous) throws RekeyException {
+        validateLevel(level);
+
+        BackupManifest last = previous == null ? null : readPreviousManifest(previous, dest);
+        BackupManifest manifest = last == null ? new BackupManifest(null, null)
+                : new BackupManifest(previous.getFileName().toString(), BackupManifest.digest(previous));
+
+        List<Path> files = listTargets(src, filter);
+
+        // Unchanged files are only read to be hashed, so hash them across the worker pool.
+        List<String> digests = workerPool.map(files, BackupManifest::digest);
+
+        String archiveName = dest.getFileName().toString();
+        int archived = 0;
+        try (ArchiveWriter writer = openArchive(dest, format, level)) {
+            for (int i = 0; i < files.size(); i++) {
+                Path file = files.get(i);
+                String name = file.getFileName().toString();
+                BackupManifest.Entry entry = last == null ? null : last.get(name);
+
+                if (entry != null && entry.getDigest().equals(digests.get(i))) {
+                    manifest.put(name, entry.getDigest(), entry.getArchive());
+                    continue;
+                }
+
+                // Hash the content actually archived in case the file has changed since it was hashed.
+                byte[] content = readFile(file);
+                writer.addEntry(file, content);
+                manifest.put(name, BackupManifest.digest(content), archiveName);
+                archived++;
+            }
+        }
+
+        // Unchanged files are still held in the earlier archives, which have been checked against these digests.
+        if (last != null) {
+            last.getArchives().forEach((a) -> manifest.putArchive(a, last.getArchiveDigest(a)));
+        }
+        manifest.putArchive(archiveName, BackupManifest.digest(dest));
+
+        manifest.write(BackupManifest.getManifestFile(dest, format));
+        LOG.info("incremental backup completed (files: {}, archived: {}, unchanged: {})", files.size(), archived,
+                files.size() - archived);
+        return manifest;
+    }
+
+    @Override
+    public void createIndexedArchive(Path src, Path dest, Predicate<Path> filter, ArchiveFormat format, int level)
+            throws RekeyException {
+        validateLevel(level);
+
+        try (ArchiveWriter writer = new ArchiveWriterImpl(dest, format, level, workerPool, metrics, true)) {
+            for (Path file : listTargets(src, filter)) {
+                writer.addEntry(file, readFile(file));
+            }
+        }
+    }
+
+    @Override
+    public List<Path> restoreKeys(Path archive, Collection<String> collectionIDs, Path destDir)
+            throws RekeyException {
+        ArchiveFormat format = ArchiveFormat.fromFileName(archive.getFileName().toString());
+        if (format == null || format == ArchiveFormat.ZIP) {
+            throw new RekeyException(format("restore requires a TAR or TAR_GZ backup archive: {0}", archive));
+        }
+
+        Path indexFile = ArchiveIndex.getIndexFile(archive, format);
+        if (Files.notExists(indexFile)) {
+            throw new RekeyException(format("backup index required but does not exist: {0}", indexFile));
+        }
+
+        List<ArchiveIndex.Entry> entries = new ArrayList<>();
+        for (String collectionID : collectionIDs) {
+            ArchiveIndex.Entry entry = ArchiveIndex.find(indexFile, collectionID);
+            if (entry == null) {
+                throw new RekeyException(format("collection key not found in backup index: {0}", collectionID));
+            }
+            entries.add(entry);
+        }
+
+        // Read the archive front to back.
+        entries.sort(Comparator.comparingLong(ArchiveIndex.Entry::getBlockOffset)
+                .thenComparingLong(ArchiveIndex.Entry::getEntryOffset));
+
+        List<Path> restored = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            Files.createDirectories(destDir);
+            for (ArchiveIndex.Entry entry : entries) {
+                restored.add(restoreKey(channel, format, entry, destDir));
+            }
+        } catch (IOException ex) {
+            throw new RekeyException(format("error restoring collection keys from: {0}", archive), ex);
+        }
+        return restored;
+    }
+
+    private Path restoreKey(FileChannel channel, ArchiveFormat format, ArchiveIndex.Entry entry, Path destDir)
+            throws IOException, RekeyException {
+        channel.position(entry.getBlockOffset());
+        // Not closed - closing the stream would close the channel.
+        InputStream in = Channels.newInputStream(channel);
+
+        Inflater inflater = null;
+        try {
+            if (format == ArchiveFormat.TAR_GZ) {
+                // Each block of an indexed tar.gz is raw deflate data with no dictionary.
+                inflater = new Inflater(true);
+                in = new InflaterInputStream(in, inflater, ChannelTarWriter.RECORD_SIZE * 2);
+            }
+            IOUtils.skipFully(in, entry.getEntryOffset());
+
+            TarArchiveInputStream tarIn = new TarArchiveInputStream(in);
+            TarArchiveEntry tarEntry = tarIn.getNextEntry();
+            String fileName = tarEntry == null ? null : Paths.get(tarEntry.getName()).getFileName().toString();
+            if (fileName == null || !entry.getCollectionID().equals(removeExtension(fileName))) {
+                throw new RekeyException(format("backup index entry does not match the archive: {0}",
+                        entry.getCollectionID()));
+            }
+
+            byte[] content = IOUtils.toByteArray(tarIn, tarEntry.getSize());
+            if (!entry.getDigest().equals(BackupManifest.digest(content))) {
+                throw new RekeyException(format("restored collection key does not match backup index SHA-256: {0}",
+                        entry.getCollectionID()));
+            }
+
+            Path dest = destDir.resolve(fileName);
+            Files.write(dest, content);
+            LOG.debug("restored collection key: {}", dest);
+            return dest;
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private List<Path> listTargets(Path src, Predicate<Path> filter) throws RekeyException {
+        List<Path> files = new ArrayList<>();
+        try {
+            walkTargets(src, (p, attrs) -> {
+                if (filter.test(p)) {
+                    files.add(p);
+                }
+            });
+        } catch (IOException ex) {
+            throw new RekeyException(format("error listing files to archive: {0}", src), ex);
+        }
+        return files;
+    }
+
+    /**
+     * @return the previous manifest, or null if any of the archives it references are missing - files can only be
+     * left out of the new archive while the archive holding their content still exists.
+     */
+    /**
+     * @return the previous backup's manifest, or null if it can't be built on - the manifest it is chained to has
+     * changed, or an archive it references is missing or has changed.
+     */
+    private BackupManifest readPreviousManifest(Path previous, Path dest) throws RekeyException {
+        BackupManifest manifest = BackupManifest.read(previous);
+        if (manifest.getPrevious() != null) {
+            Path before = previous.resolveSibling(manifest.getPrevious());
+            if (Files.notExists(before) || !manifest.getPreviousDigest().equals(BackupManifest.digest(before))) {
+                LOG.warn("backup manifest chained to the previous backup manifest is missing or has changed, " +
+                        "archiving every file: {}", before);
+                return null;
+            }
+        }
+
+        List<String> archives = new ArrayList<>(manifest.getArchives());
+        for (String archive : archives) {
+            if (Files.notExists(dest.resolveSibling(archive))) {
+                LOG.warn("archive referenced by previous backup manifest not found, archiving every file: {}",
+                        dest.resolveSibling(archive));
+                return null;
+            }
+        }
+
+        List<String> digests = workerPool.map(archives, (a) -> BackupManifest.digest(dest.resolveSibling(a)));
+        for (int i = 0; i < archives.size(); i++) {
+            if (!digests.get(i).equals(manifest.getArchiveDigest(archives.get(i)))) {
+                LOG.warn("archive referenced by previous backup manifest has changed, archiving every file: {}",
+                        dest.resolveSibling(archives.get(i)));
+                return null;
+            }
+        }
+        return manifest;
+    }
+
+    private byte[] readFile(Path file) throws RekeyException {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException ex) {
+            throw new RekeyException(format("error reading file to archive: {0}", file), ex);
+        }
+    }
+
+    private void tarFiles(Path src, Path tarFile, ArchiveFormat format, int level) throws RekeyException {
         try (
                 OutputStream fOut = Files.newOutputStream(tarFile);
                 BufferedOutputStream buffOut = new BufferedOutputStream(fOut);
-                GzipCompressorOutputStream gzOut = new GzipCompressorOutputStream(buffOut);
+                ParallelGzipOutputStream gzOut = new ParallelGzipOutputStream(buffOut, workerPool, level);
                 TarArchiveOutputStream tarOut = new TarArchiveOutputStream(gzOut)
         ) {
             // Required to handle long file names.
             tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
 
-            String backupDir = getBackupDirName(tarFile);
+            String backupDir = getBackupDirName(tarFile, format);
 
-            Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) throws IOException {
-                    if (!isTarget(p, attrs)) {
-                        return FileVisitResult.CONTINUE;
-                    }
+            walkTargets(src, (p, attrs) -> {
+                long start = System.nanoTime();
+                String filename = getTarEntryName(backupDir, p);
+                LOG.debug("tar entry: {}", p.getFileName());
 
-                    String filename = getTarEntryName(backupDir, p);
-                    LOG.info("tar entry: {}", p.toFile().getName());
+                TarArchiveEntry tarEntry = new TarArchiveEntry(p.toFile(), filename);
+                tarOut.putArchiveEntry(tarEntry);
 
-                    TarArchiveEntry tarEntry = new TarArchiveEntry(p.toFile(), filename);
-                    tarOut.putArchiveEntry(tarEntry);
+                Files.copy(p, tarOut);
+                tarOut.closeArchiveEntry();
+                metrics.recordLatency(Operation.ARCHIVE, System.nanoTime() - start);
+            });
+
+            tarOut.finish();
+        } catch (Exception ex) {
+            throw new RekeyException("error creating tar gz file", ex);
+        }
+    }
 
-                    Files.copy(p, tarOut);
-                    tarOut.closeArchiveEntry();
+    private void tarFilesZeroCopy(Path src, Path tarFile, ArchiveFormat format) throws RekeyException {
+        try (ChannelTarWriter tarOut = new ChannelTarWriter(tarFile)) {
+            String backupDir = getBackupDirName(tarFile, format);
 
-                    return FileVisitResult.CONTINUE;
-                }
+            walkTargets(src, (p, attrs) -> {
+                long start = System.nanoTime();
+                LOG.debug("tar entry: {}", p.getFileName());
+                tarOut.addFile(p, getTarEntryName(backupDir, p), attrs);
+                metrics.recordLatency(Operation.ARCHIVE, System.nanoTime() - start);
             });
 
             tarOut.finish();
         } catch (Exception ex) {
-            throw new RekeyException("error creating tar gz file", ex);
+            throw new RekeyException("error creating tar file", ex);
+        }
+    }
+
+    private void zipFiles(Path src, Path zipFile, ArchiveFormat format, int level) throws RekeyException {
+        // Entries are compressed on the shared worker pool - shutting the view down doesn't stop the pool.
+        ExecutorService executor = workerPool.asExecutorService();
+        ParallelScatterZipCreator zipCreator = new ParallelScatterZipCreator(executor,
+                new DefaultBackingStoreSupplier(null), level);
+
+        try (ZipArchiveOutputStream zipOut = new ZipArchiveOutputStream(zipFile)) {
+            String backupDir = getBackupDirName(zipFile, format);
+
+            walkTargets(src, (p, attrs) -> {
+                LOG.debug("zip entry: {}", p.getFileName());
+
+                ZipArchiveEntry entry = new ZipArchiveEntry(getTarEntryName(backupDir, p));
+                entry.setMethod(ZipEntry.DEFLATED);
+                entry.setTime(attrs.lastModifiedTime().toMillis());
+
+                zipCreator.addArchiveEntry(entry, () -> {
+                    // Entries are compressed on the worker threads so the time is recorded as each file is opened.
+                    long start = System.nanoTime();
+                    InputStream in = openKeyFile(p);
+                    metrics.recordLatency(Operation.ARCHIVE, System.nanoTime() - start);
+                    return in;
+                });
+            });
+
+            // Blocks until all of the entries have been compressed & shuts down the executor.
+            zipCreator.writeTo(zipOut);
+            zipOut.finish();
+        } catch (Exception ex) {
+            throw new RekeyException("error creating zip file", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void validateLevel(int level) throws RekeyException {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION
+                || level > Deflater.BEST_COMPRESSION)) {
+            throw new RekeyException(format("invalid compression level: {0}", level));
+        }
+    }
+
+    private InputStream openKeyFile(Path p) {
+        try {
+            return Files.newInputStream(p);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
     }
 
+    private void walkTargets(Path src, TargetVisitor visitor) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) throws IOException {
+                if (isTarget(p, attrs)) {
+                    visitor.visit(p, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
     private boolean isTarget(Path p, BasicFileAttributes attrs) {
-        return !attrs.isSymbolicLink() && "txt".equals(getExtension(p.toString()));
+        // The walk has already read the attributes (without following links) so the type check costs nothing extra.
+        return attrs.isRegularFile() && "txt".equals(getExtension(p.toString()));
     }
 
-    private String getBackupDirName(Path tarFile) {
-        return tarFile.getFileName().toString().replace(".tar.gz", "");
+    private String getBackupDirName(Path archive, ArchiveFormat format) {
+        return format.removeExtension(archive.getFileName().toString());
     }
 
-    private String getTarEntryName(String backupDir, Path keyFile) {
+    static String getTarEntryName(String backupDir, Path keyFile) {
         return Paths.get(backupDir).resolve(keyFile.getFileName()).toString();
     }
+
+    @FunctionalInterface
+    private interface TargetVisitor {
+        void visit(Path p, BasicFileAttributes attrs) throws IOException;
+    }
 }
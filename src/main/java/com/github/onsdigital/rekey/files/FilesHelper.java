@@ -2,6 +2,7 @@ package com.github.onsdigital.rekey.files;
 
 import com.github.onsdigital.rekey.RekeyException;
 
+import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.function.Predicate;
@@ -37,6 +38,53 @@ public interface FilesHelper {
      */
     void deleteDir(Path target) throws RekeyException;
 
+    /**
+     * Copy the files in the src dir to a new dest dir.
+     *
+     * @param src  the dir to copy.
+     * @param dest the dir to create and copy the files to.
+     * @param sync if true sync each copied file and the dest dir to disk.
+     * @throws RekeyException error copying the dir.
+     */
+    void copyDir(Path src, Path dest, boolean sync) throws RekeyException;
+
+    /**
+     * Hard link the files in the src dir into a new dest dir, copying them instead if the dest dir is on a different
+     * file system (e.g. tmpfs).
+     *
+     * @param src  the dir to link.
+     * @param dest the dir to create and link the files in.
+     * @return true if the files were hard linked, false if they were copied.
+     * @throws RekeyException error linking or copying the dir.
+     */
+    boolean linkDir(Path src, Path dest) throws RekeyException;
+
+    /**
+     * Create a new uniquely named dir.
+     *
+     * @param parent the dir to create the new dir in.
+     * @param prefix the prefix of the new dir name.
+     * @return the new dir.
+     * @throws RekeyException error creating the dir.
+     */
+    Path createTempDir(Path parent, String prefix) throws RekeyException;
+
+    /**
+     * Sync the specified dir to disk so that renames within it are durable. Platforms that do not allow a dir to be
+     * synced are ignored.
+     *
+     * @param target the dir to sync.
+     */
+    void syncDir(Path target);
+
+    /**
+     * Delete the specified file if it exists.
+     *
+     * @param target the file to delete.
+     * @throws RekeyException error deleting file.
+     */
+    void deleteFile(Path target) throws RekeyException;
+
     /**
      * List the files in specified dir that match the filter criteria.
      *
@@ -47,6 +95,32 @@ public interface FilesHelper {
      */
     List<Path> listFiles(Path src, Predicate<Path> filter) throws RekeyException;
 
+    /**
+     * Lazily enumerate the entries in the specified dir whose names match the glob and the filter criteria. The
+     * entries are read in a single pass over the dir as the stream is iterated and are matched on name only - no
+     * file attributes are read - so the filter should avoid calls that stat the file. The returned stream holds an
+     * open dir handle and must be closed by the caller.
+     *
+     * @param src    the dir to list.
+     * @param glob   a glob pattern the entry names must match, e.g. <code>*.txt</code>.
+     * @param filter a {@link Predicate} to filter out which files to return.
+     * @return a {@link DirectoryStream} of the matching entries.
+     * @throws RekeyException error opening the dir.
+     */
+    DirectoryStream<Path> streamFiles(Path src, String glob, Predicate<Path> filter) throws RekeyException;
+
+    /**
+     * Count the entries in the specified dir whose names match the glob and the filter criteria, in a single pass over
+     * the dir without reading any file attributes.
+     *
+     * @param src    the dir to count.
+     * @param glob   a glob pattern the entry names must match, e.g. <code>*.txt</code>.
+     * @param filter a {@link Predicate} to filter out which files to count.
+     * @return the number of matching entries.
+     * @throws RekeyException error listing the dir.
+     */
+    long countFiles(Path src, String glob, Predicate<Path> filter) throws RekeyException;
+
     /**
      * Check if the specified file exists.
      *
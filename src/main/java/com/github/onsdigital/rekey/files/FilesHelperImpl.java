@@ -3,11 +3,21 @@ package com.github.onsdigital.rekey.files;
 import com.github.onsdigital.rekey.RekeyException;
 import org.apache.commons.io.FileUtils;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class FilesHelperImpl implements FilesHelper {
 
@@ -38,19 +48,135 @@ public class FilesHelperImpl implements FilesHelper {
         }
     }
 
+    @Override
+    public void copyDir(Path src, Path dest, boolean sync) throws RekeyException {
+        try {
+            Files.createDirectory(dest);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(src, Files::isRegularFile)) {
+                for (Path p : entries) {
+                    Path target = dest.resolve(p.getFileName());
+                    Files.copy(p, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    if (sync) {
+                        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                            channel.force(false);
+                        }
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            throw new RekeyException("error copying keyring dir", ex);
+        }
+
+        if (sync) {
+            syncDir(dest);
+        }
+    }
+
+    @Override
+    public boolean linkDir(Path src, Path dest) throws RekeyException {
+        boolean link = true;
+        try {
+            Files.createDirectory(dest);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(src, Files::isRegularFile)) {
+                for (Path p : entries) {
+                    Path target = dest.resolve(p.getFileName());
+                    if (link) {
+                        link = createLink(target, p);
+                    }
+                    if (!link) {
+                        Files.copy(p, target, StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                }
+            }
+            return link;
+        } catch (Exception ex) {
+            throw new RekeyException("error linking keyring dir", ex);
+        }
+    }
+
+    /**
+     * @return true if the link was created, false if hard links are not possible between the dirs.
+     */
+    private boolean createLink(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException ex) {
+            // Hard links can't cross file systems - every file after the first failure is copied instead.
+            if (ex instanceof FileAlreadyExistsException) {
+                throw (FileAlreadyExistsException) ex;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public Path createTempDir(Path parent, String prefix) throws RekeyException {
+        try {
+            return Files.createTempDirectory(parent, prefix);
+        } catch (Exception ex) {
+            throw new RekeyException("error creating temp dir", ex);
+        }
+    }
+
+    @Override
+    public void syncDir(Path target) {
+        DurableFileWriterImpl.syncDir(target);
+    }
+
+    @Override
+    public void deleteFile(Path target) throws RekeyException {
+        try {
+            Files.deleteIfExists(target);
+        } catch (Exception ex) {
+            throw new RekeyException("error removing file", ex);
+        }
+    }
+
     @Override
     public List<Path> listFiles(Path src, Predicate<Path> filter) throws RekeyException {
         if (filter == null) {
             throw new RekeyException("file filter required but was null");
         }
 
+        List<Path> results = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(src, filter::test)) {
+            for (Path p : entries) {
+                results.add(p);
+            }
+            return results;
+        } catch (Exception ex) {
+            throw new RekeyException("error listeing files", ex);
+        }
+    }
+
+    @Override
+    public DirectoryStream<Path> streamFiles(Path src, String glob, Predicate<Path> filter) throws RekeyException {
+        if (filter == null) {
+            throw new RekeyException("file filter required but was null");
+        }
+
         try {
-            return Files.list(src).filter(f -> filter.test(f)).collect(Collectors.toList());
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            return Files.newDirectoryStream(src, (p) -> matcher.matches(p.getFileName()) && filter.test(p));
         } catch (Exception ex) {
             throw new RekeyException("error listeing files", ex);
         }
     }
 
+    @Override
+    public long countFiles(Path src, String glob, Predicate<Path> filter) throws RekeyException {
+        long count = 0;
+        try (DirectoryStream<Path> entries = streamFiles(src, glob, filter)) {
+            for (Path p : entries) {
+                count++;
+            }
+            return count;
+        } catch (IOException | DirectoryIteratorException ex) {
+            throw new RekeyException("error listeing files", ex);
+        }
+    }
+
     @Override
     public boolean exists(Path p) {
         return Files.exists(p);
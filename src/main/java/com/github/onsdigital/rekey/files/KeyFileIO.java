@@ -0,0 +1,70 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.Task;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+
+import java.util.List;
+
+/**
+ * Overlaps blocking key file I/O with the CPU bound crypto work. The I/O half of each item runs on a dedicated pool of
+ * I/O threads, so many reads/writes can be in flight at once, and the CPU half runs on the {@link WorkerPool} - a key
+ * file is decrypted as soon as its read completes and written as soon as it has been encrypted.
+ *
+ * <p>A KeyFileIO that has not been started runs both halves of each item one after the other on the worker pool,
+ * exactly as {@link WorkerPool#map(List, Task)}.</p>
+ */
+public interface KeyFileIO extends AutoCloseable {
+
+    /**
+     * Start the I/O threads.
+     *
+     * @param ioThreads   the number of I/O threads.
+     * @param maxInFlight the maximum number of items between starting their first half and finishing their second -
+     *                    bounds the number of file buffers held in memory.
+     * @throws RekeyException invalid thread/in flight count or the I/O threads have already been started.
+     */
+    void start(int ioThreads, int maxInFlight) throws RekeyException;
+
+    /**
+     * @return true if the I/O threads have been started.
+     */
+    boolean isStarted();
+
+    /**
+     * @return the number of I/O threads, 0 if not started.
+     */
+    int getIOThreads();
+
+    /**
+     * Apply the I/O task to each item on the I/O threads then the CPU task to its result on the worker pool. Results
+     * are returned in the same order as the input items. No new items are started after the first failure and the
+     * {@link RekeyException} thrown by the failing task is rethrown once the items in flight have finished.
+     *
+     * @param items   the items to process.
+     * @param ioTask  the I/O half, e.g. reading a key file.
+     * @param cpuTask the CPU half, e.g. decrypting the content read.
+     * @return the results of the CPU task in input order.
+     * @throws RekeyException a task failed or the caller was interrupted.
+     */
+    <T, M, R> List<R> ioThenCompute(List<T> items, Task<T, M> ioTask, Task<M, R> cpuTask) throws RekeyException;
+
+    /**
+     * Apply the CPU task to each item on the worker pool then the I/O task to its result on the I/O threads. Results
+     * are returned in the same order as the input items. Failures are handled as
+     * {@link #ioThenCompute(List, Task, Task)}.
+     *
+     * @param items   the items to process.
+     * @param cpuTask the CPU half, e.g. encrypting a collection key.
+     * @param ioTask  the I/O half, e.g. writing the encrypted key file.
+     * @return the results of the I/O task in input order.
+     * @throws RekeyException a task failed or the caller was interrupted.
+     */
+    <T, M, R> List<R> computeThenIO(List<T> items, Task<T, M> cpuTask, Task<M, R> ioTask) throws RekeyException;
+
+    /**
+     * Stop the I/O threads.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,197 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.Task;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link KeyFileIO} backed by a fixed size {@link ExecutorService} of I/O threads, handing each item between the I/O
+ * threads and the {@link WorkerPool} as soon as its first half completes.
+ * <p>
+ * The calling thread starts items until <code>maxInFlight</code> are between their first half starting and their
+ * second half finishing, then waits for a permit - so the number of buffers held never exceeds the in flight limit
+ * regardless of how many items there are or which half is the slower.
+ */
+public class KeyFileIOImpl implements KeyFileIO {
+
+    static final String THREAD_NAME_FMT = "rekey-io-{0}";
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private final WorkerPool workerPool;
+    private ExecutorService executor;
+    private int ioThreads;
+    private int maxInFlight;
+
+    /**
+     * Construct a new KeyFileIO.
+     *
+     * @param workerPool the {@link WorkerPool} to run the CPU half of each item on.
+     */
+    public KeyFileIOImpl(final WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    @Override
+    public synchronized void start(int ioThreads, int maxInFlight) throws RekeyException {
+        if (ioThreads < 1) {
+            throw new RekeyException(format("I/O thread count must be greater than 0 but was {0}", ioThreads));
+        }
+
+        if (maxInFlight < 1) {
+            throw new RekeyException(format("max in flight I/O must be greater than 0 but was {0}", maxInFlight));
+        }
+
+        if (executor != null) {
+            throw new RekeyException("key file I/O already started");
+        }
+
+        this.ioThreads = ioThreads;
+        this.maxInFlight = maxInFlight;
+        this.executor = Executors.newFixedThreadPool(ioThreads, newThreadFactory());
+    }
+
+    @Override
+    public boolean isStarted() {
+        return executor != null;
+    }
+
+    @Override
+    public int getIOThreads() {
+        return executor == null ? 0 : ioThreads;
+    }
+
+    @Override
+    public <T, M, R> List<R> ioThenCompute(List<T> items, Task<T, M> ioTask, Task<M, R> cpuTask)
+            throws RekeyException {
+        return overlap(items, ioTask, this::executeIO, cpuTask, this::executeCPU);
+    }
+
+    @Override
+    public <T, M, R> List<R> computeThenIO(List<T> items, Task<T, M> cpuTask, Task<M, R> ioTask)
+            throws RekeyException {
+        return overlap(items, cpuTask, this::executeCPU, ioTask, this::executeIO);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T, M, R> List<R> overlap(List<T> items, Task<T, M> first, Executor firstExecutor, Task<M, R> second,
+                                      Executor secondExecutor) throws RekeyException {
+        if (executor == null) {
+            return workerPool.map(items, (item) -> second.apply(first.apply(item)));
+        }
+
+        Object[] results = new Object[items.size()];
+        AtomicReference<RekeyException> failure = new AtomicReference<>();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        try {
+            for (int i = 0; i < results.length && failure.get() == null; i++) {
+                inFlight.acquire();
+                int index = i;
+                T item = items.get(i);
+
+                execute(firstExecutor, inFlight, failure, () -> {
+                    M intermediate = first.apply(item);
+                    execute(secondExecutor, inFlight, failure, () -> {
+                        results[index] = second.apply(intermediate);
+                        return true;
+                    });
+                    // The second half now owns the permit.
+                    return false;
+                });
+            }
+
+            // Every permit is returned once the items in flight have finished.
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new RekeyException("interrupted waiting for key file I/O", ex));
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        return (List<R>) Arrays.asList(results);
+    }
+
+    /**
+     * Run one half of an item, recording the first failure. The item's in flight permit is released when the half
+     * fails, is skipped after another item has failed, or returns true to say the item is complete.
+     */
+    private void execute(Executor executor, Semaphore inFlight, AtomicReference<RekeyException> failure,
+                         Stage stage) {
+        Runnable r = () -> {
+            boolean complete = true;
+            try {
+                if (failure.get() == null) {
+                    complete = stage.run();
+                }
+            } catch (RekeyException ex) {
+                failure.compareAndSet(null, ex);
+            } catch (Throwable ex) {
+                failure.compareAndSet(null, new RekeyException("unexpected error processing key file", ex));
+            } finally {
+                if (complete) {
+                    inFlight.release();
+                }
+            }
+        };
+
+        try {
+            executor.execute(r);
+        } catch (RuntimeException ex) {
+            failure.compareAndSet(null, new RekeyException("error scheduling key file work", ex));
+            inFlight.release();
+        }
+    }
+
+    private void executeIO(Runnable r) {
+        executor.execute(r);
+    }
+
+    private void executeCPU(Runnable r) {
+        workerPool.submit(Executors.callable(r));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private ThreadFactory newThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return (r) -> {
+            Thread t = new Thread(r, format(THREAD_NAME_FMT, count.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * One half of an item.
+     */
+    @FunctionalInterface
+    private interface Stage {
+
+        /**
+         * @return true if the item is complete, false if its permit has been handed on to the next half.
+         */
+        boolean run() throws RekeyException;
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A pigz style gzip {@link OutputStream} that deflates independent blocks of input on the {@link WorkerPool} threads
+ * and joins them into a single standard gzip member.
+ * <p>
+ * Each block is compressed as raw deflate data ending on a byte boundary (sync flush) and primed with the last 32KB
+ * of the previous block as its dictionary, so the concatenated blocks form one valid deflate stream that any gzip
+ * reader (including <code>tar -xzf</code>) can decompress. The CRC-32 is calculated over the uncompressed input on
+ * the writing thread as the blocks are submitted.
+ * <p>
+ * With independent blocks no dictionary is used, so decompression can start at the beginning of any block with a raw
+ * {@link java.util.zip.Inflater} - the compressed offset of each block is available from {@link #getBlockOffset(int)}
+ * once the stream is finished. This costs a little compression at the start of each block.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    // magic, deflate, no flags, no mtime, no extra flags, unknown OS.
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final OutputStream out;
+    private final WorkerPool pool;
+    private final int level;
+    private final int blockSize;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private final boolean independentBlocks;
+    private final List<Long> blockOffsets = new ArrayList<>();
+
+    private byte[] block;
+    private int blockLen;
+    private byte[] previousBlock;
+    private int previousBlockLen;
+    private long totalIn;
+    private long totalOut;
+    private boolean finished;
+
+    /**
+     * @param out   the stream to write the compressed output to.
+     * @param pool  the {@link WorkerPool} to deflate the blocks on.
+     * @param level the deflate compression level (0-9 or {@link Deflater#DEFAULT_COMPRESSION}).
+     */
+    public ParallelGzipOutputStream(OutputStream out, WorkerPool pool, int level) throws IOException {
+        this(out, pool, level, false);
+    }
+
+    /**
+     * @param out               the stream to write the compressed output to.
+     * @param pool              the {@link WorkerPool} to deflate the blocks on.
+     * @param level             the deflate compression level (0-9 or {@link Deflater#DEFAULT_COMPRESSION}).
+     * @param independentBlocks if true each block is compressed without the previous block as its dictionary.
+     */
+    public ParallelGzipOutputStream(OutputStream out, WorkerPool pool, int level, boolean independentBlocks)
+            throws IOException {
+        this(out, pool, level, DEFAULT_BLOCK_SIZE, independentBlocks);
+    }
+
+    ParallelGzipOutputStream(OutputStream out, WorkerPool pool, int level, int blockSize) throws IOException {
+        this(out, pool, level, blockSize, false);
+    }
+
+    ParallelGzipOutputStream(OutputStream out, WorkerPool pool, int level, int blockSize, boolean independentBlocks)
+            throws IOException {
+        this.out = out;
+        this.pool = pool;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.independentBlocks = independentBlocks;
+        this.maxInFlight = Math.max(1, pool.getThreads() * 2);
+        this.block = new byte[blockSize];
+
+        out.write(GZIP_HEADER);
+        totalOut = GZIP_HEADER.length;
+    }
+
+    /**
+     * @return the number of bytes of uncompressed input in each block - every block but the last is exactly this
+     * size, so block <code>n</code> starts at uncompressed offset <code>n * blockSize</code>.
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * @param block the block number.
+     * @return the offset of the start of the block's compressed data from the start of the gzip output.
+     */
+    public long getBlockOffset(int block) {
+        return blockOffsets.get(block);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLen++] = (byte) b;
+        if (blockLen == blockSize) {
+            submitBlock(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLen);
+            System.arraycopy(b, off, block, blockLen, n);
+            blockLen += n;
+            off += n;
+            len -= n;
+
+            if (blockLen == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Compress any remaining input and write the gzip trailer without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+
+        submitBlock(true);
+        while (!pending.isEmpty()) {
+            writeNextBlock();
+        }
+
+        writeIntLE((int) crc.getValue());
+        writeIntLE((int) totalIn);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+            out.close();
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        final byte[] data = block;
+        final int len = blockLen;
+        final byte[] dict = independentBlocks ? null : previousBlock;
+        final int dictLen = previousBlockLen;
+
+        crc.update(data, 0, len);
+        totalIn += len;
+
+        pending.add(pool.submit(() -> deflate(data, len, dict, dictLen, last)));
+
+        previousBlock = data;
+        previousBlockLen = len;
+        block = last ? null : new byte[blockSize];
+        blockLen = 0;
+
+        while (pending.size() > maxInFlight) {
+            writeNextBlock();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        try {
+            byte[] compressed = pending.removeFirst().get();
+            blockOffsets.add(totalOut);
+            out.write(compressed);
+            totalOut += compressed.length;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for compressed block");
+        } catch (ExecutionException ex) {
+            throw new IOException("error compressing block", ex.getCause());
+        }
+    }
+
+    private byte[] deflate(byte[] data, int len, byte[] dict, int dictLen, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dict != null) {
+                int n = Math.min(DICTIONARY_SIZE, dictLen);
+                deflater.setDictionary(dict, dictLen - n, n);
+            }
+            deflater.setInput(data, 0, len);
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(len / 2 + 64);
+            byte[] buf = new byte[16 * 1024];
+
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buf);
+                    compressed.write(buf, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buf, 0, n);
+                } while (n == buf.length);
+            }
+
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeIntLE(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+    }
+}
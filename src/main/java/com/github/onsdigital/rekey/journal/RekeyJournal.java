@@ -0,0 +1,56 @@
+package com.github.onsdigital.rekey.journal;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+/**
+ * A write-ahead progress journal for a rekey run. Records which collection keys have been re-encrypted and written
+ * so an interrupted run can be resumed without starting again from zero.
+ */
+public interface RekeyJournal extends AutoCloseable {
+
+    /**
+     * @param collectionID the collection ID.
+     * @return true if the collection key was rekeyed by a previous (or the current) run.
+     */
+    boolean isComplete(String collectionID);
+
+    /**
+     * @return the number of collection keys recorded as complete.
+     */
+    int getCompletedCount();
+
+    /**
+     * Record that the collection key has been re-encrypted and written. Records are buffered and written in batches.
+     *
+     * @param collectionID the collection ID.
+     * @throws RekeyException problem writing the journal.
+     */
+    void record(String collectionID) throws RekeyException;
+
+    /**
+     * @return true if the keyring backup archive was completed by a previous (or the current) run.
+     */
+    boolean isBackupComplete();
+
+    /**
+     * Record that the keyring backup archive has been completed. Written immediately.
+     *
+     * @throws RekeyException problem writing the journal.
+     */
+    void recordBackupComplete() throws RekeyException;
+
+    /**
+     * Write any buffered records and sync the journal to disk.
+     *
+     * @throws RekeyException problem writing the journal.
+     */
+    void commit() throws RekeyException;
+
+    /**
+     * Commit any buffered records and close the journal.
+     *
+     * @throws RekeyException problem writing the journal.
+     */
+    @Override
+    void close() throws RekeyException;
+}
@@ -0,0 +1,228 @@
+package com.github.onsdigital.rekey.journal;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.files.DurableFileWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link RekeyJournal} stored as an append-only text file with one record per line:
+ * <pre>
+ *     B          - the backup archive is complete.
+ *     K &lt;id&gt;     - the key for collection &lt;id&gt; has been rekeyed.
+ * </pre>
+ * Key records are buffered and appended (and synced) in batches so journaling does not become a bottleneck - a
+ * batch is taken from the buffer under the journal's lock but synced and written outside of it. A torn
+ * final line left by a crash mid-write is ignored when the journal is reopened.
+ *
+ * <p>When the key files are written with a {@link DurableFileWriter} each batch of records is only written once the
+ * writer has synced the key files, so the journal never records a key whose file could still be lost.</p>
+ */
+public class RekeyJournalImpl implements RekeyJournal {
+
+    private static final Logger LOG = LogManager.getLogger(RekeyJournalImpl.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    static final String BACKUP_COMPLETE = "B";
+    static final String KEY_COMPLETE = "K ";
+
+    private final Path journalFile;
+    private final int batchSize;
+    private final Set<String> completed;
+    private final StringBuilder pending = new StringBuilder();
+    private final FileChannel channel;
+    private final DurableFileWriter fileWriter;
+    // Held while a batch is synced and written, so batches are written one at a time and in order.
+    private final Object commitLock = new Object();
+    private int pendingCount;
+    private boolean committing;
+    private boolean backupComplete;
+
+    /**
+     * Open the journal, loading any records written by a previous run.
+     *
+     * @param journalFile the journal file.
+     * @param batchSize   the number of key records to buffer before writing them to disk.
+     * @throws RekeyException problem reading or opening the journal.
+     */
+    public RekeyJournalImpl(Path journalFile, int batchSize) throws RekeyException {
+        this(journalFile, batchSize, null);
+    }
+
+    /**
+     * Open the journal, loading any records written by a previous run. Before each batch of key records is written
+     * the key files are synced to disk with the {@link DurableFileWriter}.
+     *
+     * @param journalFile the journal file.
+     * @param batchSize   the number of key records to buffer before writing them to disk.
+     * @param fileWriter  the {@link DurableFileWriter} the key files are written with, may be null.
+     * @throws RekeyException problem reading or opening the journal.
+     */
+    public RekeyJournalImpl(Path journalFile, int batchSize, DurableFileWriter fileWriter) throws RekeyException {
+        if (batchSize < 1) {
+            throw new RekeyException(format("journal batch size must be greater than 0 but was {0}", batchSize));
+        }
+
+        this.journalFile = journalFile;
+        this.batchSize = batchSize;
+        this.fileWriter = fileWriter;
+        this.completed = new HashSet<>();
+
+        try {
+            if (Files.exists(journalFile)) {
+                load();
+            }
+            this.channel = FileChannel.open(journalFile, CREATE, WRITE, APPEND);
+        } catch (IOException ex) {
+            throw new RekeyException(format("error opening rekey journal: {0}", journalFile), ex);
+        }
+    }
+
+    private void load() throws IOException {
+        byte[] content = Files.readAllBytes(journalFile);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+
+        String records = new String(content, 0, end, StandardCharsets.UTF_8);
+        try (BufferedReader reader = new BufferedReader(new StringReader(records))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(KEY_COMPLETE)) {
+                    completed.add(line.substring(KEY_COMPLETE.length()));
+                } else if (BACKUP_COMPLETE.equals(line)) {
+                    backupComplete = true;
+                }
+            }
+        }
+
+        if (end < content.length) {
+            // Drop the torn record so new records are not appended to a partial line.
+            try (FileChannel ch = FileChannel.open(journalFile, WRITE)) {
+                ch.truncate(end);
+            }
+        }
+
+        LOG.info("loaded rekey journal: {} (completed keys: {}, backup complete: {})", journalFile,
+                completed.size(), backupComplete);
+    }
+
+    @Override
+    public synchronized boolean isComplete(String collectionID) {
+        return completed.contains(collectionID);
+    }
+
+    @Override
+    public synchronized int getCompletedCount() {
+        return completed.size();
+    }
+
+    @Override
+    public void record(String collectionID) throws RekeyException {
+        boolean full;
+        synchronized (this) {
+            completed.add(collectionID);
+            pending.append(KEY_COMPLETE).append(collectionID).append('\n');
+
+            // While a batch is being committed the records keep buffering - the next record after it has finished
+            // commits them, so writers never queue up behind the sync.
+            full = ++pendingCount >= batchSize && !committing;
+            if (full) {
+                committing = true;
+            }
+        }
+
+        if (full) {
+            commit();
+        }
+    }
+
+    @Override
+    public synchronized boolean isBackupComplete() {
+        return backupComplete;
+    }
+
+    @Override
+    public void recordBackupComplete() throws RekeyException {
+        synchronized (this) {
+            backupComplete = true;
+            pending.append(BACKUP_COMPLETE).append('\n');
+        }
+        commit();
+    }
+
+    @Override
+    public void commit() throws RekeyException {
+        synchronized (commitLock) {
+            String records;
+            synchronized (this) {
+                committing = pending.length() > 0;
+                if (!committing) {
+                    return;
+                }
+
+                records = pending.toString();
+                pending.setLength(0);
+                pendingCount = 0;
+            }
+
+            try {
+                // The sync and write happen outside of the journal's lock so other threads can keep recording keys.
+                // Every key in the batch has been written, so once synced all of its records are true.
+                if (fileWriter != null) {
+                    fileWriter.sync();
+                }
+                write(records);
+            } finally {
+                synchronized (this) {
+                    committing = false;
+                }
+            }
+        }
+    }
+
+    private void write(String records) throws RekeyException {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new RekeyException(format("error writing rekey journal: {0}", journalFile), ex);
+        }
+    }
+
+    @Override
+    public void close() throws RekeyException {
+        synchronized (commitLock) {
+            try {
+                commit();
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    LOG.warn("error closing rekey journal: {}", journalFile);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.onsdigital.rekey.pipeline;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.config.Config;
+import com.github.onsdigital.rekey.files.ArchiveWriter;
+
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Streams collection key files through the decrypt, re-encrypt and write stages one file at a time so only a
+ * bounded number of decrypted keys are ever held in memory.
+ */
+public interface RekeyPipeline {
+
+    /**
+     * Decrypt each key file with the current key/iv, re-encrypt it with the new key/iv and write it to the keyring
+     * dir.
+     *
+     * @param keyFiles the collection key files to rekey.
+     * @param cfg      the {@link Config} for the rekey.
+     * @return the IDs of the collections that were rekeyed.
+     * @throws RekeyException problem rekeying a collection key.
+     */
+    Collection<String> rekey(Iterable<Path> keyFiles, Config cfg) throws RekeyException;
+
+    /**
+     * As {@link #rekey(Iterable, Config)} but each key file is read only once - the same bytes are added to the
+     * backup archive and passed on to be decrypted, so the backup and the rekey overlap. The caller is responsible
+     * for closing the backup archive.
+     *
+     * @param keyFiles the collection key files to rekey.
+     * @param cfg      the {@link Config} for the rekey.
+     * @param backup   the {@link ArchiveWriter} to write a backup of each key file to.
+     * @return the IDs of the collections that were rekeyed.
+     * @throws RekeyException problem backing up or rekeying a collection key.
+     */
+    Collection<String> rekey(Iterable<Path> keyFiles, Config cfg, ArchiveWriter backup) throws RekeyException;
+}
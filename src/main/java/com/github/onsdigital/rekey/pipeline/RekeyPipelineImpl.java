@@ -0,0 +1,232 @@
+package com.github.onsdigital.rekey.pipeline;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.config.Config;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.EncryptedKey;
+import com.github.onsdigital.rekey.encryption.KeyDecryptor;
+import com.github.onsdigital.rekey.encryption.KeyEncryptor;
+import com.github.onsdigital.rekey.files.ArchiveWriter;
+import com.github.onsdigital.rekey.journal.RekeyJournal;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.text.MessageFormat.format;
+import static org.apache.commons.io.FilenameUtils.removeExtension;
+
+/**
+ * {@link RekeyPipeline} implementation. The key files are read on the calling thread and each one is handed to the
+ * shared {@link WorkerPool} to be decrypted, re-encrypted and written. The number of key files handed to the pool and
+ * not yet written is capped at the queue capacity - the calling thread blocks when the cap is reached - so the number
+ * of decrypted keys in memory never exceeds the queue capacity, and the pool bounds the crypto threads however many
+ * roots are streaming at once.
+ */
+public class RekeyPipelineImpl implements RekeyPipeline {
+
+    private static final Logger LOG = LogManager.getLogger(RekeyPipelineImpl.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private KeyDecryptor decryptor;
+    private KeyEncryptor encryptor;
+    private WorkerPool workerPool;
+    private int queueCapacity;
+    private RekeyJournal journal;
+
+    /**
+     * Construct a new instance of the pipeline.
+     *
+     * @param decryptor     the {@link KeyDecryptor} to use.
+     * @param encryptor     the {@link KeyEncryptor} to use.
+     * @param workerPool    the {@link WorkerPool} to rekey the key files on.
+     * @param queueCapacity the maximum number of key files queued for the worker pool at once.
+     */
+    public RekeyPipelineImpl(final KeyDecryptor decryptor, final KeyEncryptor encryptor, final WorkerPool workerPool,
+                             int queueCapacity) {
+        this(decryptor, encryptor, workerPool, queueCapacity, null);
+    }
+
+    /**
+     * Construct a new instance of the pipeline that records its progress in a {@link RekeyJournal}. Key files
+     * already recorded as complete in the journal are skipped, and each key is recorded once it has been written.
+     *
+     * @param decryptor     the {@link KeyDecryptor} to use.
+     * @param encryptor     the {@link KeyEncryptor} to use.
+     * @param workerPool    the {@link WorkerPool} to rekey the key files on.
+     * @param queueCapacity the maximum number of key files queued for the worker pool at once.
+     * @param journal       the {@link RekeyJournal} to record progress in, may be null.
+     */
+    public RekeyPipelineImpl(final KeyDecryptor decryptor, final KeyEncryptor encryptor, final WorkerPool workerPool,
+                             int queueCapacity, RekeyJournal journal) {
+        this.decryptor = decryptor;
+        this.encryptor = encryptor;
+        this.workerPool = workerPool;
+        this.queueCapacity = queueCapacity;
+        this.journal = journal;
+    }
+
+    @Override
+    public Collection<String> rekey(Iterable<Path> keyFiles, Config cfg) throws RekeyException {
+        return rekey(keyFiles, cfg, null);
+    }
+
+    @Override
+    public Collection<String> rekey(Iterable<Path> keyFiles, Config cfg, ArchiveWriter backup)
+            throws RekeyException {
+        if (queueCapacity < 1) {
+            throw new RekeyException(format("pipeline queue capacity must be greater than 0 but was {0}",
+                    queueCapacity));
+        }
+
+        LOG.info("streaming collection keys through rekey pipeline (worker threads: {}, queue capacity: {})",
+                workerPool.getThreads(), queueCapacity);
+
+        Set<String> processed = ConcurrentHashMap.newKeySet();
+        AtomicReference<RekeyException> failure = new AtomicReference<>();
+        Semaphore queued = new Semaphore(queueCapacity);
+
+        try {
+            for (Path p : keyFiles) {
+                if (failure.get() != null) {
+                    break;
+                }
+                if (isComplete(p, cfg)) {
+                    processed.add(removeExtension(p.getFileName().toString()));
+                    continue;
+                }
+
+                KeyFile f = backup == null ? new KeyFile(p, null) : readAndBackup(p, backup);
+                acquire(queued);
+                submit(() -> {
+                    try {
+                        if (failure.get() == null) {
+                            rekeyFile(f, cfg, processed);
+                        }
+                    } catch (RekeyException ex) {
+                        failure.compareAndSet(null, ex);
+                    } catch (RuntimeException ex) {
+                        failure.compareAndSet(null, new RekeyException("unexpected error in rekey pipeline", ex));
+                    } finally {
+                        queued.release();
+                    }
+                }, queued);
+            }
+        } catch (RekeyException | RuntimeException ex) {
+            // Stop the queued files from being rekeyed once the caller has given up on the run.
+            failure.compareAndSet(null, new RekeyException("rekey pipeline stopped", ex));
+            throw ex;
+        } finally {
+            // Wait for the queued files so no worker is still writing to the keyring once this returns.
+            queued.acquireUninterruptibly(queueCapacity);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        if (journal != null) {
+            journal.commit();
+        }
+
+        LOG.info("rekey pipeline completed successfully (total: {})", processed.size());
+        return processed;
+    }
+
+    private boolean isComplete(Path keyFile, Config cfg) {
+        if (journal == null || !journal.isComplete(removeExtension(keyFile.getFileName().toString()))) {
+            return false;
+        }
+
+        // Without durable writes the journal can get ahead of the key files on disk, so only skip a key whose new
+        // file is whole: the same size as the original (same key length and cipher) and decrypts with the new key.
+        Path rekeyed = cfg.getKeyringDir().resolve(keyFile.getFileName());
+        try {
+            if (Files.exists(rekeyed) && Files.size(rekeyed) == Files.size(keyFile)) {
+                decryptor.verifyKey(rekeyed, cfg.getNewKey(), cfg.getNewIV());
+                return true;
+            }
+        } catch (IOException | RekeyException ex) {
+            LOG.debug("error checking journaled collection key file: {}", rekeyed, ex);
+        }
+
+        LOG.warn("collection key recorded as complete in journal but its key file is missing or incomplete, " +
+                "rekeying again: {}", rekeyed);
+        return false;
+    }
+
+    private void rekeyFile(KeyFile f, Config cfg, Set<String> processed) throws RekeyException {
+        CollectionKey key = f.content == null
+                ? decryptor.decryptKey(f.path, cfg.getKey(), cfg.getIv())
+                : decryptor.decryptKey(f.path, f.content, cfg.getKey(), cfg.getIv());
+
+        EncryptedKey encrypted;
+        try {
+            encrypted = encryptor.encryptKey(key, cfg.getNewKey(), cfg.getNewIV());
+        } finally {
+            key.wipe();
+        }
+
+        encryptor.writeKey(encrypted, cfg.getKeyringDir());
+        if (journal != null) {
+            journal.record(encrypted.getCollectionID());
+        }
+        processed.add(encrypted.getCollectionID());
+    }
+
+    private KeyFile readAndBackup(Path p, ArchiveWriter backup) throws RekeyException {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(p);
+        } catch (IOException ex) {
+            throw new RekeyException(format("error reading key file: {0}", p), ex);
+        }
+
+        backup.addEntry(p, content);
+        return new KeyFile(p, content);
+    }
+
+    private void submit(Runnable task, Semaphore queued) {
+        try {
+            workerPool.submit(() -> {
+                task.run();
+                return null;
+            });
+        } catch (RuntimeException ex) {
+            queued.release();
+            throw ex;
+        }
+    }
+
+    private static void acquire(Semaphore queued) throws RekeyException {
+        try {
+            queued.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RekeyException("interrupted waiting for rekey pipeline", ex);
+        }
+    }
+
+    /**
+     * A key file waiting to be decrypted, with its (encrypted) content if it has already been read.
+     */
+    private static final class KeyFile {
+
+        private final Path path;
+        private final byte[] content;
+
+        KeyFile(Path path, byte[] content) {
+            this.path = path;
+            this.content = content;
+        }
+    }
+}
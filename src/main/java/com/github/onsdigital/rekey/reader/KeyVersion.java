@@ -0,0 +1,24 @@
+package com.github.onsdigital.rekey.reader;
+
+/**
+ * The keyring secret key a collection key file is encrypted with during a rotation.
+ */
+public enum KeyVersion {
+
+    /**
+     * The new keyring secret key - the collection key has been rekeyed.
+     */
+    NEW,
+
+    /**
+     * The old keyring secret key - the collection key has not been rekeyed yet.
+     */
+    OLD;
+
+    /**
+     * @return the other key version.
+     */
+    public KeyVersion other() {
+        return this == NEW ? OLD : NEW;
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.onsdigital.rekey.reader;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+
+/**
+ * Reads collection keys from a keyring that is part way through a rotation - where each key file may be encrypted with
+ * either the new or the old keyring secret key, or not yet rekeyed and still in the keyring backup dir. Embedding a
+ * reader in a read-only Zebedee lets the CMS keep serving collections while <code>rekey</code> runs rather than being
+ * stopped for the whole rotation.
+ */
+public interface KeyringReader {
+
+    /**
+     * Read and decrypt the key of a collection, trying the key version last used for the collection first (the new
+     * key for a collection that has not been read before) and falling back to the other.
+     *
+     * @param collectionID the collection ID.
+     * @return the decrypted {@link CollectionKey}.
+     * @throws RekeyException the key file could not be read or could not be decrypted with either key.
+     */
+    CollectionKey readKey(String collectionID) throws RekeyException;
+
+    /**
+     * @param collectionID the collection ID.
+     * @return the key version the collection key was last decrypted with, or null if it has not been read.
+     */
+    KeyVersion getKeyVersion(String collectionID);
+
+    /**
+     * Forget the key version cached for a collection, e.g. when the collection is deleted.
+     *
+     * @param collectionID the collection ID.
+     */
+    void evict(String collectionID);
+}
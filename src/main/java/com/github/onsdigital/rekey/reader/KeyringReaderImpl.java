@@ -0,0 +1,219 @@
+package com.github.onsdigital.rekey.reader;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.config.Config;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.KeyDecryptor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link KeyringReader} that reads each key file once and decrypts it with the cached key version for the collection,
+ * falling back to the other key version when the first attempt fails as the wrong key.
+ *
+ * <p>AES/CBC has no integrity check so a wrong key is detected from the decrypted content: a padding failure, or
+ * correctly padded content that isn't a valid AES key length. Decrypting a 16 byte collection key with the wrong key
+ * only passes both checks with a probability of around 2^-64, so the fallback never needs a second read of the key
+ * file.</p>
+ *
+ * <p>The key file must be replaced atomically when it is rekeyed (<code>rekey --durable</code>) so a reader never sees
+ * a partially written file.</p>
+ *
+ * <p><code>rekey</code> moves the keyring to a <code>keyring-backup-&lt;timestamp&gt;</code> dir and writes the rekeyed
+ * files into a new empty keyring (<code>--staged</code> swaps the keyrings with the same two renames), so while it
+ * runs a key that hasn't been rekeyed yet is only in the backup dir. When the key file is missing from the keyring it
+ * is read from the backup dir instead, and if the backup dir has been removed in the meantime - the key was rekeyed
+ * and the run completed - from the keyring again.</p>
+ */
+public class KeyringReaderImpl implements KeyringReader {
+
+    private static final Logger LOG = LogManager.getLogger(KeyringReaderImpl.class);
+
+    static final int[] AES_KEY_LENGTHS = {16, 24, 32};
+
+    private final Path keyringDir;
+    private final Path keyringBackupDir;
+    private final KeyDecryptor decryptor;
+    private final Map<KeyVersion, SecretKey> keys;
+    private final Map<KeyVersion, IvParameterSpec> ivs;
+    private final Map<String, KeyVersion> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a new KeyringReader that falls back to the latest <code>keyring-backup-&lt;timestamp&gt;</code> dir
+     * next to the keyring dir - the dir the running <code>rekey</code> moved the keyring to - for key files missing
+     * from the keyring.
+     *
+     * @param keyringDir the keyring dir to read the key files from.
+     * @param decryptor  the {@link KeyDecryptor} to decrypt the key files with.
+     * @param newKey     the new keyring secret key.
+     * @param newIv      the new keyring init vector.
+     * @param oldKey     the old keyring secret key.
+     * @param oldIv      the old keyring init vector.
+     */
+    public KeyringReaderImpl(final Path keyringDir, final KeyDecryptor decryptor, SecretKey newKey,
+                             IvParameterSpec newIv, SecretKey oldKey, IvParameterSpec oldIv) {
+        this(keyringDir, null, decryptor, newKey, newIv, oldKey, oldIv);
+    }
+
+    /**
+     * Construct a new KeyringReader that falls back to the specified backup dir for key files missing from the
+     * keyring.
+     *
+     * @param keyringDir       the keyring dir to read the key files from.
+     * @param keyringBackupDir the backup dir of the running rekey, or null to use the latest backup dir next to the
+     *                         keyring dir.
+     * @param decryptor        the {@link KeyDecryptor} to decrypt the key files with.
+     * @param newKey           the new keyring secret key.
+     * @param newIv            the new keyring init vector.
+     * @param oldKey           the old keyring secret key.
+     * @param oldIv            the old keyring init vector.
+     */
+    public KeyringReaderImpl(final Path keyringDir, final Path keyringBackupDir, final KeyDecryptor decryptor,
+                             SecretKey newKey, IvParameterSpec newIv, SecretKey oldKey, IvParameterSpec oldIv) {
+        this.keyringDir = keyringDir;
+        this.keyringBackupDir = keyringBackupDir;
+        this.decryptor = decryptor;
+        this.keys = new EnumMap<>(KeyVersion.class);
+        this.ivs = new EnumMap<>(KeyVersion.class);
+        keys.put(KeyVersion.NEW, newKey);
+        keys.put(KeyVersion.OLD, oldKey);
+        ivs.put(KeyVersion.NEW, newIv);
+        ivs.put(KeyVersion.OLD, oldIv);
+    }
+
+    @Override
+    public CollectionKey readKey(String collectionID) throws RekeyException {
+        String fileName = CollectionKey.toKeyFileName(collectionID);
+        Path keyFile = keyringDir.resolve(fileName);
+        byte[] encrypted = readKeyFile(keyFile);
+
+        KeyVersion first = versions.getOrDefault(collectionID, KeyVersion.NEW);
+        if (encrypted == null) {
+            // Not rekeyed yet so only in the backup dir - unless the run has since completed and removed it.
+            for (Path backupDir : backupDirs()) {
+                keyFile = backupDir.resolve(fileName);
+                encrypted = readKeyFile(keyFile);
+                if (encrypted != null) {
+                    first = KeyVersion.OLD;
+                    break;
+                }
+            }
+
+            if (encrypted == null) {
+                keyFile = keyringDir.resolve(fileName);
+                encrypted = readKeyFile(keyFile);
+            }
+            if (encrypted == null) {
+                throw new RekeyException(format("collection key file not found: {0}", keyFile));
+            }
+        }
+
+        CollectionKey key = tryDecrypt(keyFile, encrypted, first);
+        if (key == null) {
+            key = tryDecrypt(keyFile, encrypted, first.other());
+            if (key == null) {
+                throw new RekeyException(format(
+                        "collection key could not be decrypted with the new or the old keyring key: {0}", keyFile));
+            }
+
+            LOG.debug("collection key decrypted with fallback keyring key (collection: {}, key: {})", collectionID,
+                    first.other());
+            versions.put(collectionID, first.other());
+            return key;
+        }
+
+        versions.put(collectionID, first);
+        return key;
+    }
+
+    @Override
+    public KeyVersion getKeyVersion(String collectionID) {
+        return versions.get(collectionID);
+    }
+
+    @Override
+    public void evict(String collectionID) {
+        versions.remove(collectionID);
+    }
+
+    /**
+     * @return the decrypted key or null if the key file is not encrypted with the key version.
+     */
+    private CollectionKey tryDecrypt(Path keyFile, byte[] encrypted, KeyVersion version) throws RekeyException {
+        CollectionKey key;
+        try {
+            key = decryptor.decryptKey(keyFile, encrypted, keys.get(version), ivs.get(version));
+        } catch (RekeyException ex) {
+            if (ex.getCause() instanceof BadPaddingException) {
+                return null;
+            }
+            throw ex;
+        }
+
+        byte[] keyBytes = key.getKey().getEncoded();
+        int length = keyBytes.length;
+        Arrays.fill(keyBytes, (byte) 0);
+
+        return isValidKeyLength(length) ? key : null;
+    }
+
+    /**
+     * @return the key file content or null if the key file (or its dir) doesn't exist.
+     */
+    private byte[] readKeyFile(Path keyFile) throws RekeyException {
+        try {
+            return Files.readAllBytes(keyFile);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (Exception ex) {
+            throw new RekeyException(format("error reading collection key file: {0}", keyFile), ex);
+        }
+    }
+
+    /**
+     * @return the backup dirs to look for a key file missing from the keyring in, newest first.
+     */
+    private List<Path> backupDirs() throws RekeyException {
+        if (keyringBackupDir != null) {
+            return Collections.singletonList(keyringBackupDir);
+        }
+
+        List<Path> dirs = new ArrayList<>();
+        Path zebedeeDir = keyringDir.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(zebedeeDir, Config.BACKUP_DIR_GLOB)) {
+            for (Path p : stream) {
+                if (Files.isDirectory(p)) {
+                    dirs.add(p);
+                }
+            }
+        } catch (IOException ex) {
+            throw new RekeyException(format("error listing keyring backup dirs: {0}", zebedeeDir), ex);
+        }
+
+        // The timestamp in the dir name sorts in creation order.
+        dirs.sort(Collections.reverseOrder());
+        return dirs;
+    }
+
+    static boolean isValidKeyLength(int length) {
+        return Arrays.stream(AES_KEY_LENGTHS).anyMatch((l) -> l == length);
+    }
+}
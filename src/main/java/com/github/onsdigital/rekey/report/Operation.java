@@ -0,0 +1,32 @@
+package com.github.onsdigital.rekey.report;
+
+/**
+ * The per key file operations whose latency is recorded in the {@link RekeyReport}.
+ */
+public enum Operation {
+
+    ARCHIVE("archive"),
+
+    READ("read"),
+
+    DECRYPT("decrypt"),
+
+    ENCRYPT("encrypt"),
+
+    WRITE("write"),
+
+    VERIFY("verify");
+
+    private final String name;
+
+    Operation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name of the operation in the report.
+     */
+    public String getName() {
+        return name;
+    }
+}
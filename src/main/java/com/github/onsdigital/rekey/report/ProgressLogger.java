@@ -0,0 +1,142 @@
+package com.github.onsdigital.rekey.report;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Logs a progress line for the running phase at a fixed interval - the number of key files done, the rate and an
+ * estimate of the time remaining - so a large keyring can be followed without logging a line per key file. The lines
+ * are logged from a single background thread so the phase being tracked never waits on them.
+ */
+public class ProgressLogger implements AutoCloseable {
+
+    private static final Logger LOG = LogManager.getLogger(ProgressLogger.class);
+
+    public static final long DEFAULT_INTERVAL_SECONDS = 5;
+
+    static final String THREAD_NAME = "rekey-progress";
+
+    private ScheduledExecutorService scheduler;
+    private long intervalMillis;
+    private volatile long total;
+
+    /**
+     * Start logging the progress of tracked phases.
+     *
+     * @param intervalMillis the time between progress lines in milliseconds, 0 disables progress logging.
+     * @throws RekeyException the interval is negative or the logger is already started.
+     */
+    public synchronized void start(long intervalMillis) throws RekeyException {
+        if (intervalMillis < 0) {
+            throw new RekeyException(format("progress interval must not be negative but was {0}", intervalMillis));
+        }
+
+        if (scheduler != null) {
+            throw new RekeyException("progress logger already started");
+        }
+
+        if (intervalMillis == 0) {
+            return;
+        }
+
+        this.intervalMillis = intervalMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, THREAD_NAME);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return true if progress lines are being logged.
+     */
+    public synchronized boolean isStarted() {
+        return scheduler != null;
+    }
+
+    /**
+     * @param total the number of key files each phase is expected to process, 0 if not known. The time remaining is
+     *              only estimated when the total is known.
+     */
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    /**
+     * Log the progress of a phase until the returned {@link RekeyReport.Phase} is closed, when a final line with the
+     * total for the phase is logged.
+     *
+     * @param phase the phase name, e.g. "tar".
+     * @param done  the number of key files processed - only the increase while the phase is tracked is reported.
+     * @return the {@link RekeyReport.Phase} to close when the phase ends.
+     */
+    public synchronized RekeyReport.Phase track(String phase, LongSupplier done) {
+        if (scheduler == null) {
+            return () -> {
+            };
+        }
+
+        long startNanos = System.nanoTime();
+        long startCount = done.getAsLong();
+
+        ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(
+                () -> LOG.info(progressLine(phase, done.getAsLong() - startCount, total,
+                        System.nanoTime() - startNanos)),
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        return () -> {
+            task.cancel(false);
+            LOG.info(completedLine(phase, done.getAsLong() - startCount, System.nanoTime() - startNanos));
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    static String progressLine(String phase, long done, long total, long elapsedNanos) {
+        double rate = rate(done, elapsedNanos);
+        if (total <= 0) {
+            return String.format(Locale.ROOT, "%s: %d keys (%.0f/s)", phase, done, rate);
+        }
+
+        String eta = rate > 0 ? duration((long) (Math.max(total - done, 0) / rate)) : "unknown";
+        return String.format(Locale.ROOT, "%s: %d/%d keys (%.0f/s, eta %s)", phase, done, total, rate, eta);
+    }
+
+    static String completedLine(String phase, long done, long elapsedNanos) {
+        return String.format(Locale.ROOT, "%s: %d keys in %s (%.0f/s)", phase, done,
+                duration(TimeUnit.NANOSECONDS.toSeconds(elapsedNanos)), rate(done, elapsedNanos));
+    }
+
+    private static double rate(long done, long elapsedNanos) {
+        return elapsedNanos > 0 ? done * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+    }
+
+    static String duration(long seconds) {
+        long h = seconds / 3600;
+        long m = (seconds % 3600) / 60;
+        long s = seconds % 60;
+        if (h > 0) {
+            return String.format(Locale.ROOT, "%dh%02dm%02ds", h, m, s);
+        }
+        if (m > 0) {
+            return String.format(Locale.ROOT, "%dm%02ds", m, s);
+        }
+        return s + "s";
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.onsdigital.rekey.report;
+
+/**
+ * Receives the per key file measurements taken by the decryptor and encryptor. Implementations must be safe for use by
+ * multiple threads and cheap enough to call once per file.
+ */
+public interface RekeyMetrics {
+
+    /**
+     * A {@link RekeyMetrics} that discards every measurement.
+     */
+    RekeyMetrics NONE = new RekeyMetrics() {
+        @Override
+        public void recordLatency(Operation op, long nanos) {
+        }
+
+        @Override
+        public void addBytesRead(long bytes) {
+        }
+
+        @Override
+        public void addBytesWritten(long bytes) {
+        }
+    };
+
+    /**
+     * @param op    the operation.
+     * @param nanos the time the operation took for a single key file in nanoseconds.
+     */
+    void recordLatency(Operation op, long nanos);
+
+    /**
+     * @param bytes the number of key file bytes read.
+     */
+    void addBytesRead(long bytes);
+
+    /**
+     * @param bytes the number of key file bytes written.
+     */
+    void addBytesWritten(long bytes);
+}
@@ -0,0 +1,70 @@
+package com.github.onsdigital.rekey.report;
+
+import com.github.onsdigital.rekey.RekeyException;
+
+import java.nio.file.Path;
+
+/**
+ * Timings and counts for a single rekey run, written as JSON so maintenance windows can be planned from past runs.
+ * The report only ever contains phase names, timings and counts - never key material, keys or init vectors.
+ */
+public interface RekeyReport extends RekeyMetrics {
+
+    /**
+     * Reset the report and start timing the run.
+     */
+    void start();
+
+    /**
+     * Start timing a phase of the run. The phase ends when the returned {@link Phase} is closed. Timing the same phase
+     * more than once adds the times together.
+     *
+     * @param name the phase name, e.g. "tar".
+     * @return the {@link Phase}.
+     */
+    Phase phase(String name);
+
+    /**
+     * @param keys the number of collection keys rekeyed.
+     */
+    void setKeyCount(long keys);
+
+    /**
+     * @return the total time spent in the named phase in nanoseconds, or 0 if the phase has not run.
+     */
+    long getPhaseNanos(String name);
+
+    /**
+     * @return the number of key files the operation has been recorded for since the report was started.
+     */
+    long getCount(Operation op);
+
+    /**
+     * Stop timing the run.
+     *
+     * @param success true if the run completed successfully.
+     */
+    void finish(boolean success);
+
+    /**
+     * @return the report as a JSON document.
+     */
+    String toJson();
+
+    /**
+     * Write the report as JSON to a file.
+     *
+     * @param dest the file to write.
+     * @throws RekeyException problem writing the report.
+     */
+    void write(Path dest) throws RekeyException;
+
+    /**
+     * A timed phase of the run.
+     */
+    interface Phase extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,200 @@
+package com.github.onsdigital.rekey.report;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * {@link RekeyReport} implementation. Per file latencies are kept in fixed size histograms so recording them costs
+ * the same regardless of the number of keys.
+ */
+public class RekeyReportImpl implements RekeyReport {
+
+    private static final Logger LOG = LogManager.getLogger(RekeyReportImpl.class);
+
+    static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<String, AtomicLong> phases = new LinkedHashMap<>();
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile long keys;
+    private volatile Instant startTime;
+    private volatile long startNanos;
+    private volatile long totalNanos;
+    private volatile long peakHeapBytes;
+    private volatile String status = "running";
+
+    public RekeyReportImpl() {
+        reset();
+    }
+
+    private void reset() {
+        synchronized (phases) {
+            phases.clear();
+        }
+        for (Operation op : Operation.values()) {
+            latencies.put(op, new LatencyHistogram());
+        }
+        bytesRead.set(0);
+        bytesWritten.set(0);
+        keys = 0;
+        totalNanos = 0;
+        peakHeapBytes = 0;
+        status = "running";
+    }
+
+    @Override
+    public void start() {
+        reset();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        startTime = Instant.now();
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public Phase phase(String name) {
+        long start = System.nanoTime();
+        return () -> addPhaseNanos(name, System.nanoTime() - start);
+    }
+
+    private void addPhaseNanos(String name, long nanos) {
+        synchronized (phases) {
+            phases.computeIfAbsent(name, (n) -> new AtomicLong()).addAndGet(nanos);
+        }
+    }
+
+    @Override
+    public long getPhaseNanos(String name) {
+        synchronized (phases) {
+            AtomicLong nanos = phases.get(name);
+            return nanos == null ? 0 : nanos.get();
+        }
+    }
+
+    @Override
+    public long getCount(Operation op) {
+        return latencies.get(op).getCount();
+    }
+
+    @Override
+    public void recordLatency(Operation op, long nanos) {
+        latencies.get(op).record(nanos);
+    }
+
+    @Override
+    public void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    @Override
+    public void addBytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    @Override
+    public void setKeyCount(long keys) {
+        this.keys = keys;
+    }
+
+    @Override
+    public void finish(boolean success) {
+        totalNanos = System.nanoTime() - startNanos;
+        status = success ? "success" : "failed";
+
+        // The sum of the per pool peaks - an upper bound as the pools may not all peak at the same moment.
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeapBytes = peak;
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"status\": \"").append(status).append("\",\n");
+        json.append("  \"startTime\": \"").append(startTime).append("\",\n");
+        json.append("  \"totalMillis\": ").append(millis(totalNanos)).append(",\n");
+
+        json.append("  \"phasesMillis\": {");
+        synchronized (phases) {
+            String sep = "\n";
+            for (Map.Entry<String, AtomicLong> phase : phases.entrySet()) {
+                json.append(sep).append("    \"").append(escape(phase.getKey())).append("\": ")
+                        .append(millis(phase.getValue().get()));
+                sep = ",\n";
+            }
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"latencyMicros\": {");
+        String sep = "\n";
+        for (Operation op : Operation.values()) {
+            LatencyHistogram h = latencies.get(op);
+            json.append(sep).append("    \"").append(op.getName()).append("\": {\"count\": ").append(h.getCount());
+            for (double p : PERCENTILES) {
+                json.append(", \"p").append(percentileName(p)).append("\": ").append(micros(h.getPercentile(p)));
+            }
+            json.append(", \"max\": ").append(micros(h.getMax())).append("}");
+            sep = ",\n";
+        }
+        json.append("\n  },\n");
+
+        json.append("  \"bytes\": {\"read\": ").append(bytesRead.get()).append(", \"written\": ")
+                .append(bytesWritten.get()).append("},\n");
+        json.append("  \"keys\": ").append(keys).append(",\n");
+        json.append("  \"peakHeapBytes\": ").append(peakHeapBytes).append("\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    @Override
+    public void write(Path dest) throws RekeyException {
+        try {
+            Files.write(dest, toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception ex) {
+            throw new RekeyException(format("error writing rekey report: {0}", dest), ex);
+        }
+        LOG.info("rekey report written to: {}", dest);
+    }
+
+    static String percentileName(double p) {
+        return p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p).replace(".", "");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MICROSECONDS.toNanos(1));
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
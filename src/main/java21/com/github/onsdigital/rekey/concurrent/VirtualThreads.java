@@ -0,0 +1,30 @@
+package com.github.onsdigital.rekey.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads.
+ *
+ * <p>This is the Java 21 version, packaged under <code>META-INF/versions/21</code> of the multi-release rekey jar. It
+ * must keep the same public API as the Java 8 version in <code>src/main/java</code>.</p>
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * @param namePrefix the thread name prefix, each thread is named with the prefix followed by a counter.
+     * @return a thread safe factory of virtual threads.
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        return Thread.ofVirtual().name(namePrefix, 1).factory();
+    }
+}
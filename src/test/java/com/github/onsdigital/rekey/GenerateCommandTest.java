@@ -0,0 +1,109 @@
+package com.github.onsdigital.rekey;
+
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import com.github.onsdigital.rekey.config.ConfigParserImpl;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.KeyDecryptor;
+import com.github.onsdigital.rekey.encryption.KeyDecryptorImpl;
+import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import com.github.onsdigital.rekey.files.FilesHelper;
+import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class GenerateCommandTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GenerateCommand generate;
+    private FilesHelper filesHelper;
+    private Path zebedeeDir;
+    private SecretKey key;
+    private IvParameterSpec iv;
+
+    @Before
+    public void setUp() throws Exception {
+        this.zebedeeDir = folder.newFolder("zebedee").toPath();
+        this.filesHelper = new FilesHelperImpl();
+
+        this.key = KeyGenerator.getInstance("AES").generateKey();
+        byte[] ivBytes = new byte[16];
+        new SecureRandom().nextBytes(ivBytes);
+        this.iv = new IvParameterSpec(ivBytes);
+
+        WorkerPool workerPool = new WorkerPoolImpl();
+        this.generate = new GenerateCommand(new ConfigParserImpl(), new KeyEncryptorImpl(workerPool), filesHelper,
+                workerPool);
+
+        FieldUtils.writeField(generate, "key", Base64.getEncoder().encodeToString(key.getEncoded()), true);
+        FieldUtils.writeField(generate, "iv", Base64.getEncoder().encodeToString(iv.getIV()), true);
+        FieldUtils.writeField(generate, "zebedeeDir", zebedeeDir.toString(), true);
+        FieldUtils.writeField(generate, "threads", 2, true);
+    }
+
+    @Test
+    public void testGenerate() throws Exception {
+        FieldUtils.writeField(generate, "count", 10L, true);
+        FieldUtils.writeField(generate, "corrupt", 2L, true);
+        FieldUtils.writeField(generate, "nonKey", 3L, true);
+
+        assertThat(generate.call(), equalTo(0));
+
+        Path keyringDir = zebedeeDir.resolve("keyring");
+        assertThat(filesHelper.countFiles(keyringDir, "*", (p) -> true), equalTo(15L));
+        assertThat(filesHelper.countFiles(keyringDir, "*.json", (p) -> true), equalTo(3L));
+
+        KeyDecryptor decryptor = new KeyDecryptorImpl(filesHelper,
+                (p) -> p.getFileName().toString().endsWith(".txt") && !isCorrupt(p));
+        List<CollectionKey> keys = decryptor.decreptKeys(keyringDir, key, iv);
+        assertThat(keys.size(), equalTo(10));
+        for (CollectionKey k : keys) {
+            assertThat(k.getKey().getEncoded().length, equalTo(GenerateCommand.COLLECTION_KEY_LENGTH));
+            assertTrue(k.getCollectionID().startsWith(GenerateCommand.COLLECTION_ID_PREFIX));
+        }
+
+        KeyDecryptor corruptDecryptor = new KeyDecryptorImpl(filesHelper, this::isCorrupt);
+        assertThrows(RekeyException.class, () -> corruptDecryptor.decreptKeys(keyringDir, key, iv));
+    }
+
+    @Test
+    public void testGenerate_keyringNotEmpty_shouldThrowEx() throws Exception {
+        Path keyringDir = Files.createDirectory(zebedeeDir.resolve("keyring"));
+        Files.createFile(keyringDir.resolve("existing.txt"));
+        FieldUtils.writeField(generate, "count", 1L, true);
+
+        assertThrows(RekeyException.class, () -> generate.call());
+        assertThat(filesHelper.countFiles(keyringDir, "*", (p) -> true), equalTo(1L));
+    }
+
+    /**
+     * The corrupt key files are the .txt files generated after the valid keys.
+     */
+    private boolean isCorrupt(Path p) {
+        String name = p.getFileName().toString();
+        if (!name.endsWith(".txt")) {
+            return false;
+        }
+        long n = Long.parseLong(name.substring(GenerateCommand.COLLECTION_ID_PREFIX.length(), name.indexOf('-')));
+        return n >= 10;
+    }
+}
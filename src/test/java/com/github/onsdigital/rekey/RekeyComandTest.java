@@ -15,17 +15,28 @@ import org.mockito.MockitoAnnotations;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.function.Predicate;
 
+import static com.github.onsdigital.rekey.RekeyComand.INCREMENTAL_VERIFICATION_ERR_FMT;
+import static com.github.onsdigital.rekey.RekeyComand.KEY_FILE_GLOB;
+import static com.github.onsdigital.rekey.RekeyComand.MISSING_KEYS_FMT;
 import static com.github.onsdigital.rekey.RekeyComand.VERIFICATION_ERR_FMT;
+import static com.github.onsdigital.rekey.files.ArchiveFormat.TAR_GZ;
 import static java.text.MessageFormat.format;
+import static java.util.zip.Deflater.DEFAULT_COMPRESSION;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertThrows;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -46,6 +57,9 @@ public class RekeyComandTest {
     @Mock
     private FilesHelper filesHelper;
 
+    // The command rekeys each root by its absolute normalized path.
+    private static final String ZEBEDEE_ROOT = Paths.get("zebedeeDir").toAbsolutePath().normalize().toString();
+
     @Mock
     private FileArchiver archiver;
 
@@ -69,7 +83,7 @@ public class RekeyComandTest {
         FieldUtils.writeField(cmd, "iv", "iv", true);
         FieldUtils.writeField(cmd, "newKey", "newKey", true);
         FieldUtils.writeField(cmd, "newIv", "newIv", true);
-        FieldUtils.writeField(cmd, "zebedeeDir", "zebedeeDir", true);
+        FieldUtils.writeField(cmd, "zebedeeDirs", Collections.singletonList("zebedeeDir"), true);
 
         zebedeeDir = Paths.get("zebedee_root");
         keyringDir = zebedeeDir.resolve("keyring");
@@ -82,34 +96,68 @@ public class RekeyComandTest {
     public void parserConfigError_shouldThrowEx() throws Exception {
         doThrow(RekeyException.class)
                 .when(parser)
-                .parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
+                .parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
 
         assertThrows(RekeyException.class, () -> cmd.call());
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
         verifyZeroInteractions(archiver, filesHelper, encryptor, decryptor);
     }
 
+    @Test
+    public void noZebedeeRoot_shouldThrowEx() throws Exception {
+        FieldUtils.writeField(cmd, "zebedeeDirs", null, true);
+
+        assertThrows(RekeyException.class, () -> cmd.call());
+
+        verifyZeroInteractions(parser, archiver, filesHelper, encryptor, decryptor);
+    }
+
+    @Test
+    public void relativeZebedeeRoot_shouldBeNormalized() throws Exception {
+        FieldUtils.writeField(cmd, "zebedeeDirs", Collections.singletonList("./other/../zebedeeDir/"), true);
+        doThrow(RekeyException.class)
+                .when(parser)
+                .parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
+
+        assertThrows(RekeyException.class, () -> cmd.call());
+
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
+    }
+
+    @Test
+    public void duplicateZebedeeRoot_shouldThrowEx() throws Exception {
+        FieldUtils.writeField(cmd, "zebedeeDirs", Arrays.asList("zebedeeDir", "./zebedeeDir"), true);
+
+        assertThrows(RekeyException.class, () -> cmd.call());
+
+        verifyZeroInteractions(parser, archiver, filesHelper, encryptor, decryptor);
+    }
+
     @Test
     public void createTarGzError_shouldThrowEx() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         doThrow(RekeyException.class)
                 .when(archiver)
-                .createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+                .createArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter,
+                TAR_GZ, DEFAULT_COMPRESSION);
 
         assertThrows(RekeyException.class, () -> cmd.call());
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
-        verify(archiver, times(1)).createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+        // Created before the archive so an interrupted run can be resumed.
+        verify(filesHelper, times(1)).createDir(cfg.getKeyringDir());
+        verify(archiver, times(1)).createArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter,
+                TAR_GZ, DEFAULT_COMPRESSION);
         verifyZeroInteractions(encryptor, decryptor);
     }
 
     @Test
     public void moveDirError_shouldThrowEx() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         doThrow(RekeyException.class)
@@ -118,14 +166,14 @@ public class RekeyComandTest {
 
         assertThrows(RekeyException.class, () -> cmd.call());
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
         verifyZeroInteractions(archiver, encryptor, decryptor);
     }
 
     @Test
     public void createDirError_shouldThrowEx() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         doThrow(RekeyException.class)
@@ -134,17 +182,17 @@ public class RekeyComandTest {
 
         assertThrows(RekeyException.class, () -> cmd.call());
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
-        verify(archiver, times(1)).createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
         verify(filesHelper, times(1)).createDir(cfg.getKeyringDir());
 
-        verifyZeroInteractions(encryptor, decryptor);
+        // The new keyring dir is created before the backup archive.
+        verifyZeroInteractions(archiver, encryptor, decryptor);
     }
 
     @Test
     public void decryptorErr_shouldThrowEx() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         doThrow(RekeyException.class)
@@ -153,9 +201,10 @@ public class RekeyComandTest {
 
         assertThrows(RekeyException.class, () -> cmd.call());
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
-        verify(archiver, times(1)).createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+        verify(archiver, times(1)).createArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter,
+                TAR_GZ, DEFAULT_COMPRESSION);
         verify(filesHelper, times(1)).createDir(cfg.getKeyringDir());
         verify(decryptor, times(1)).decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv());
 
@@ -164,7 +213,7 @@ public class RekeyComandTest {
 
     @Test
     public void encryptorErr_shouldThrowEx() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         List<CollectionKey> keys = new ArrayList<CollectionKey>() {{
@@ -179,9 +228,10 @@ public class RekeyComandTest {
 
         assertThrows(RekeyException.class, () -> cmd.call());
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
-        verify(archiver, times(1)).createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+        verify(archiver, times(1)).createArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter,
+                TAR_GZ, DEFAULT_COMPRESSION);
         verify(filesHelper, times(1)).createDir(cfg.getKeyringDir());
         verify(decryptor, times(1)).decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv());
         verify(encryptor, times(1)).encryptToFile(keys, cfg.getKeyringDir(), cfg.getNewKey(), cfg.getNewIV());
@@ -189,7 +239,7 @@ public class RekeyComandTest {
 
     @Test
     public void deleteDirErr_shouldThrowEx() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         List<CollectionKey> keys = new ArrayList<CollectionKey>() {{
@@ -204,9 +254,10 @@ public class RekeyComandTest {
 
         assertThrows(RekeyException.class, () -> cmd.call());
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
-        verify(archiver, times(1)).createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+        verify(archiver, times(1)).createArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter,
+                TAR_GZ, DEFAULT_COMPRESSION);
         verify(filesHelper, times(1)).createDir(cfg.getKeyringDir());
         verify(decryptor, times(1)).decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv());
         verify(encryptor, times(1)).encryptToFile(keys, cfg.getKeyringDir(), cfg.getNewKey(), cfg.getNewIV());
@@ -215,7 +266,7 @@ public class RekeyComandTest {
 
     @Test
     public void validateCompleteError_shouldThrowEx() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         List<CollectionKey> keys = new ArrayList<CollectionKey>() {{
@@ -225,8 +276,8 @@ public class RekeyComandTest {
         when(decryptor.decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv()))
                 .thenReturn(keys);
 
-        when(filesHelper.exists(keyringDir.resolve("abc123.txt")))
-                .thenReturn(false);
+        when(filesHelper.streamFiles(keyringDir, KEY_FILE_GLOB, keyFileFilter))
+                .thenReturn(keyringListing());
 
         RekeyException ex = assertThrows(RekeyException.class, () -> cmd.call());
 
@@ -234,18 +285,48 @@ public class RekeyComandTest {
         String expected = format(VERIFICATION_ERR_FMT, "[abc123.txt]", cfg.getKeyringBackupTar());
         assertThat(ex.getMessage(), equalTo(expected));
 
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
-        verify(archiver, times(1)).createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
+        verify(archiver, times(1)).createArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter,
+                TAR_GZ, DEFAULT_COMPRESSION);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
         verify(filesHelper, times(1)).createDir(cfg.getKeyringDir());
         verify(decryptor, times(1)).decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv());
         verify(encryptor, times(1)).encryptToFile(keys, cfg.getKeyringDir(), cfg.getNewKey(), cfg.getNewIV());
         verify(filesHelper, times(1)).deleteDir(cfg.getKeyringBackupDir());
+        verify(filesHelper, times(1)).streamFiles(keyringDir, KEY_FILE_GLOB, keyFileFilter);
+    }
+
+    @Test
+    public void validateCompleteError_incrementalBackup_shouldNameManifest() throws Exception {
+        FieldUtils.writeField(cmd, "incrementalBackup", true, true);
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
+                .thenReturn(cfg);
+
+        List<CollectionKey> keys = new ArrayList<CollectionKey>() {{
+            add(new CollectionKey(collectionKey, "abc123"));
+        }};
+
+        when(decryptor.decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv()))
+                .thenReturn(keys);
+
+        when(filesHelper.streamFiles(eq(zebedeeDir), eq(Config.BACKUP_MANIFEST_GLOB), any()))
+                .thenReturn(keyringListing());
+
+        when(filesHelper.streamFiles(keyringDir, KEY_FILE_GLOB, keyFileFilter))
+                .thenReturn(keyringListing());
+
+        RekeyException ex = assertThrows(RekeyException.class, () -> cmd.call());
+
+        String expected = format(INCREMENTAL_VERIFICATION_ERR_FMT, format(MISSING_KEYS_FMT, "[abc123.txt]"),
+                cfg.getBackupManifest());
+        assertThat(ex.getMessage(), equalTo(expected));
+        verify(archiver, times(1)).createIncrementalArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(),
+                keyFileFilter, TAR_GZ, DEFAULT_COMPRESSION, null);
     }
 
     @Test
     public void testSuccess() throws Exception {
-        when(parser.parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir"))
+        when(parser.parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ))
                 .thenReturn(cfg);
 
         List<CollectionKey> keys = new ArrayList<CollectionKey>() {{
@@ -255,18 +336,33 @@ public class RekeyComandTest {
         when(decryptor.decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv()))
                 .thenReturn(keys);
 
-        when(filesHelper.exists(keyringDir.resolve("abc123.txt")))
-                .thenReturn(true);
+        when(filesHelper.streamFiles(keyringDir, KEY_FILE_GLOB, keyFileFilter))
+                .thenReturn(keyringListing(keyringDir.resolve("abc123.txt")));
 
         int exitCode = cmd.call();
 
         assertThat(exitCode, equalTo(0));
-        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", "zebedeeDir");
-        verify(archiver, times(1)).createTarGz(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter);
+        verify(parser, times(1)).parseConfig("key", "iv", "newKey", "newIv", ZEBEDEE_ROOT, TAR_GZ);
+        verify(archiver, times(1)).createArchive(cfg.getKeyringBackupDir(), cfg.getKeyringBackupTar(), keyFileFilter,
+                TAR_GZ, DEFAULT_COMPRESSION);
         verify(filesHelper, times(1)).move(cfg.getKeyringDir(), cfg.getKeyringBackupDir());
         verify(filesHelper, times(1)).createDir(cfg.getKeyringDir());
         verify(decryptor, times(1)).decreptKeys(cfg.getKeyringBackupDir(), cfg.getKey(), cfg.getIv());
         verify(encryptor, times(1)).encryptToFile(keys, cfg.getKeyringDir(), cfg.getNewKey(), cfg.getNewIV());
         verify(filesHelper, times(1)).deleteDir(cfg.getKeyringBackupDir());
+        verify(filesHelper, times(1)).streamFiles(keyringDir, KEY_FILE_GLOB, keyFileFilter);
+    }
+
+    private static DirectoryStream<Path> keyringListing(Path... keyFiles) {
+        return new DirectoryStream<Path>() {
+            @Override
+            public Iterator<Path> iterator() {
+                return Arrays.asList(keyFiles).iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
     }
 }
@@ -0,0 +1,72 @@
+package com.github.onsdigital.rekey;
+
+import com.github.onsdigital.rekey.files.ArchiveFormat;
+import com.github.onsdigital.rekey.files.FileArchiver;
+import com.github.onsdigital.rekey.files.FileArchiverImpl;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+public class RestoreCommandTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RestoreCommand restore;
+    private Path backup;
+    private Path outputDir;
+
+    @Before
+    public void setUp() throws Exception {
+        Path keyringDir = folder.newFolder("keyring").toPath();
+        for (int i = 0; i < 5; i++) {
+            Files.write(keyringDir.resolve("collection" + i + ".txt"),
+                    ("key " + i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        FileArchiver archiver = new FileArchiverImpl();
+        this.backup = folder.getRoot().toPath().resolve("keyring-backup.tar.gz");
+        archiver.createIndexedArchive(keyringDir, backup, Files::isRegularFile, ArchiveFormat.TAR_GZ,
+                Deflater.DEFAULT_COMPRESSION);
+
+        this.outputDir = folder.getRoot().toPath().resolve("restored");
+        this.restore = new RestoreCommand(archiver);
+        FieldUtils.writeField(restore, "backup", backup.toString(), true);
+        FieldUtils.writeField(restore, "outputDir", outputDir.toString(), true);
+    }
+
+    @Test
+    public void testCall_shouldRestoreRequestedKeys() throws Exception {
+        FieldUtils.writeField(restore, "collectionIDs", Arrays.asList("collection3", "collection1"), true);
+
+        assertThat(restore.call(), equalTo(0));
+
+        assertThat(new String(Files.readAllBytes(outputDir.resolve("collection1.txt")), StandardCharsets.UTF_8),
+                equalTo("key 1"));
+        assertThat(new String(Files.readAllBytes(outputDir.resolve("collection3.txt")), StandardCharsets.UTF_8),
+                equalTo("key 3"));
+        assertFalse(Files.exists(outputDir.resolve("collection2.txt")));
+    }
+
+    @Test
+    public void testCall_unknownCollection_shouldThrowEx() throws Exception {
+        FieldUtils.writeField(restore, "collectionIDs", Arrays.asList("collection1", "unknown"), true);
+
+        RekeyException ex = assertThrows(RekeyException.class, () -> restore.call());
+
+        assertThat(ex.getMessage(), equalTo("collection key not found in backup index: unknown"));
+    }
+}
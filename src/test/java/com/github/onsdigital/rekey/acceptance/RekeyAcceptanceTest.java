@@ -1,16 +1,35 @@
 package com.github.onsdigital.rekey.acceptance;
 
 import com.github.onsdigital.rekey.RekeyComand;
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
 import com.github.onsdigital.rekey.config.ConfigParser;
 import com.github.onsdigital.rekey.config.ConfigParserImpl;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.EncryptedKey;
 import com.github.onsdigital.rekey.encryption.KeyDecryptor;
 import com.github.onsdigital.rekey.encryption.KeyDecryptorImpl;
 import com.github.onsdigital.rekey.encryption.KeyEncryptor;
 import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import com.github.onsdigital.rekey.encryption.SlabStorage;
+import com.github.onsdigital.rekey.files.BackupManifest;
+import com.github.onsdigital.rekey.files.DurableFileWriter;
+import com.github.onsdigital.rekey.files.DurableFileWriterImpl;
 import com.github.onsdigital.rekey.files.FileArchiver;
 import com.github.onsdigital.rekey.files.FileArchiverImpl;
 import com.github.onsdigital.rekey.files.FilesHelper;
 import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import com.github.onsdigital.rekey.files.KeyFileIO;
+import com.github.onsdigital.rekey.files.KeyFileIOImpl;
+import com.github.onsdigital.rekey.reader.KeyVersion;
+import com.github.onsdigital.rekey.reader.KeyringReader;
+import com.github.onsdigital.rekey.reader.KeyringReaderImpl;
+import com.github.onsdigital.rekey.report.RekeyReport;
+import com.github.onsdigital.rekey.report.RekeyReportImpl;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.After;
@@ -33,11 +52,27 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 
 public class RekeyAcceptanceTest {
 
@@ -74,9 +109,12 @@ public class RekeyAcceptanceTest {
         FileArchiver archiver = new FileArchiverImpl();
         Predicate<Path> keyFilesFilter = (p) -> Files.isRegularFile(p);
         KeyDecryptor decryptor = new KeyDecryptorImpl(filesHelper, keyFilesFilter);
-        KeyEncryptor encryptor = new KeyEncryptorImpl();
+        WorkerPool workerPool = new WorkerPoolImpl();
+        DurableFileWriter fileWriter = new DurableFileWriterImpl();
+        KeyEncryptor encryptor = new KeyEncryptorImpl(workerPool, fileWriter);
 
-        this.rekey = new RekeyComand(cfgParse, decryptor, encryptor, archiver, filesHelper, keyFilesFilter);
+        this.rekey = new RekeyComand(cfgParse, decryptor, encryptor, archiver, filesHelper, keyFilesFilter,
+                workerPool, fileWriter, new KeyFileIOImpl(workerPool), new RekeyReportImpl());
 
         FieldUtils.writeField(rekey, "key", Base64.getEncoder().encodeToString(key1.getEncoded()), true);
         FieldUtils.writeField(rekey, "iv", Base64.getEncoder().encodeToString(iv1.getIV()), true);
@@ -84,7 +122,7 @@ public class RekeyAcceptanceTest {
         FieldUtils.writeField(rekey, "newKey", Base64.getEncoder().encodeToString(key2.getEncoded()), true);
         FieldUtils.writeField(rekey, "newIv", Base64.getEncoder().encodeToString(iv2.getIV()), true);
 
-        FieldUtils.writeField(rekey, "zebedeeDir", zebedeeDir.toString(), true);
+        FieldUtils.writeField(rekey, "zebedeeDirs", Collections.singletonList(zebedeeDir.toString()), true);
     }
 
     @After
@@ -133,6 +171,488 @@ public class RekeyAcceptanceTest {
         // successful they should match.
         String decryptedMessage = new String(decryptedBytes);
         assertThat(decryptedMessage, equalTo(CLEAR_TEXT));
+
+        // A timing report is written next to the backup and contains no key material.
+        Path report;
+        try (Stream<Path> files = Files.list(zebedeeDir)) {
+            report = files.filter(p -> p.getFileName().toString().endsWith(".report.json")).findFirst().get();
+        }
+        String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        assertThat(json.contains("\"status\": \"success\""), equalTo(true));
+        assertThat(json.contains("\"keys\": 1"), equalTo(true));
+        for (String phase : new String[]{"move", "tar", "decrypt", "encrypt", "delete", "verify"}) {
+            assertThat(json.contains("\"" + phase + "\": "), equalTo(true));
+        }
+        for (SecretKey k : new SecretKey[]{collectionKey, key1, key2}) {
+            assertThat(json.contains(Base64.getEncoder().encodeToString(k.getEncoded())), equalTo(false));
+        }
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but with each key file read once and teed into the backup archive and the
+     * decryptor.
+     *
+     * - And the backup archive contains the original key file.
+     */
+    @Test
+    public void testRekeyCommand_singleRead() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+        byte[] original = Files.readAllBytes(keyFile);
+
+        FieldUtils.writeField(rekey, "singleRead", true, true);
+        rekey.call();
+
+        byte[] fileBytes = readEncryptedFile(keyFile.toFile(), key2, iv2);
+        assertThat(fileBytes, equalTo(collectionKey.getEncoded()));
+
+        Path backupTar;
+        try (Stream<Path> files = Files.list(zebedeeDir)) {
+            backupTar = files.filter(p -> p.getFileName().toString().endsWith(".tar.gz")).findFirst().get();
+        }
+
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(
+                new GzipCompressorInputStream(Files.newInputStream(backupTar)))) {
+            TarArchiveEntry entry = tarIn.getNextTarEntry();
+            assertThat(entry.getName().endsWith("/testcollection.txt"), equalTo(true));
+            assertThat(IOUtils.toByteArray(tarIn), equalTo(original));
+        }
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but with durable writes synced in background batches.
+     */
+    @Test
+    public void testRekeyCommand_durable() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+
+        FieldUtils.writeField(rekey, "durable", true, true);
+        FieldUtils.writeField(rekey, "backgroundSync", true, true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertFalse(Files.exists(keyringDir.resolve("testcollection.txt.tmp")));
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but streaming the keys and deep verifying each re-encrypted key against the
+     * original.
+     */
+    @Test
+    public void testRekeyCommand_verifyDeep() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+        SecretKey otherKey = newSecretKey();
+        encryptAndWriteToFile(keyringDir.resolve("other.txt").toFile(), otherKey.getEncoded(), key1, iv1);
+
+        FieldUtils.writeField(rekey, "streaming", true, true);
+        FieldUtils.writeField(rekey, "verifyDeep", true, true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertThat(readEncryptedFile(keyringDir.resolve("other.txt").toFile(), key2, iv2),
+                equalTo(otherKey.getEncoded()));
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but with the key files read and written on dedicated I/O threads, overlapped
+     * with the decrypt/encrypt work on the worker threads.
+     */
+    @Test
+    public void testRekeyCommand_ioThreads() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+        SecretKey otherKey = newSecretKey();
+        encryptAndWriteToFile(keyringDir.resolve("other.txt").toFile(), otherKey.getEncoded(), key1, iv1);
+
+        FilesHelper filesHelper = new FilesHelperImpl();
+        Predicate<Path> keyFilesFilter = (p) -> Files.isRegularFile(p);
+        WorkerPool workerPool = new WorkerPoolImpl();
+        KeyFileIO io = new KeyFileIOImpl(workerPool);
+        DurableFileWriter fileWriter = new DurableFileWriterImpl();
+        RekeyReport report = new RekeyReportImpl();
+        RekeyComand ioRekey = new RekeyComand(new ConfigParserImpl(),
+                new KeyDecryptorImpl(filesHelper, keyFilesFilter, workerPool, io, report),
+                new KeyEncryptorImpl(workerPool, io, fileWriter, report), new FileArchiverImpl(), filesHelper,
+                keyFilesFilter, workerPool, fileWriter, io, report);
+
+        for (String field : Arrays.asList("key", "iv", "newKey", "newIv", "zebedeeDirs")) {
+            FieldUtils.writeField(ioRekey, field, FieldUtils.readField(rekey, field, true), true);
+        }
+        FieldUtils.writeField(ioRekey, "threads", 2, true);
+        FieldUtils.writeField(ioRekey, "ioThreads", 4, true);
+        FieldUtils.writeField(ioRekey, "ioInFlight", 1, true);
+        FieldUtils.writeField(ioRekey, "verifyDeep", true, true);
+        ioRekey.call();
+
+        assertFalse(io.isStarted());
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertThat(readEncryptedFile(keyringDir.resolve("other.txt").toFile(), key2, iv2),
+                equalTo(otherKey.getEncoded()));
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but with the decrypted keys held in an off heap key slab and deep verified.
+     */
+    @Test
+    public void testRekeyCommand_keySlab() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+        SecretKey otherKey = newSecretKey();
+        encryptAndWriteToFile(keyringDir.resolve("other.txt").toFile(), otherKey.getEncoded(), key1, iv1);
+
+        FieldUtils.writeField(rekey, "keySlab", SlabStorage.OFF_HEAP, true);
+        FieldUtils.writeField(rekey, "verifyDeep", true, true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertThat(readEncryptedFile(keyringDir.resolve("other.txt").toFile(), key2, iv2),
+                equalTo(otherKey.getEncoded()));
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but with an incremental backup.
+     *
+     * - And the backup manifest records the original key file in the new backup archive.
+     */
+    @Test
+    public void testRekeyCommand_incrementalBackup() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+        String digest = BackupManifest.digest(keyFile);
+
+        FieldUtils.writeField(rekey, "incrementalBackup", true, true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+
+        Path manifestFile;
+        try (Stream<Path> files = Files.list(zebedeeDir)) {
+            manifestFile = files.filter(p -> p.getFileName().toString().endsWith(BackupManifest.EXTENSION))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("backup manifest not found"));
+        }
+
+        BackupManifest manifest = BackupManifest.read(manifestFile);
+        BackupManifest.Entry entry = manifest.get(keyFile.getFileName().toString());
+        assertThat(entry.getDigest(), equalTo(digest));
+        assertTrue(Files.exists(zebedeeDir.resolve(entry.getArchive())));
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but with an indexed backup.
+     *
+     * - And the original key file can be restored on its own from the backup.
+     */
+    @Test
+    public void testRekeyCommand_backupIndex() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+        encryptAndWriteToFile(keyringDir.resolve("other.txt").toFile(), newSecretKey().getEncoded(), key1, iv1);
+        byte[] original = Files.readAllBytes(keyFile);
+
+        FieldUtils.writeField(rekey, "backupIndex", true, true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+
+        Path backup;
+        try (Stream<Path> files = Files.list(zebedeeDir)) {
+            backup = files.filter(p -> p.getFileName().toString().endsWith(".tar.gz"))
+                    .findFirst()
+                    .orElseThrow(() -> new AssertionError("backup archive not found"));
+        }
+
+        Path restoreDir = folder.newFolder("restored").toPath();
+        String collectionID = keyFile.getFileName().toString().replace(".txt", "");
+        new FileArchiverImpl().restoreKeys(backup, Collections.singletonList(collectionID), restoreDir);
+
+        assertThat(Files.readAllBytes(restoreDir.resolve(keyFile.getFileName())), equalTo(original));
+        assertFalse(Files.exists(restoreDir.resolve("other.txt")));
+    }
+
+    /**
+     * As {@link #testRekeyCommand()} but with the new keyring built in a staging dir and swapped into place.
+     *
+     * - And the staging dir is removed and the backup archive has been created.
+     */
+    @Test
+    public void testRekeyCommand_staged() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+
+        FieldUtils.writeField(rekey, "staged", true, true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertThat(listZebedeeDir(), equalTo(1L));
+    }
+
+    /**
+     * As {@link #testRekeyCommand_staged()} but with the staging dir on separate (scratch) storage.
+     */
+    @Test
+    public void testRekeyCommand_stagedScratchDir() throws Exception {
+        Path scratch = folder.newFolder("scratch").toPath();
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+
+        FieldUtils.writeField(rekey, "staged", true, true);
+        FieldUtils.writeField(rekey, "stagingDir", scratch.toString(), true);
+        FieldUtils.writeField(rekey, "durable", true, true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertThat(listZebedeeDir(), equalTo(1L));
+        try (Stream<Path> files = Files.list(scratch)) {
+            assertThat(files.count(), equalTo(0L));
+        }
+    }
+
+    /**
+     * Test verifies a dry run rekeys a copy of the keyring without modifying the live keyring:
+     *
+     * - Given the keyring dir contains a key file encrypted with Secret Key 1.
+     *
+     *   - When the Rekey command is invoked with --dry-run.
+     *
+     *     - Then the key file is still encrypted with Secret Key 1 and no backup has been created.
+     *
+     *     - And the dry run workspace is removed.
+     */
+    @Test
+    public void testRekeyCommand_dryRun() throws Exception {
+        Path scratch = folder.newFolder("scratch").toPath();
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+
+        FieldUtils.writeField(rekey, "dryRun", true, true);
+        FieldUtils.writeField(rekey, "dryRunDir", scratch.toString(), true);
+        FieldUtils.writeField(rekey, "verifyDeep", true, true);
+        assertThat(rekey.call(), equalTo(0));
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key1, iv1), equalTo(collectionKey.getEncoded()));
+        assertThat(listZebedeeDir(), equalTo(0L));
+        try (Stream<Path> files = Files.list(scratch)) {
+            assertThat(files.count(), equalTo(0L));
+        }
+    }
+
+    /**
+     * Test verifies several Zebedee roots can be rekeyed in one run:
+     *
+     * - Given a second Zebedee root listed in a manifest file.
+     *
+     *   - When the Rekey command is invoked with both roots.
+     *
+     *     - Then the key files in both keyrings are reencrypted with Secret Key 2.
+     */
+    @Test
+    public void testRekeyCommand_multipleRoots() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+
+        Path zebedeeDir2 = folder.newFolder("zebedee2", "keyring").toPath().getParent();
+        Path keyFile2 = zebedeeDir2.resolve("keyring/othercollection.txt");
+        SecretKey collectionKey2 = newSecretKey();
+        encryptAndWriteToFile(keyFile2.toFile(), collectionKey2.getEncoded(), key1, iv1);
+
+        Path manifest = folder.getRoot().toPath().resolve("roots.txt");
+        Files.write(manifest, ("# zebedee roots\n\n" + zebedeeDir2 + "\n").getBytes(StandardCharsets.UTF_8));
+
+        FieldUtils.writeField(rekey, "manifest", manifest.toString(), true);
+        FieldUtils.writeField(rekey, "streaming", true, true);
+        assertThat(rekey.call(), equalTo(0));
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertThat(readEncryptedFile(keyFile2.toFile(), key2, iv2), equalTo(collectionKey2.getEncoded()));
+        assertThat(listZebedeeDir(), equalTo(1L));
+    }
+
+    /**
+     * Test verifies a failed Zebedee root doesn't stop the other roots being rekeyed:
+     *
+     * - Given a second Zebedee root that does not exist.
+     *
+     *   - When the Rekey command is invoked with both roots.
+     *
+     *     - Then the command fails and the key file in the existing root is reencrypted with Secret Key 2.
+     */
+    @Test
+    public void testRekeyCommand_multipleRoots_oneFails() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+
+        FieldUtils.writeField(rekey, "zebedeeDirs", Arrays.asList(zebedeeDir.toString(),
+                folder.getRoot().toPath().resolve("missing").toString()), true);
+        assertThrows(RekeyException.class, () -> rekey.call());
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+    }
+
+    /**
+     * Test verifies an interrupted rekey can be resumed from its backup dir:
+     *
+     * - Given a run was interrupted after moving the keyring to the backup dir and rekeying one of two keys.
+     *
+     *   - When the Rekey command is invoked with --resume.
+     *
+     *     - Then the key recorded in the journal is not rekeyed again and the remaining key is rekeyed.
+     *
+     *     - And the incomplete backup archive is recreated and the backup dir and journal are removed.
+     */
+    @Test
+    public void testRekeyCommand_resume() throws Exception {
+        Path backupDir = zebedeeDir.resolve("keyring-backup-interrupted");
+        Files.move(keyringDir, backupDir);
+        Files.createDirectory(keyringDir);
+
+        SecretKey completedKey = newSecretKey();
+        encryptAndWriteToFile(backupDir.resolve("completed.txt").toFile(), completedKey.getEncoded(), key1, iv1);
+        encryptAndWriteToFile(keyringDir.resolve("completed.txt").toFile(), completedKey.getEncoded(), key2, iv2);
+        encryptAndWriteToFile(backupDir.resolve("testcollection.txt").toFile(), collectionKey.getEncoded(), key1,
+                iv1);
+
+        Path journalFile = zebedeeDir.resolve("keyring-backup-interrupted.journal");
+        Files.write(journalFile, "K completed\n".getBytes(StandardCharsets.UTF_8));
+
+        FieldUtils.writeField(rekey, "resumeDir", backupDir.toString(), true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertThat(readEncryptedFile(keyringDir.resolve("completed.txt").toFile(), key2, iv2),
+                equalTo(completedKey.getEncoded()));
+
+        assertTrue(Files.exists(zebedeeDir.resolve("keyring-backup-interrupted.tar.gz")));
+        assertFalse(Files.exists(backupDir));
+        assertFalse(Files.exists(journalFile));
+    }
+
+    /**
+     * Test verifies a rekey interrupted while the backup archive is created can be resumed:
+     *
+     * - Given a run fails after moving the keyring to the backup dir but before the backup archive is complete.
+     *
+     *   - Then the new (empty) keyring dir has already been created.
+     *
+     *   - When the Rekey command is invoked with --resume.
+     *
+     *     - Then the backup archive is recreated and the key is rekeyed.
+     */
+    @Test
+    public void testRekeyCommand_interruptedArchive_shouldResume() throws Exception {
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+
+        FileArchiver archiver = (FileArchiver) FieldUtils.readField(rekey, "archiver", true);
+        FileArchiver failingArchiver = mock(FileArchiver.class);
+        doThrow(new RekeyException("archive interrupted")).when(failingArchiver)
+                .createArchive(any(Path.class), any(Path.class), any(), any(), anyInt());
+        FieldUtils.writeField(rekey, "archiver", failingArchiver, true);
+
+        assertThrows(RekeyException.class, () -> rekey.call());
+
+        assertTrue(Files.isDirectory(keyringDir));
+        Path backupDir;
+        try (Stream<Path> files = Files.list(zebedeeDir)) {
+            backupDir = files.filter(Files::isDirectory).filter(p -> !p.equals(keyringDir)).findFirst().get();
+        }
+
+        FieldUtils.writeField(rekey, "archiver", archiver, true);
+        FieldUtils.writeField(rekey, "resumeDir", backupDir.toString(), true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertTrue(Files.exists(zebedeeDir.resolve(backupDir.getFileName() + ".tar.gz")));
+        assertFalse(Files.exists(backupDir));
+    }
+
+    /**
+     * Test verifies --resume recreates the keyring dir of a run interrupted before it was created.
+     */
+    @Test
+    public void testRekeyCommand_resume_missingKeyringDir_shouldRecreate() throws Exception {
+        Path backupDir = zebedeeDir.resolve("keyring-backup-interrupted");
+        Files.move(keyringDir, backupDir);
+        encryptAndWriteToFile(backupDir.resolve("testcollection.txt").toFile(), collectionKey.getEncoded(), key1,
+                iv1);
+
+        FieldUtils.writeField(rekey, "resumeDir", backupDir.toString(), true);
+        rekey.call();
+
+        assertThat(readEncryptedFile(keyFile.toFile(), key2, iv2), equalTo(collectionKey.getEncoded()));
+        assertTrue(Files.exists(zebedeeDir.resolve("keyring-backup-interrupted.tar.gz")));
+        assertFalse(Files.exists(backupDir));
+    }
+
+    /**
+     * Test verifies a {@link KeyringReader} reads every collection key part way through a streaming rotation:
+     *
+     * - Given the keyring contains two key files encrypted with Secret Key 1.
+     *
+     *   - When a key is read just before and just after its rekeyed key file is written.
+     *
+     *     - Then the key is read from the backup dir with Secret Key 1 before, and from the new keyring with Secret
+     *       Key 2 after.
+     *
+     *     - And the other key is readable whether or not it has been rekeyed yet.
+     */
+    @Test
+    public void testRekeyCommand_keyringReader_shouldReadDuringRotation() throws Exception {
+        SecretKey otherKey = newSecretKey();
+        encryptAndWriteToFile(keyFile.toFile(), collectionKey.getEncoded(), key1, iv1);
+        encryptAndWriteToFile(keyringDir.resolve("othercollection.txt").toFile(), otherKey.getEncoded(), key1, iv1);
+
+        KeyringReader reader = new KeyringReaderImpl(keyringDir,
+                new KeyDecryptorImpl(new FilesHelperImpl(), (p) -> true), key2, iv2, key1, iv1);
+        Map<String, byte[]> expected = new HashMap<>();
+        expected.put("testcollection", collectionKey.getEncoded());
+        expected.put("othercollection", otherKey.getEncoded());
+
+        List<String> reads = Collections.synchronizedList(new ArrayList<>());
+        List<KeyVersion> otherReads = Collections.synchronizedList(new ArrayList<>());
+        KeyEncryptor encryptor = spy((KeyEncryptor) FieldUtils.readField(rekey, "encryptor", true));
+        doAnswer((invocation) -> {
+            String id = ((EncryptedKey) invocation.getArguments()[0]).getCollectionID();
+            reads.add(read(reader, id, expected) + " before " + id);
+            otherReads.add(read(reader, id.equals("testcollection") ? "othercollection" : "testcollection",
+                    expected));
+
+            invocation.callRealMethod();
+
+            reads.add(read(reader, id, expected) + " after " + id);
+            return null;
+        }).when(encryptor).writeKey(any(EncryptedKey.class), any(Path.class));
+        FieldUtils.writeField(rekey, "encryptor", encryptor, true);
+
+        FieldUtils.writeField(rekey, "streaming", true, true);
+        FieldUtils.writeField(rekey, "durable", true, true);
+        // Rename each key file into place as it is written rather than once a batch of them is synced.
+        FieldUtils.writeField(rekey, "syncBatchSize", 1, true);
+        rekey.call();
+
+        assertThat(reads.size(), equalTo(4));
+        assertThat(otherReads.size(), equalTo(2));
+        assertFalse(otherReads.contains(null));
+        assertTrue(reads.containsAll(Arrays.asList("OLD before testcollection", "NEW after testcollection",
+                "OLD before othercollection", "NEW after othercollection")));
+        assertThat(read(reader, "testcollection", expected), equalTo(KeyVersion.NEW));
+        assertThat(read(reader, "othercollection", expected), equalTo(KeyVersion.NEW));
+    }
+
+    /**
+     * Read a collection key through the reader and check it decrypted to the expected key.
+     *
+     * @return the key version the key was decrypted with, or null if it was read as the wrong key.
+     */
+    private KeyVersion read(KeyringReader reader, String collectionID, Map<String, byte[]> expected)
+            throws Exception {
+        CollectionKey key = reader.readKey(collectionID);
+        if (!Arrays.equals(key.getKey().getEncoded(), expected.get(collectionID))) {
+            return null;
+        }
+        return reader.getKeyVersion(collectionID);
+    }
+
+    /**
+     * @return the number of entries in the zebedee dir other than the keyring dir and the rekey report - each of
+     * which is expected to be the backup archive.
+     */
+    private long listZebedeeDir() throws Exception {
+        try (Stream<Path> files = Files.list(zebedeeDir)) {
+            return files.filter(p -> !p.equals(keyringDir))
+                    .filter(p -> !p.getFileName().toString().endsWith(".report.json"))
+                    .peek(p -> assertTrue(p.getFileName().toString().endsWith(".tar.gz")))
+                    .count();
+        }
     }
 
     private void encryptAndWriteToFile(File f, byte[] content, SecretKey key, IvParameterSpec iv) throws Exception {
@@ -0,0 +1,152 @@
+package com.github.onsdigital.rekey.concurrent;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class WorkerPoolImplTest {
+
+    private WorkerPool pool;
+    private List<Integer> input;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = new WorkerPoolImpl();
+        this.input = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void testStart_invalidThreads_shouldThrowEx() {
+        RekeyException ex = assertThrows(RekeyException.class, () -> pool.start(0));
+
+        assertThat(ex.getMessage(), equalTo("thread count must be greater than 0 but was 0"));
+    }
+
+    @Test
+    public void testStart_alreadyStarted_shouldThrowEx() throws Exception {
+        pool.start(2);
+
+        RekeyException ex = assertThrows(RekeyException.class, () -> pool.start(2));
+
+        assertThat(ex.getMessage(), equalTo("worker pool already started"));
+    }
+
+    @Test
+    public void testMap_notStarted_shouldRunSequentially() throws Exception {
+        List<String> results = pool.map(input, (i) -> Thread.currentThread().getName());
+
+        assertThat(pool.getThreads(), equalTo(1));
+        assertTrue(results.stream().allMatch(name -> name.equals(Thread.currentThread().getName())));
+    }
+
+    @Test
+    public void testMap_parallel_shouldPreserveOrder() throws Exception {
+        pool.start(4);
+
+        List<Integer> results = pool.map(input, (i) -> i * 2);
+
+        assertThat(results.size(), equalTo(input.size()));
+        for (int i = 0; i < input.size(); i++) {
+            assertThat(results.get(i), equalTo(i * 2));
+        }
+    }
+
+    @Test
+    public void testMap_virtualThreads_shouldFallBackWhenUnsupported() throws Exception {
+        pool.start(64, true);
+
+        assertThat(pool.isVirtual(), equalTo(VirtualThreads.isSupported()));
+        List<String> results = pool.map(input, (i) -> Thread.currentThread().getName());
+
+        assertThat(pool.getThreads(), equalTo(64));
+        assertTrue(results.stream().allMatch(name -> name.startsWith(WorkerPoolImpl.THREAD_NAME_PREFIX)));
+    }
+
+    @Test
+    public void testSubmit_virtualThreads_shouldReuseWorkers() throws Exception {
+        pool.start(4, true);
+        // Thread locals (the cipher and buffer caches) must survive between tasks rather than being rebuilt per task.
+        ThreadLocal<Object> cache = ThreadLocal.withInitial(Object::new);
+        Set<Object> caches = ConcurrentHashMap.newKeySet();
+
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(pool.submit(() -> caches.add(cache.get())));
+        }
+        for (Future<Boolean> f : futures) {
+            f.get();
+        }
+
+        assertTrue(caches.size() <= 4);
+    }
+
+    @Test
+    public void testAsExecutorService_shutdown_shouldNotStopPool() throws Exception {
+        pool.start(4);
+        ExecutorService executor = pool.asExecutorService();
+        AtomicInteger processed = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            executor.submit(() -> {
+                Thread.sleep(1);
+                return processed.incrementAndGet();
+            });
+        }
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertThat(processed.get(), equalTo(100));
+        assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> 1));
+
+        List<String> results = pool.map(input, (i) -> Thread.currentThread().getName());
+        assertTrue(results.stream().allMatch(name -> name.startsWith(WorkerPoolImpl.THREAD_NAME_PREFIX)));
+    }
+
+    @Test
+    public void testMap_parallelTaskError_shouldFailFast() throws Exception {
+        pool.start(4);
+        AtomicInteger processed = new AtomicInteger();
+
+        RekeyException ex = assertThrows(RekeyException.class, () -> pool.map(input, (i) -> {
+            processed.incrementAndGet();
+            if (i == 10) {
+                throw new RekeyException("error processing: 10");
+            }
+            Thread.yield();
+            return i;
+        }));
+
+        assertThat(ex.getMessage(), equalTo("error processing: 10"));
+        assertTrue(processed.get() < input.size());
+    }
+
+    @Test
+    public void testSubmit_notStarted_shouldRunOnCallingThread() throws Exception {
+        String name = pool.submit(() -> Thread.currentThread().getName()).get();
+
+        assertThat(name, equalTo(Thread.currentThread().getName()));
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.onsdigital.rekey.config;
 
+import com.github.onsdigital.rekey.files.ArchiveFormat;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -185,4 +186,22 @@ public class ConfigParserImplTest {
         assertThat(zebedeeRoot.resolve("keyring"), equalTo(cfg.getKeyringDir()));
     }
 
+    @Test
+    public void parseConfig_backupFormat_shouldSetBackupExtension() throws Exception {
+        folder.newFolder("zebedee/keyring").toPath();
+
+        Config cfg = parser.parseConfig(TEST_SECRET_KEY, TEST_INIT_VECTOR, TEST_SECRET_KEY, TEST_INIT_VECTOR,
+                zebedeeRoot.toString(), ArchiveFormat.ZIP);
+
+        assertThat(cfg.getBackupFormat(), equalTo(ArchiveFormat.ZIP));
+        assertThat(cfg.getKeyringBackupTar().toString(), equalTo(cfg.getKeyringBackupDir().toString() + ".zip"));
+    }
+
+    @Test
+    public void parseConfig_backupFormatNull_shouldThrowException() {
+        Exception ex = assertThrows(Exception.class, () -> parser.parseConfig(TEST_SECRET_KEY, TEST_INIT_VECTOR,
+                TEST_SECRET_KEY, TEST_INIT_VECTOR, zebedeeRoot.toString(), null));
+
+        assertThat(ex.getMessage(), equalTo("backup format value required but was null"));
+    }
 }
@@ -0,0 +1,81 @@
+package com.github.onsdigital.rekey.encryption;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CipherPoolImplTest {
+
+    private CipherPool pool;
+    private SecretKey key;
+    private IvParameterSpec iv;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = new CipherPoolImpl("AES/CBC/PKCS5Padding");
+        this.key = KeyGenerator.getInstance("AES").generateKey();
+
+        byte[] ivBytes = new byte[16];
+        new SecureRandom().nextBytes(ivBytes);
+        this.iv = new IvParameterSpec(ivBytes);
+    }
+
+    @Test
+    public void testGetCipher_sameThread_shouldReuseCipher() throws Exception {
+        Cipher c1 = pool.getCipher(Cipher.ENCRYPT_MODE, key, iv);
+        Cipher c2 = pool.getCipher(Cipher.ENCRYPT_MODE, key, iv);
+
+        assertThat(c1, sameInstance(c2));
+        assertThat(pool.getCipher(Cipher.DECRYPT_MODE, key, iv), not(sameInstance(c1)));
+    }
+
+    @Test
+    public void testGetCipher_otherThread_shouldNotShareCipher() throws Exception {
+        Cipher c1 = pool.getCipher(Cipher.ENCRYPT_MODE, key, iv);
+        AtomicReference<Cipher> c2 = new AtomicReference<>();
+
+        Thread t = new Thread(() -> {
+            try {
+                c2.set(pool.getCipher(Cipher.ENCRYPT_MODE, key, iv));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        t.start();
+        t.join();
+
+        assertThat(c2.get(), not(sameInstance(c1)));
+    }
+
+    @Test
+    public void testGetCipher_reused_shouldProduceSameOutput() throws Exception {
+        byte[] input = "collection key".getBytes(StandardCharsets.UTF_8);
+
+        byte[] first = pool.getCipher(Cipher.ENCRYPT_MODE, key, iv).doFinal(input);
+        byte[] second = pool.getCipher(Cipher.ENCRYPT_MODE, key, iv).doFinal(input);
+
+        assertThat(second, equalTo(first));
+        assertThat(pool.getCipher(Cipher.DECRYPT_MODE, key, iv).doFinal(second), equalTo(input));
+    }
+
+    @Test
+    public void testInvalidate_shouldCreateNewCipher() throws Exception {
+        Cipher c1 = pool.getCipher(Cipher.ENCRYPT_MODE, key, iv);
+
+        pool.invalidate(Cipher.ENCRYPT_MODE, key, iv);
+
+        assertThat(pool.getCipher(Cipher.ENCRYPT_MODE, key, iv), not(sameInstance(c1)));
+    }
+}
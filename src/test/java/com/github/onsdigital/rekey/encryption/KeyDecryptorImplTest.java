@@ -1,7 +1,11 @@
 package com.github.onsdigital.rekey.encryption;
 
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
 import com.github.onsdigital.rekey.files.FilesHelper;
 import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import com.github.onsdigital.rekey.report.Operation;
+import com.github.onsdigital.rekey.report.RekeyReportImpl;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -11,6 +15,8 @@ import org.junit.rules.TemporaryFolder;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.SecureRandom;
 import java.util.ArrayList;
@@ -19,6 +25,7 @@ import java.util.function.Predicate;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
 
 public class KeyDecryptorImplTest {
 
@@ -67,6 +74,75 @@ public class KeyDecryptorImplTest {
         assertThat(keys.get(0).getKey(), equalTo(collectionKey));
     }
 
+    @Test
+    public void testDecryptKeys_shouldWipeScratchBuffers() throws Exception {
+        SecretKey key = newSecretKey();
+        IvParameterSpec initVector = getIV();
+
+        List<CollectionKey> input = new ArrayList<CollectionKey>() {{
+            add(new CollectionKey(newSecretKey(), "abc1234"));
+        }};
+        new KeyEncryptorImpl().encryptToFile(input, keyringDir, key, initVector);
+
+        decryptor.decreptKeys(keyringDir, key, initVector);
+
+        KeyBuffers buffers = KeyBuffers.get();
+        assertThat(buffers.in(), equalTo(new byte[buffers.in().length]));
+        assertThat(buffers.out(), equalTo(new byte[buffers.out().length]));
+    }
+
+    @Test
+    public void testDecryptKeys_corruptKeyFile_shouldThrowEx() throws Exception {
+        Path keyFile = keyringDir.resolve("abc1234.txt");
+        Files.write(keyFile, new byte[]{1, 2, 3, 4});
+
+        RekeyException ex = assertThrows(RekeyException.class,
+                () -> decryptor.decreptKeys(keyringDir, newSecretKey(), getIV()));
+
+        assertThat(ex.getMessage(), equalTo("error decrypting secret key: " + keyFile));
+    }
+
+    @Test
+    public void testDecryptKey_largeKeyFile_shouldUseStreamPath() throws Exception {
+        SecretKey key = newSecretKey();
+        IvParameterSpec initVector = getIV();
+
+        byte[] largeKey = new byte[KeyBuffers.MAX_SMALL_FILE_SIZE * 2];
+        new SecureRandom().nextBytes(largeKey);
+        SecretKey collectionKey = new SecretKeySpec(largeKey, "AES");
+
+        List<CollectionKey> input = new ArrayList<CollectionKey>() {{
+            add(new CollectionKey(collectionKey, "large"));
+        }};
+        new KeyEncryptorImpl().encryptToFile(input, keyringDir, key, initVector);
+
+        CollectionKey result = decryptor.decryptKey(keyringDir.resolve("large.txt"), key, initVector);
+
+        assertThat(result.getKey(), equalTo(collectionKey));
+    }
+
+    @Test
+    public void testVerifyKey_shouldNotRecordReadOrDecrypt() throws Exception {
+        SecretKey key = newSecretKey();
+        IvParameterSpec initVector = getIV();
+        SecretKey collectionKey = newSecretKey();
+
+        List<CollectionKey> input = new ArrayList<CollectionKey>() {{
+            add(new CollectionKey(collectionKey, "abc1234"));
+        }};
+        new KeyEncryptorImpl().encryptToFile(input, keyringDir, key, initVector);
+
+        RekeyReportImpl report = new RekeyReportImpl();
+        decryptor = new KeyDecryptorImpl(filesHelper, keyfileFilter, new WorkerPoolImpl(), report);
+
+        CollectionKey result = decryptor.verifyKey(keyringDir.resolve("abc1234.txt"), key, initVector);
+
+        assertThat(result.getKey(), equalTo(collectionKey));
+        assertThat(report.getCount(Operation.VERIFY), equalTo(1L));
+        assertThat(report.getCount(Operation.READ), equalTo(0L));
+        assertThat(report.getCount(Operation.DECRYPT), equalTo(0L));
+    }
+
     private IvParameterSpec getIV() {
         byte[] iv = new byte[16];
         SecureRandom random = new SecureRandom();
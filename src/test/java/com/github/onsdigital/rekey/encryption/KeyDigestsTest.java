@@ -0,0 +1,51 @@
+package com.github.onsdigital.rekey.encryption;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class KeyDigestsTest {
+
+    private KeyDigests digests;
+    private SecretKey key, otherKey;
+
+    @Before
+    public void setUp() throws Exception {
+        this.digests = new KeyDigests();
+        this.key = KeyGenerator.getInstance("AES").generateKey();
+        this.otherKey = KeyGenerator.getInstance("AES").generateKey();
+    }
+
+    @Test
+    public void testMatches_sameKey_shouldReturnTrue() throws Exception {
+        digests.record(new CollectionKey(key, "abc"));
+
+        assertTrue(digests.contains("abc"));
+        assertThat(digests.size(), equalTo(1));
+        assertTrue(digests.matches(new CollectionKey(key, "abc")));
+    }
+
+    @Test
+    public void testMatches_differentKey_shouldReturnFalse() throws Exception {
+        digests.record(new CollectionKey(key, "abc"));
+
+        assertFalse(digests.matches(new CollectionKey(otherKey, "abc")));
+    }
+
+    @Test
+    public void testMatches_noDigest_shouldThrowEx() {
+        RekeyException ex = assertThrows(RekeyException.class,
+                () -> digests.matches(new CollectionKey(key, "abc")));
+
+        assertThat(ex.getMessage(), equalTo("no digest recorded for collection key: abc"));
+    }
+}
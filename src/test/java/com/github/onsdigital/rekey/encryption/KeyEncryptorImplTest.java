@@ -14,7 +14,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -62,6 +65,32 @@ public class KeyEncryptorImplTest {
         assertThat(encryptedKeys.get(0).getKey(), equalTo(collectionKey));
     }
 
+    @Test
+    public void testEncrypt_keySlab() throws Exception {
+        SecretKey key = newSecretKey();
+        SecretKey newKey = newSecretKey();
+        IvParameterSpec initV = newIV();
+        SecretKey collectionKey = newSecretKey();
+        SecretKey otherKey = newSecretKey();
+
+        KeyEncryptor encryptor = new KeyEncryptorImpl();
+        encryptor.encryptToFile(Arrays.asList(new CollectionKey(collectionKey, "abc123"),
+                new CollectionKey(otherKey, "def456")), keyringDir, key, initV);
+
+        KeyDecryptor decryptor = new KeyDecryptorImpl(new FilesHelperImpl(), (p) -> true);
+        try (KeySlab slab = decryptor.decryptToSlab(keyringDir, key, initV, SlabStorage.HEAP)) {
+            assertThat(slab.size(), equalTo(2));
+            encryptor.encryptToFile(slab, keyringDir, newKey, initV);
+        }
+
+        Map<String, SecretKey> rekeyed = new HashMap<>();
+        decryptor.decreptKeys(keyringDir, newKey, initV).forEach((k) -> rekeyed.put(k.getCollectionID(), k.getKey()));
+
+        assertThat(rekeyed.size(), equalTo(2));
+        assertThat(rekeyed.get("abc123"), equalTo(collectionKey));
+        assertThat(rekeyed.get("def456"), equalTo(otherKey));
+    }
+
     private IvParameterSpec newIV() {
         byte[] iv = new byte[16];
         SecureRandom random = new SecureRandom();
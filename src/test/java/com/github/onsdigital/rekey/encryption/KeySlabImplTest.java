@@ -0,0 +1,84 @@
+package com.github.onsdigital.rekey.encryption;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class KeySlabImplTest {
+
+    @Test
+    public void testPut_heap() throws Exception {
+        assertPutAndCopy(new KeySlabImpl(3, SlabStorage.HEAP));
+    }
+
+    @Test
+    public void testPut_offHeap() throws Exception {
+        assertPutAndCopy(new KeySlabImpl(3, SlabStorage.OFF_HEAP));
+    }
+
+    @Test
+    public void testWipe_shouldEmptySlab() throws Exception {
+        for (SlabStorage storage : SlabStorage.values()) {
+            KeySlab slab = new KeySlabImpl(2, storage);
+            slab.put("abc123", key(16, 1), 0, 16);
+
+            slab.close();
+
+            assertThat(slab.size(), equalTo(0));
+            assertThat(slab.slotOf("abc123"), equalTo(-1));
+            assertThat(slab.copyKey(0, new byte[KeySlab.SLOT_WIDTH], 0), equalTo(0));
+            assertThat(slab.put("abc123", key(16, 2), 0, 16), equalTo(0));
+        }
+    }
+
+    @Test
+    public void testPut_invalid_shouldThrowEx() throws Exception {
+        KeySlab slab = new KeySlabImpl(1, SlabStorage.HEAP);
+
+        assertThrows(RekeyException.class, () -> slab.put("abc123", key(33, 1), 0, 33));
+
+        slab.put("abc123", key(16, 1), 0, 16);
+        assertThrows(RekeyException.class, () -> slab.put("def456", key(16, 2), 0, 16));
+
+        KeySlab other = new KeySlabImpl(2, SlabStorage.HEAP);
+        other.put("abc123", key(16, 1), 0, 16);
+        assertThrows(RekeyException.class, () -> other.put("abc123", key(16, 2), 0, 16));
+
+        assertThrows(RekeyException.class, () -> new KeySlabImpl(-1, SlabStorage.HEAP));
+        assertThrows(RekeyException.class, () -> new KeySlabImpl(KeySlabImpl.MAX_CAPACITY + 1, SlabStorage.HEAP));
+    }
+
+    private void assertPutAndCopy(KeySlab slab) throws Exception {
+        byte[] src = new byte[40];
+        System.arraycopy(key(16, 1), 0, src, 4, 16);
+
+        assertThat(slab.put("abc123", src, 4, 16), equalTo(0));
+        assertThat(slab.put("def456", key(32, 2), 0, 32), equalTo(1));
+
+        assertThat(slab.size(), equalTo(2));
+        assertThat(slab.capacity(), equalTo(3));
+        assertThat(slab.slotOf("def456"), equalTo(1));
+        assertThat(slab.slotOf("missing"), equalTo(-1));
+        assertThat(slab.getCollectionID(0), equalTo("abc123"));
+        assertThat(slab.getCollectionIDs(), equalTo(Arrays.asList("abc123", "def456")));
+
+        byte[] dest = new byte[KeySlab.SLOT_WIDTH + 1];
+        assertThat(slab.copyKey(0, dest, 1), equalTo(16));
+        assertThat(Arrays.copyOfRange(dest, 1, 17), equalTo(key(16, 1)));
+        assertThat(slab.copyKey(1, dest, 0), equalTo(32));
+        assertThat(Arrays.copyOf(dest, 32), equalTo(key(32, 2)));
+    }
+
+    private static byte[] key(int length, int seed) {
+        byte[] key = new byte[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = (byte) (seed * 31 + i);
+        }
+        return key;
+    }
+}
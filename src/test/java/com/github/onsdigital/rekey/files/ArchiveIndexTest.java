@@ -0,0 +1,66 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class ArchiveIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFind_shouldFindEveryEntry() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("keyring-backup" + ArchiveIndex.EXTENSION);
+        String digest = BackupManifest.digest(new byte[0]);
+
+        // Added out of order, the index is sorted when written.
+        ArchiveIndex index = new ArchiveIndex();
+        for (int i = 9999; i >= 0; i--) {
+            index.add("collection" + i, i * 100L, i % 512, digest);
+        }
+        index.write(file);
+
+        for (int i = 0; i < 10000; i++) {
+            ArchiveIndex.Entry entry = ArchiveIndex.find(file, "collection" + i);
+            assertThat(entry.getCollectionID(), equalTo("collection" + i));
+            assertThat(entry.getBlockOffset(), equalTo(i * 100L));
+            assertThat(entry.getEntryOffset(), equalTo(i % 512L));
+            assertThat(entry.getDigest(), equalTo(digest));
+        }
+
+        assertThat(ArchiveIndex.find(file, "a"), nullValue());
+        assertThat(ArchiveIndex.find(file, "collection10000"), nullValue());
+        assertThat(ArchiveIndex.find(file, "z"), nullValue());
+    }
+
+    @Test
+    public void testFind_emptyIndex_shouldReturnNull() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("keyring-backup" + ArchiveIndex.EXTENSION);
+        new ArchiveIndex().write(file);
+
+        assertThat(ArchiveIndex.find(file, "collection1"), nullValue());
+    }
+
+    @Test
+    public void testFind_invalid_shouldThrowEx() throws Exception {
+        Path file = folder.newFile("keyring-backup" + ArchiveIndex.EXTENSION).toPath();
+
+        Files.write(file, Arrays.asList("not an index"), StandardCharsets.UTF_8);
+        assertThrows(RekeyException.class, () -> ArchiveIndex.find(file, "collection1"));
+
+        Files.write(file, Arrays.asList(ArchiveIndex.HEADER, "collection1\tabc"), StandardCharsets.UTF_8);
+        assertThrows(RekeyException.class, () -> ArchiveIndex.find(file, "collection1"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class BackupManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead_shouldRoundTrip() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("keyring-backup-2" + BackupManifest.EXTENSION);
+        String digest = BackupManifest.digest("key".getBytes(StandardCharsets.UTF_8));
+
+        BackupManifest manifest = new BackupManifest("keyring-backup-1.manifest", digest);
+        manifest.put("collection1.txt", digest, "keyring-backup-1.tar.gz");
+        manifest.put("collection 2.txt", digest, "keyring-backup-2.tar.gz");
+        manifest.put("collection3.txt", digest, "keyring-backup-1.tar.gz");
+        manifest.putArchive("keyring-backup-1.tar.gz", digest);
+        manifest.putArchive("keyring-backup-2.tar.gz", digest);
+        manifest.write(file);
+
+        BackupManifest actual = BackupManifest.read(file);
+        assertThat(actual.getPrevious(), equalTo("keyring-backup-1.manifest"));
+        assertThat(actual.getPreviousDigest(), equalTo(digest));
+        assertThat(actual.getEntries().size(), equalTo(3));
+        assertThat(actual.get("collection 2.txt").getArchive(), equalTo("keyring-backup-2.tar.gz"));
+        assertThat(actual.get("collection3.txt").getArchive(), equalTo("keyring-backup-1.tar.gz"));
+        assertThat(actual.get("collection3.txt").getDigest(), equalTo(digest));
+        assertThat(actual.getArchiveDigest("keyring-backup-2.tar.gz"), equalTo(digest));
+    }
+
+    @Test
+    public void testWrite_noArchiveDigest_shouldThrowEx() {
+        BackupManifest manifest = new BackupManifest(null, null);
+        manifest.put("collection1.txt", BackupManifest.digest(new byte[0]), "keyring-backup-1.tar.gz");
+
+        assertThrows(RekeyException.class,
+                () -> manifest.write(folder.getRoot().toPath().resolve("keyring-backup-1" + BackupManifest.EXTENSION)));
+    }
+
+    @Test
+    public void testDigest_file_shouldMatchContent() throws Exception {
+        Path file = folder.newFile("keyring-backup.tar").toPath();
+        byte[] content = new byte[20000];
+        Arrays.fill(content, (byte) 7);
+        Files.write(file, content);
+
+        assertThat(BackupManifest.digest(file), equalTo(BackupManifest.digest(content)));
+    }
+
+    @Test
+    public void testRead_invalid_shouldThrowEx() throws Exception {
+        Path file = folder.newFile("keyring-backup" + BackupManifest.EXTENSION).toPath();
+
+        Files.write(file, Arrays.asList("not a manifest"), StandardCharsets.UTF_8);
+        assertThrows(RekeyException.class, () -> BackupManifest.read(file));
+
+        Files.write(file, Arrays.asList(BackupManifest.HEADER, "abc collection1.txt"), StandardCharsets.UTF_8);
+        assertThrows(RekeyException.class, () -> BackupManifest.read(file));
+    }
+
+    @Test
+    public void testDigest() {
+        // SHA-256 of the empty string.
+        assertThat(BackupManifest.digest(new byte[0]),
+                equalTo("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"));
+    }
+}
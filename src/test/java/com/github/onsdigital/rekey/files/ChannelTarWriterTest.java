@@ -0,0 +1,73 @@
+package com.github.onsdigital.rekey.files;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChannelTarWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() throws Exception {
+        folder.delete();
+    }
+
+    @Test
+    public void testAddFile_fileShrunk_shouldThrowEx() throws Exception {
+        Path src = folder.newFile("abc1234.txt").toPath();
+        Files.write(src, new byte[]{1, 2, 3});
+
+        // The attributes were read before the file was truncated.
+        BasicFileAttributes attrs = mock(BasicFileAttributes.class);
+        when(attrs.size()).thenReturn(10L);
+        when(attrs.lastModifiedTime()).thenReturn(FileTime.fromMillis(0));
+
+        try (ChannelTarWriter writer = new ChannelTarWriter(folder.getRoot().toPath().resolve("backup.tar"))) {
+            IOException ex = assertThrows(IOException.class, () -> writer.addFile(src, "abc1234.txt", attrs));
+
+            assertThat(ex.getMessage(), equalTo("file size changed while archiving: " + src));
+        }
+    }
+
+    @Test
+    public void testAddFile_longNonAsciiName_shouldWritePaxPath() throws Exception {
+        // 60 chars but 120 UTF-8 bytes, over the 100 byte header name limit.
+        String name = String.join("", Collections.nCopies(60, "\u00e9")) + ".txt";
+        Path src = folder.newFile("abc1234.txt").toPath();
+        Files.write(src, new byte[]{1, 2, 3});
+        BasicFileAttributes attrs = Files.readAttributes(src, BasicFileAttributes.class);
+
+        Path tar = folder.getRoot().toPath().resolve("backup.tar");
+        try (ChannelTarWriter writer = new ChannelTarWriter(tar)) {
+            writer.addFile(src, name, attrs);
+            writer.finish();
+        }
+
+        try (InputStream in = Files.newInputStream(tar);
+             TarArchiveInputStream tarIn = new TarArchiveInputStream(in, StandardCharsets.UTF_8.name())) {
+            TarArchiveEntry entry = tarIn.getNextEntry();
+            assertThat(entry.getName(), equalTo(name));
+            assertThat(entry.getSize(), equalTo(3L));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class DurableFileWriterImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+    private DurableFileWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = folder.newFolder("keyring").toPath();
+        this.writer = new DurableFileWriterImpl();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        writer.close();
+        folder.delete();
+    }
+
+    @Test
+    public void testWrite_notStarted_shouldWriteInPlace() throws Exception {
+        Path target = dir.resolve("a.txt");
+
+        writer.write(target, content("abc"));
+
+        assertThat(read(target), equalTo("abc"));
+        assertFalse(Files.exists(dir.resolve("a.txt.tmp")));
+    }
+
+    @Test
+    public void testWrite_started_shouldRenameIntoPlaceOnceBatchSynced() throws Exception {
+        writer.start(2, false);
+        Path a = dir.resolve("a.txt");
+        Path b = dir.resolve("b.txt");
+        Path c = dir.resolve("c.txt");
+        Files.write(a, "old".getBytes(StandardCharsets.UTF_8));
+
+        writer.write(a, content("new a"));
+        assertThat(read(a), equalTo("old"));
+        assertTrue(Files.exists(dir.resolve("a.txt.tmp")));
+
+        writer.write(b, content("new b"));
+        assertThat(read(a), equalTo("new a"));
+        assertThat(read(b), equalTo("new b"));
+
+        writer.write(c, content("new c"));
+        assertFalse(Files.exists(c));
+
+        writer.sync();
+        assertThat(read(c), equalTo("new c"));
+        assertFalse(Files.exists(dir.resolve("c.txt.tmp")));
+        assertTrue(writer.getSyncNanos() > 0);
+    }
+
+    @Test
+    public void testWrite_backgroundSync_shouldWriteAllFiles() throws Exception {
+        writer.start(3, true);
+
+        for (int i = 0; i < 20; i++) {
+            writer.write(dir.resolve(i + ".txt"), content("key " + i));
+        }
+        writer.sync();
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(read(dir.resolve(i + ".txt")), equalTo("key " + i));
+            assertFalse(Files.exists(dir.resolve(i + ".txt.tmp")));
+        }
+    }
+
+    @Test
+    public void testStart_invalidBatchSize_shouldThrowEx() {
+        RekeyException ex = assertThrows(RekeyException.class, () -> writer.start(0, false));
+
+        assertThat(ex.getMessage(), equalTo("sync batch size must be greater than 0 but was 0"));
+    }
+
+    @Test
+    public void testStart_alreadyStarted_shouldThrowEx() throws Exception {
+        writer.start(1, false);
+
+        RekeyException ex = assertThrows(RekeyException.class, () -> writer.start(1, false));
+
+        assertThat(ex.getMessage(), equalTo("durable file writer already started"));
+    }
+
+    private static ByteBuffer content(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path p) throws Exception {
+        return new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+    }
+}
@@ -1,8 +1,11 @@
 package com.github.onsdigital.rekey.files;
 
+import com.github.onsdigital.rekey.RekeyException;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -12,14 +15,26 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
@@ -70,6 +85,296 @@ public class FileArchiverImplTest {
         assertTrue(entries.contains(key2ExpectedEntry));
     }
 
+    @Test
+    public void testCreateArchive_tar() throws Exception {
+        Path output = keyringDir.resolve("keyring-backup.tar");
+
+        Path key1 = folder.newFile("keyring-backup/collection1.txt").toPath();
+        Files.write(key1, "key one".getBytes(StandardCharsets.UTF_8));
+
+        // Longer than the 100 byte ustar name limit.
+        String longName = StringUtils.repeat("a", 120) + ".txt";
+        Path key2 = folder.newFile("keyring-backup/" + longName).toPath();
+        Files.write(key2, "key two".getBytes(StandardCharsets.UTF_8));
+
+        archiver.createArchive(keyringBackupDir, output, (p) -> Files.isRegularFile(p), ArchiveFormat.TAR,
+                Deflater.DEFAULT_COMPRESSION);
+
+        Map<String, String> entries = new HashMap<>();
+        try (TarArchiveInputStream tIn = new TarArchiveInputStream(Files.newInputStream(output))) {
+            TarArchiveEntry entry;
+            while ((entry = tIn.getNextTarEntry()) != null) {
+                assertTrue(entry.isFile());
+                entries.put(entry.getName(), IOUtils.toString(tIn, StandardCharsets.UTF_8));
+            }
+        }
+
+        assertThat(entries.size(), equalTo(2));
+        assertThat(entries.get("keyring-backup/collection1.txt"), equalTo("key one"));
+        assertThat(entries.get("keyring-backup/" + longName), equalTo("key two"));
+    }
+
+    @Test
+    public void testCreateArchive_tar_shouldSkipNonRegularFiles() throws Exception {
+        Path output = keyringDir.resolve("keyring-backup.tar");
+
+        Path key1 = folder.newFile("keyring-backup/collection1.txt").toPath();
+        Files.write(key1, "key one".getBytes(StandardCharsets.UTF_8));
+
+        // Reading a named pipe would block forever.
+        Path pipe = keyringBackupDir.resolve("collection2.txt");
+        Process mkfifo = new ProcessBuilder("mkfifo", pipe.toString()).start();
+        assumeTrue(mkfifo.waitFor() == 0 && Files.exists(pipe));
+
+        archiver.createArchive(keyringBackupDir, output, (p) -> true, ArchiveFormat.TAR, Deflater.DEFAULT_COMPRESSION);
+
+        List<String> entries = new ArrayList<>();
+        try (TarArchiveInputStream tIn = new TarArchiveInputStream(Files.newInputStream(output))) {
+            TarArchiveEntry entry;
+            while ((entry = tIn.getNextEntry()) != null) {
+                entries.add(entry.getName());
+            }
+        }
+
+        assertThat(entries, equalTo(Collections.singletonList("keyring-backup/collection1.txt")));
+    }
+
+    @Test
+    public void testCreateArchive_zip() throws Exception {
+        Path output = keyringDir.resolve("keyring-backup.zip");
+
+        Path key1 = folder.newFile("keyring-backup/collection1.txt").toPath();
+        Files.write(key1, "key one".getBytes(StandardCharsets.UTF_8));
+        folder.newFile("keyring-backup/collection2.txt");
+
+        archiver.createArchive(keyringBackupDir, output, (p) -> Files.isRegularFile(p), ArchiveFormat.ZIP, 1);
+
+        try (ZipFile zip = new ZipFile(output.toFile())) {
+            assertThat(zip.size(), equalTo(2));
+
+            ZipEntry entry = zip.getEntry("keyring-backup/collection1.txt");
+            assertThat(IOUtils.toString(zip.getInputStream(entry), StandardCharsets.UTF_8), equalTo("key one"));
+        }
+    }
+
+    @Test
+    public void testCreateArchive_tarGzCompressionLevel() throws Exception {
+        Path output = keyringDir.resolve("keyring-backup.tar.gz");
+
+        folder.newFile("keyring-backup/collection1.txt");
+
+        archiver.createArchive(keyringBackupDir, output, (p) -> Files.isRegularFile(p), ArchiveFormat.TAR_GZ,
+                Deflater.BEST_SPEED);
+
+        assertThat(getTarEntries(output).size(), equalTo(1));
+    }
+
+    @Test
+    public void testCreateArchive_invalidCompressionLevel_shouldThrowEx() {
+        RekeyException ex = assertThrows(RekeyException.class, () -> archiver.createArchive(keyringBackupDir,
+                keyringDir.resolve("keyring-backup.tar.gz"), (p) -> true, ArchiveFormat.TAR_GZ, 10));
+
+        assertThat(ex.getMessage(), equalTo("invalid compression level: 10"));
+    }
+
+    @Test
+    public void testOpenArchive_tarGz() throws Exception {
+        Path output = keyringDir.resolve("keyring-backup.tar.gz");
+
+        try (ArchiveWriter writer = archiver.openArchive(output, ArchiveFormat.TAR_GZ, Deflater.BEST_SPEED)) {
+            writer.addEntry(keyringBackupDir.resolve("collection1.txt"), new byte[]{1, 2, 3});
+            writer.addEntry(keyringBackupDir.resolve("collection2.txt"), new byte[]{4, 5, 6});
+        }
+
+        List<String> entries = getTarEntries(output);
+        assertThat(entries.size(), equalTo(2));
+        assertTrue(entries.contains("keyring-backup/collection1.txt"));
+        assertTrue(entries.contains("keyring-backup/collection2.txt"));
+    }
+
+    @Test
+    public void testCreateIncrementalArchive_shouldOnlyArchiveChangedFiles() throws Exception {
+        Path key1 = folder.newFile("keyring-backup/collection1.txt").toPath();
+        Files.write(key1, "key one".getBytes(StandardCharsets.UTF_8));
+        Path key2 = folder.newFile("keyring-backup/collection2.txt").toPath();
+        Files.write(key2, "key two".getBytes(StandardCharsets.UTF_8));
+
+        Path first = keyringDir.resolve("keyring-backup-1.tar.gz");
+        BackupManifest full = archiver.createIncrementalArchive(keyringBackupDir, first, Files::isRegularFile,
+                ArchiveFormat.TAR_GZ, Deflater.BEST_SPEED, null);
+
+        assertThat(getTarEntries(first).size(), equalTo(2));
+        assertThat(full.getPrevious(), equalTo(null));
+
+        // Change one key and add another.
+        Files.write(key2, "key two changed".getBytes(StandardCharsets.UTF_8));
+        Path key3 = folder.newFile("keyring-backup/collection3.txt").toPath();
+        Files.write(key3, "key three".getBytes(StandardCharsets.UTF_8));
+
+        Path firstManifest = keyringDir.resolve("keyring-backup-1" + BackupManifest.EXTENSION);
+        Path second = keyringDir.resolve("keyring-backup-2.tar.gz");
+        archiver.createIncrementalArchive(keyringBackupDir, second, Files::isRegularFile, ArchiveFormat.TAR_GZ,
+                Deflater.BEST_SPEED, firstManifest);
+
+        List<String> entries = getTarEntries(second);
+        assertThat(entries.size(), equalTo(2));
+        assertTrue(entries.contains("keyring-backup-2/collection2.txt"));
+        assertTrue(entries.contains("keyring-backup-2/collection3.txt"));
+
+        Path secondManifest = keyringDir.resolve("keyring-backup-2" + BackupManifest.EXTENSION);
+        BackupManifest manifest = BackupManifest.read(secondManifest);
+        assertThat(manifest.getPrevious(), equalTo(firstManifest.getFileName().toString()));
+        assertThat(manifest.getPreviousDigest(), equalTo(BackupManifest.digest(firstManifest)));
+        assertThat(manifest.getEntries().size(), equalTo(3));
+        assertThat(manifest.get("collection1.txt").getArchive(), equalTo("keyring-backup-1.tar.gz"));
+        assertThat(manifest.get("collection2.txt").getArchive(), equalTo("keyring-backup-2.tar.gz"));
+        assertThat(manifest.get("collection2.txt").getDigest(), equalTo(BackupManifest.digest(key2)));
+        assertThat(manifest.get("collection3.txt").getArchive(), equalTo("keyring-backup-2.tar.gz"));
+        assertThat(manifest.getArchiveDigest("keyring-backup-1.tar.gz"), equalTo(BackupManifest.digest(first)));
+        assertThat(manifest.getArchiveDigest("keyring-backup-2.tar.gz"), equalTo(BackupManifest.digest(second)));
+    }
+
+    @Test
+    public void testCreateIncrementalArchive_previousArchiveChanged_shouldArchiveEveryFile() throws Exception {
+        folder.newFile("keyring-backup/collection1.txt");
+        folder.newFile("keyring-backup/collection2.txt");
+
+        Path first = keyringDir.resolve("keyring-backup-1.tar.gz");
+        archiver.createIncrementalArchive(keyringBackupDir, first, Files::isRegularFile, ArchiveFormat.TAR_GZ,
+                Deflater.DEFAULT_COMPRESSION, null);
+        // Replaced with an archive that no longer holds the keys.
+        Files.write(first, new byte[1024]);
+
+        Path second = keyringDir.resolve("keyring-backup-2.tar.gz");
+        BackupManifest manifest = archiver.createIncrementalArchive(keyringBackupDir, second, Files::isRegularFile,
+                ArchiveFormat.TAR_GZ, Deflater.DEFAULT_COMPRESSION,
+                keyringDir.resolve("keyring-backup-1" + BackupManifest.EXTENSION));
+
+        assertThat(getTarEntries(second).size(), equalTo(2));
+        assertThat(manifest.getPrevious(), equalTo(null));
+        assertThat(manifest.getArchives().size(), equalTo(1));
+    }
+
+    @Test
+    public void testCreateIncrementalArchive_chainedManifestChanged_shouldArchiveEveryFile() throws Exception {
+        folder.newFile("keyring-backup/collection1.txt");
+        Path key2 = folder.newFile("keyring-backup/collection2.txt").toPath();
+
+        Path first = keyringDir.resolve("keyring-backup-1.tar.gz");
+        archiver.createIncrementalArchive(keyringBackupDir, first, Files::isRegularFile, ArchiveFormat.TAR_GZ,
+                Deflater.DEFAULT_COMPRESSION, null);
+        Files.write(key2, "key two changed".getBytes(StandardCharsets.UTF_8));
+        Path second = keyringDir.resolve("keyring-backup-2.tar.gz");
+        Path firstManifest = keyringDir.resolve("keyring-backup-1" + BackupManifest.EXTENSION);
+        archiver.createIncrementalArchive(keyringBackupDir, second, Files::isRegularFile, ArchiveFormat.TAR_GZ,
+                Deflater.DEFAULT_COMPRESSION, firstManifest);
+
+        // The first manifest no longer matches the digest the second manifest recorded for it.
+        Files.write(firstManifest, Arrays.asList(BackupManifest.HEADER), StandardCharsets.UTF_8);
+
+        Path third = keyringDir.resolve("keyring-backup-3.tar.gz");
+        BackupManifest manifest = archiver.createIncrementalArchive(keyringBackupDir, third, Files::isRegularFile,
+                ArchiveFormat.TAR_GZ, Deflater.DEFAULT_COMPRESSION,
+                keyringDir.resolve("keyring-backup-2" + BackupManifest.EXTENSION));
+
+        assertThat(getTarEntries(third).size(), equalTo(2));
+        assertThat(manifest.getPrevious(), equalTo(null));
+    }
+
+    @Test
+    public void testCreateIncrementalArchive_previousArchiveMissing_shouldArchiveEveryFile() throws Exception {
+        folder.newFile("keyring-backup/collection1.txt");
+        folder.newFile("keyring-backup/collection2.txt");
+
+        Path first = keyringDir.resolve("keyring-backup-1.zip");
+        archiver.createIncrementalArchive(keyringBackupDir, first, Files::isRegularFile, ArchiveFormat.ZIP,
+                Deflater.DEFAULT_COMPRESSION, null);
+        Files.delete(first);
+
+        Path second = keyringDir.resolve("keyring-backup-2.tar.gz");
+        BackupManifest manifest = archiver.createIncrementalArchive(keyringBackupDir, second, Files::isRegularFile,
+                ArchiveFormat.TAR_GZ, Deflater.DEFAULT_COMPRESSION,
+                keyringDir.resolve("keyring-backup-1" + BackupManifest.EXTENSION));
+
+        assertThat(getTarEntries(second).size(), equalTo(2));
+        assertThat(manifest.getPrevious(), equalTo(null));
+        assertThat(manifest.getArchives().size(), equalTo(1));
+    }
+
+    @Test
+    public void testCreateIndexedArchive_tarGz_shouldRestoreSingleKeys() throws Exception {
+        // Enough key files to fill several compressed blocks, with entries spanning the block boundaries.
+        Map<String, byte[]> keys = writeKeyFiles(2000, 700);
+        Path output = keyringDir.resolve("keyring-backup.tar.gz");
+
+        archiver.createIndexedArchive(keyringBackupDir, output, Files::isRegularFile, ArchiveFormat.TAR_GZ,
+                Deflater.BEST_SPEED);
+
+        // Still a standard tar.gz.
+        assertThat(getTarEntries(output).size(), equalTo(2000));
+        assertTrue(Files.exists(keyringDir.resolve("keyring-backup" + ArchiveIndex.EXTENSION)));
+
+        assertRestored(output, keys, Arrays.asList("collection1999", "collection0", "collection1234",
+                "collection187"));
+    }
+
+    @Test
+    public void testCreateIndexedArchive_tar_shouldRestoreSingleKeys() throws Exception {
+        Map<String, byte[]> keys = writeKeyFiles(300, 100);
+        Path output = keyringDir.resolve("keyring-backup.tar");
+
+        archiver.createIndexedArchive(keyringBackupDir, output, Files::isRegularFile, ArchiveFormat.TAR,
+                Deflater.DEFAULT_COMPRESSION);
+
+        assertRestored(output, keys, Arrays.asList("collection42", "collection299"));
+    }
+
+    @Test
+    public void testRestoreKeys_invalid_shouldThrowEx() throws Exception {
+        writeKeyFiles(10, 10);
+        Path output = keyringDir.resolve("keyring-backup.tar.gz");
+        Path restoreDir = folder.getRoot().toPath().resolve("restored");
+
+        assertThrows(RekeyException.class, () -> archiver.createIndexedArchive(keyringBackupDir,
+                keyringDir.resolve("keyring-backup.zip"), Files::isRegularFile, ArchiveFormat.ZIP, 1));
+
+        archiver.createArchive(keyringBackupDir, output, Files::isRegularFile, ArchiveFormat.TAR_GZ, 1);
+        RekeyException ex = assertThrows(RekeyException.class, () -> archiver.restoreKeys(output,
+                Collections.singletonList("collection1"), restoreDir));
+        assertTrue(ex.getMessage().startsWith("backup index required but does not exist"));
+
+        archiver.createIndexedArchive(keyringBackupDir, output, Files::isRegularFile, ArchiveFormat.TAR_GZ, 1);
+        ex = assertThrows(RekeyException.class, () -> archiver.restoreKeys(output,
+                Collections.singletonList("collection10"), restoreDir));
+        assertThat(ex.getMessage(), equalTo("collection key not found in backup index: collection10"));
+    }
+
+    private Map<String, byte[]> writeKeyFiles(int count, int size) throws Exception {
+        Random random = new Random(count);
+        Map<String, byte[]> keys = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            Files.write(keyringBackupDir.resolve("collection" + i + ".txt"), content);
+            keys.put("collection" + i, content);
+        }
+        return keys;
+    }
+
+    private void assertRestored(Path archive, Map<String, byte[]> keys, List<String> collectionIDs)
+            throws Exception {
+        Path restoreDir = folder.getRoot().toPath().resolve("restored");
+
+        List<Path> restored = archiver.restoreKeys(archive, collectionIDs, restoreDir);
+
+        assertThat(restored.size(), equalTo(collectionIDs.size()));
+        for (String collectionID : collectionIDs) {
+            Path keyFile = restoreDir.resolve(collectionID + ".txt");
+            assertTrue(restored.contains(keyFile));
+            assertArrayEquals(keys.get(collectionID), Files.readAllBytes(keyFile));
+        }
+    }
+
     private List<String> getTarEntries(Path tarFile) throws Exception {
         List<String> entries = new ArrayList<>();
         try (
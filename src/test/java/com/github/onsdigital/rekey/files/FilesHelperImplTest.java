@@ -7,8 +7,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import static junit.framework.TestCase.assertFalse;
@@ -65,6 +68,54 @@ public class FilesHelperImplTest {
         assertTrue(Files.notExists(target));
     }
 
+    @Test
+    public void testCopyDir() throws Exception {
+        Path src = folder.newFolder("src").toPath();
+        Files.write(src.resolve("a.txt"), new byte[]{1, 2, 3});
+        Files.write(src.resolve("b.txt"), new byte[]{4, 5});
+        Path dest = folder.getRoot().toPath().resolve("dest");
+
+        helper.copyDir(src, dest, true);
+
+        assertThat(Files.readAllBytes(dest.resolve("a.txt")), equalTo(new byte[]{1, 2, 3}));
+        assertThat(Files.readAllBytes(dest.resolve("b.txt")), equalTo(new byte[]{4, 5}));
+    }
+
+    @Test
+    public void testLinkDir() throws Exception {
+        Path src = folder.newFolder("keyring").toPath();
+        Path key = Files.write(src.resolve("abc123.txt"), "abc123".getBytes(StandardCharsets.UTF_8));
+        Path dest = folder.getRoot().toPath().resolve("workspace");
+
+        assertTrue(helper.linkDir(src, dest));
+
+        Path linked = dest.resolve("abc123.txt");
+        assertTrue(Files.isSameFile(key, linked));
+
+        helper.deleteDir(dest);
+        assertTrue(Files.exists(key));
+    }
+
+    @Test
+    public void testCreateTempDir() throws Exception {
+        Path dir = helper.createTempDir(folder.getRoot().toPath(), "rekey-dry-run-");
+
+        assertTrue(Files.isDirectory(dir));
+        assertTrue(dir.getFileName().toString().startsWith("rekey-dry-run-"));
+    }
+
+    @Test
+    public void testDeleteFile() throws Exception {
+        Path target = folder.newFile("aaa.journal").toPath();
+        assertTrue(Files.exists(target));
+
+        helper.deleteFile(target);
+        assertTrue(Files.notExists(target));
+
+        // Deleting a file that does not exist is not an error.
+        helper.deleteFile(target);
+    }
+
     @Test
     public void testListFiles_filterNull_shouldThrowEx() throws Exception {
         RekeyException ex = assertThrows(RekeyException.class,
@@ -87,4 +138,40 @@ public class FilesHelperImplTest {
         assertThat(results.get(0), equalTo(file));
     }
 
+    @Test
+    public void testStreamFiles_filterNull_shouldThrowEx() {
+        assertThrows(RekeyException.class, () -> helper.streamFiles(folder.getRoot().toPath(), "*.txt", null));
+    }
+
+    @Test
+    public void testStreamFilesSuccess() throws Exception {
+        Path keyringDir = folder.newFolder("keyring").toPath();
+        Path key1 = folder.newFile("keyring/abc123.txt").toPath();
+        Path key2 = folder.newFile("keyring/def456.txt").toPath();
+        folder.newFile("keyring/test123.json");
+        folder.newFile("keyring/excluded.txt");
+
+        List<Path> results = new ArrayList<>();
+        try (DirectoryStream<Path> files = helper.streamFiles(keyringDir, "*.txt",
+                (p) -> !p.getFileName().toString().startsWith("excluded"))) {
+            files.forEach(results::add);
+        }
+
+        assertThat(results.size(), equalTo(2));
+        assertTrue(results.contains(key1));
+        assertTrue(results.contains(key2));
+    }
+
+    @Test
+    public void testCountFiles() throws Exception {
+        Path keyringDir = folder.newFolder("keyring").toPath();
+        folder.newFile("keyring/abc123.txt");
+        folder.newFile("keyring/def456.txt");
+        folder.newFile("keyring/test123.json");
+        folder.newFile("keyring/excluded.txt");
+
+        long count = helper.countFiles(keyringDir, "*.txt", (p) -> !p.getFileName().toString().startsWith("excluded"));
+
+        assertThat(count, equalTo(2L));
+    }
 }
@@ -0,0 +1,121 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class KeyFileIOImplTest {
+
+    private WorkerPool workerPool;
+    private KeyFileIO io;
+    private List<Integer> items;
+
+    @Before
+    public void setUp() throws Exception {
+        this.workerPool = new WorkerPoolImpl();
+        workerPool.start(2);
+        this.io = new KeyFileIOImpl(workerPool);
+        this.items = IntStream.range(0, 500).boxed().collect(Collectors.toList());
+    }
+
+    @After
+    public void tearDown() {
+        io.close();
+        workerPool.close();
+    }
+
+    @Test
+    public void testStart_invalid_shouldThrowEx() throws Exception {
+        assertThrows(RekeyException.class, () -> io.start(0, 1));
+        assertThrows(RekeyException.class, () -> io.start(1, 0));
+
+        io.start(1, 1);
+        assertThrows(RekeyException.class, () -> io.start(1, 1));
+    }
+
+    @Test
+    public void testIOThenCompute_notStarted_shouldRunOnWorkerPool() throws Exception {
+        assertFalse(io.isStarted());
+        assertThat(io.getIOThreads(), equalTo(0));
+
+        List<String> results = io.ioThenCompute(items, (i) -> i * 2, (i) -> Thread.currentThread().getName());
+
+        assertThat(results.size(), equalTo(items.size()));
+        assertTrue(results.stream().allMatch((name) -> name.startsWith("rekey-worker-")));
+    }
+
+    @Test
+    public void testIOThenCompute_shouldRunEachHalfOnItsThreads() throws Exception {
+        io.start(4, 8);
+        assertThat(io.getIOThreads(), equalTo(4));
+
+        List<String> results = io.ioThenCompute(items,
+                (i) -> i + ":" + Thread.currentThread().getName(),
+                (s) -> s + ":" + Thread.currentThread().getName());
+
+        assertThat(results.size(), equalTo(items.size()));
+        for (int i = 0; i < results.size(); i++) {
+            String[] parts = results.get(i).split(":");
+            assertThat(parts[0], equalTo(String.valueOf(i)));
+            assertThat(parts[1], startsWith("rekey-io-"));
+            assertThat(parts[2], startsWith("rekey-worker-"));
+        }
+    }
+
+    @Test
+    public void testComputeThenIO_shouldNotExceedMaxInFlight() throws Exception {
+        io.start(4, 3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+
+        List<Integer> results = io.computeThenIO(items, (i) -> {
+            maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return i;
+        }, (i) -> {
+            inFlight.decrementAndGet();
+            return i * 2;
+        });
+
+        assertTrue(maxSeen.get() <= 3);
+        List<Integer> expected = new ArrayList<>();
+        items.forEach((i) -> expected.add(i * 2));
+        assertThat(results, equalTo(expected));
+    }
+
+    @Test
+    public void testIOThenCompute_taskFails_shouldRethrowFailure() throws Exception {
+        io.start(4, 8);
+        RekeyException expected = new RekeyException("read failed");
+        AtomicInteger started = new AtomicInteger();
+
+        RekeyException actual = assertThrows(RekeyException.class, () -> io.ioThenCompute(items, (i) -> {
+            started.incrementAndGet();
+            if (i == 10) {
+                throw expected;
+            }
+            return i;
+        }, (i) -> i));
+
+        assertThat(actual, equalTo(expected));
+        assertTrue(started.get() < items.size());
+
+        // The engine is still usable after a failure.
+        assertThat(io.ioThenCompute(items, (i) -> i, (i) -> i), equalTo(items));
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.onsdigital.rekey.files;
+
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ParallelGzipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    private WorkerPool pool;
+    private byte[] input;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pool = new WorkerPoolImpl();
+
+        // Mix of random and repeated content spanning many blocks so the dictionary priming is exercised.
+        Random random = new Random(42);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (int i = 0; i < 200; i++) {
+            byte[] noise = new byte[random.nextInt(200)];
+            random.nextBytes(noise);
+            content.write(noise);
+            content.write(("collection-key-" + (i % 7) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        this.input = content.toByteArray();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void testSequential_shouldProduceValidGzip() throws Exception {
+        assertThat(gunzip(gzip(input)), equalTo(input));
+    }
+
+    @Test
+    public void testParallel_shouldProduceValidGzip() throws Exception {
+        pool.start(4);
+
+        assertThat(gunzip(gzip(input)), equalTo(input));
+    }
+
+    @Test
+    public void testEmptyInput_shouldProduceValidGzip() throws Exception {
+        pool.start(4);
+
+        assertThat(gunzip(gzip(new byte[0])), equalTo(new byte[0]));
+    }
+
+    private byte[] gzip(byte[] data) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gzOut = new ParallelGzipOutputStream(compressed, pool,
+                Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE)) {
+            // Write in uneven chunks so writes straddle block boundaries.
+            int off = 0;
+            while (off < data.length) {
+                int n = Math.min(333, data.length - off);
+                gzOut.write(data, off, n);
+                off += n;
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] data) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.onsdigital.rekey.journal;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.files.DurableFileWriter;
+import com.github.onsdigital.rekey.files.DurableFileWriterImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class RekeyJournalImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.journalFile = folder.getRoot().toPath().resolve("keyring-backup.journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        folder.delete();
+    }
+
+    @Test
+    public void testRecord_shouldWriteInBatches() throws Exception {
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 3)) {
+            journal.record("a");
+            journal.record("b");
+            assertThat(Files.size(journalFile), equalTo(0L));
+            assertTrue(journal.isComplete("a"));
+
+            journal.record("c");
+            assertThat(readJournal(), equalTo("K a\nK b\nK c\n"));
+
+            journal.record("d");
+        }
+
+        assertThat(readJournal(), equalTo("K a\nK b\nK c\nK d\n"));
+    }
+
+    @Test
+    public void testCommit_durableWriter_shouldSyncKeyFilesFirst() throws Exception {
+        Path keyFile = folder.getRoot().toPath().resolve("a.txt");
+
+        try (DurableFileWriter fileWriter = new DurableFileWriterImpl();
+             RekeyJournal journal = new RekeyJournalImpl(journalFile, 1, fileWriter)) {
+            fileWriter.start(10, false);
+            fileWriter.write(keyFile, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            assertFalse(Files.exists(keyFile));
+
+            journal.record("a");
+
+            assertThat(readJournal(), equalTo("K a\n"));
+            assertThat(Files.readAllBytes(keyFile), equalTo(new byte[]{1, 2, 3}));
+        }
+    }
+
+    @Test
+    public void testRecord_whileSyncing_shouldNotBlock() throws Exception {
+        CountDownLatch syncing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        DurableFileWriter fileWriter = mock(DurableFileWriter.class);
+        doAnswer((invocation) -> {
+            syncing.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(fileWriter).sync();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 2, fileWriter)) {
+            journal.record("a");
+            Future<?> commit = executor.submit(() -> {
+                journal.record("b");
+                return null;
+            });
+            assertTrue(syncing.await(10, TimeUnit.SECONDS));
+
+            // Recorded (and past the batch size) while the first batch is still being synced.
+            journal.record("c");
+            journal.record("d");
+            assertTrue(journal.isComplete("d"));
+            assertThat(Files.size(journalFile), equalTo(0L));
+
+            release.countDown();
+            commit.get(10, TimeUnit.SECONDS);
+            assertThat(readJournal(), equalTo("K a\nK b\n"));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(readJournal(), equalTo("K a\nK b\nK c\nK d\n"));
+    }
+
+    @Test
+    public void testReopen_shouldLoadCompletedKeys() throws Exception {
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 10)) {
+            journal.recordBackupComplete();
+            journal.record("a");
+            journal.record("b");
+        }
+
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 10)) {
+            assertTrue(journal.isBackupComplete());
+            assertThat(journal.getCompletedCount(), equalTo(2));
+            assertTrue(journal.isComplete("a"));
+            assertTrue(journal.isComplete("b"));
+            assertFalse(journal.isComplete("c"));
+        }
+    }
+
+    @Test
+    public void testReopen_tornRecord_shouldBeIgnored() throws Exception {
+        Files.write(journalFile, "K a\nK b".getBytes(StandardCharsets.UTF_8));
+
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 10)) {
+            assertThat(journal.getCompletedCount(), equalTo(1));
+            assertFalse(journal.isComplete("b"));
+            assertFalse(journal.isBackupComplete());
+
+            journal.record("c");
+        }
+
+        assertThat(readJournal(), equalTo("K a\nK c\n"));
+    }
+
+    @Test
+    public void testOpen_noJournal_shouldBeEmpty() throws Exception {
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 10)) {
+            assertThat(journal.getCompletedCount(), equalTo(0));
+            assertFalse(journal.isBackupComplete());
+        }
+
+        assertTrue(Files.exists(journalFile));
+    }
+
+    @Test
+    public void testOpen_invalidBatchSize_shouldThrowEx() {
+        RekeyException ex = assertThrows(RekeyException.class, () -> new RekeyJournalImpl(journalFile, 0));
+
+        assertThat(ex.getMessage(), equalTo("journal batch size must be greater than 0 but was 0"));
+    }
+
+    private String readJournal() throws Exception {
+        return new String(Files.readAllBytes(journalFile), StandardCharsets.UTF_8);
+    }
+}
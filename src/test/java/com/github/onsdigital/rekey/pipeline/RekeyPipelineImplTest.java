@@ -0,0 +1,248 @@
+package com.github.onsdigital.rekey.pipeline;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.concurrent.WorkerPool;
+import com.github.onsdigital.rekey.concurrent.WorkerPoolImpl;
+import com.github.onsdigital.rekey.config.Config;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.EncryptedKey;
+import com.github.onsdigital.rekey.encryption.KeyDecryptor;
+import com.github.onsdigital.rekey.encryption.KeyDecryptorImpl;
+import com.github.onsdigital.rekey.encryption.KeyEncryptor;
+import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import com.github.onsdigital.rekey.files.FilesHelper;
+import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import com.github.onsdigital.rekey.journal.RekeyJournal;
+import com.github.onsdigital.rekey.journal.RekeyJournalImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RekeyPipelineImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FilesHelper filesHelper;
+    private WorkerPool workerPool;
+    private KeyDecryptor decryptor;
+    private KeyEncryptor encryptor;
+    private Path zebedeeDir, keyringDir, keyringBackupDir;
+    private SecretKey key, newKey;
+    private IvParameterSpec iv, newIv;
+    private Config cfg;
+    private List<CollectionKey> collectionKeys;
+
+    @Before
+    public void setUp() throws Exception {
+        this.filesHelper = new FilesHelperImpl();
+        this.workerPool = new WorkerPoolImpl();
+        workerPool.start(3);
+        this.decryptor = new KeyDecryptorImpl(filesHelper, (p) -> true);
+        this.encryptor = new KeyEncryptorImpl();
+
+        this.zebedeeDir = folder.newFolder("zebedee").toPath();
+        this.keyringDir = folder.newFolder("zebedee", "keyring").toPath();
+        this.keyringBackupDir = folder.newFolder("zebedee", "keyring-backup").toPath();
+
+        this.key = newSecretKey();
+        this.newKey = newSecretKey();
+        this.iv = newIV();
+        this.newIv = newIV();
+        this.cfg = new Config(key, iv, newKey, newIv, zebedeeDir, keyringDir, keyringBackupDir);
+
+        this.collectionKeys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            collectionKeys.add(new CollectionKey(newSecretKey(), "collection" + i));
+        }
+        encryptor.encryptToFile(collectionKeys, keyringBackupDir, key, iv);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        workerPool.close();
+        folder.delete();
+    }
+
+    @Test
+    public void testRekey() throws Exception {
+        RekeyPipeline pipeline = new RekeyPipelineImpl(decryptor, encryptor, workerPool, 2);
+
+        Collection<String> ids = pipeline.rekey(filesHelper.listFiles(keyringBackupDir, (p) -> true), cfg);
+
+        assertThat(ids.size(), equalTo(collectionKeys.size()));
+        for (CollectionKey expected : collectionKeys) {
+            assertTrue(ids.contains(expected.getCollectionID()));
+
+            CollectionKey actual = decryptor.decryptKey(expected.getKeyPath(keyringDir), newKey, newIv);
+            assertThat(actual.getKey(), equalTo(expected.getKey()));
+        }
+    }
+
+    @Test
+    public void testRekey_decryptError_shouldThrowEx() throws Exception {
+        Path badFile = keyringBackupDir.resolve("corrupt.txt");
+        Files.write(badFile, new byte[]{1, 2, 3});
+
+        RekeyPipeline pipeline = new RekeyPipelineImpl(decryptor, encryptor, workerPool, 2);
+
+        RekeyException ex = assertThrows(RekeyException.class,
+                () -> pipeline.rekey(filesHelper.listFiles(keyringBackupDir, (p) -> true), cfg));
+
+        assertThat(ex.getMessage(), equalTo("error decrypting secret key: " + badFile));
+    }
+
+    @Test
+    public void testRekey_encryptError_shouldWipeDecryptedKeys() throws Exception {
+        List<SecretKey> decrypted = Collections.synchronizedList(new ArrayList<>());
+        List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+
+        KeyDecryptor mockDecryptor = mock(KeyDecryptor.class);
+        when(mockDecryptor.decryptKey(any(Path.class), any(SecretKey.class), any(IvParameterSpec.class)))
+                .thenAnswer((invocation) -> {
+                    threadNames.add(Thread.currentThread().getName());
+                    SecretKey k = mock(SecretKey.class);
+                    decrypted.add(k);
+                    return new CollectionKey(k, "collection" + decrypted.size());
+                });
+
+        KeyEncryptor mockEncryptor = mock(KeyEncryptor.class);
+        when(mockEncryptor.encryptKey(any(CollectionKey.class), any(SecretKey.class), any(IvParameterSpec.class)))
+                .thenThrow(new RekeyException("encrypt failed"));
+
+        RekeyPipeline pipeline = new RekeyPipelineImpl(mockDecryptor, mockEncryptor, workerPool, 4);
+
+        assertThrows(RekeyException.class,
+                () -> pipeline.rekey(filesHelper.listFiles(keyringBackupDir, (p) -> true), cfg));
+
+        assertTrue(decrypted.size() > 0);
+        for (SecretKey k : decrypted) {
+            verify(k, times(1)).destroy();
+        }
+        assertTrue(threadNames.stream().allMatch(name -> name.startsWith("rekey-worker-")));
+    }
+
+    @Test
+    public void testRekey_shouldBoundDecryptedKeysByQueueCapacity() throws Exception {
+        AtomicInteger live = new AtomicInteger();
+        AtomicInteger maxLive = new AtomicInteger();
+
+        KeyDecryptor mockDecryptor = mock(KeyDecryptor.class);
+        when(mockDecryptor.decryptKey(any(Path.class), any(SecretKey.class), any(IvParameterSpec.class)))
+                .thenAnswer((invocation) -> {
+                    maxLive.accumulateAndGet(live.incrementAndGet(), Math::max);
+                    SecretKey k = mock(SecretKey.class);
+                    doAnswer((i) -> live.decrementAndGet()).when(k).destroy();
+                    return new CollectionKey(k, "collection" + live.get());
+                });
+
+        KeyEncryptor mockEncryptor = mock(KeyEncryptor.class);
+        when(mockEncryptor.encryptKey(any(CollectionKey.class), any(SecretKey.class), any(IvParameterSpec.class)))
+                .thenAnswer((invocation) -> {
+                    Thread.sleep(5);
+                    CollectionKey k = (CollectionKey) invocation.getArguments()[0];
+                    return new EncryptedKey(k.getCollectionID(), new byte[0]);
+                });
+
+        RekeyPipeline pipeline = new RekeyPipelineImpl(mockDecryptor, mockEncryptor, workerPool, 2);
+        pipeline.rekey(filesHelper.listFiles(keyringBackupDir, (p) -> true), cfg);
+
+        assertThat(live.get(), equalTo(0));
+        assertTrue(maxLive.get() <= 2);
+        verify(mockEncryptor, times(collectionKeys.size())).writeKey(any(EncryptedKey.class), any(Path.class));
+    }
+
+    @Test
+    public void testRekey_journal_shouldSkipCompletedKeys() throws Exception {
+        Path journalFile = zebedeeDir.resolve("keyring-backup.journal");
+        CollectionKey completed = collectionKeys.get(0);
+        CollectionKey torn = collectionKeys.get(2);
+        String missingID = collectionKeys.get(1).getCollectionID();
+
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 10)) {
+            journal.record(completed.getCollectionID());
+            journal.record(missingID);
+            journal.record(torn.getCollectionID());
+        }
+
+        List<CollectionKey> written = new ArrayList<>();
+        written.add(completed);
+        written.add(torn);
+        encryptor.encryptToFile(written, keyringDir, newKey, newIv);
+
+        Path completedFile = completed.getKeyPath(keyringDir);
+        FileTime marker = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(completedFile, marker);
+
+        // Simulate a key file lost in a crash after it was journaled (written without --durable).
+        Path tornFile = torn.getKeyPath(keyringDir);
+        Files.write(tornFile, Arrays.copyOf(Files.readAllBytes(tornFile), 3));
+
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 10)) {
+            RekeyPipeline pipeline = new RekeyPipelineImpl(decryptor, encryptor, workerPool, 2, journal);
+
+            Collection<String> ids = pipeline.rekey(filesHelper.listFiles(keyringBackupDir, (p) -> true), cfg);
+
+            assertThat(ids.size(), equalTo(collectionKeys.size()));
+            assertThat(journal.getCompletedCount(), equalTo(collectionKeys.size()));
+        }
+
+        // The completed key was skipped so was not written again, the journaled keys missing or torn in the new
+        // keyring were rekeyed.
+        assertThat(Files.getLastModifiedTime(completedFile), equalTo(marker));
+        for (CollectionKey k : Arrays.asList(collectionKeys.get(1), torn)) {
+            CollectionKey rekeyed = decryptor.decryptKey(k.getKeyPath(keyringDir), newKey, newIv);
+            assertThat(rekeyed.getKey(), equalTo(k.getKey()));
+        }
+
+        try (RekeyJournal journal = new RekeyJournalImpl(journalFile, 10)) {
+            for (CollectionKey k : collectionKeys) {
+                assertTrue(journal.isComplete(k.getCollectionID()));
+            }
+        }
+    }
+
+    @Test
+    public void testRekey_invalidQueueCapacity_shouldThrowEx() {
+        RekeyPipeline pipeline = new RekeyPipelineImpl(decryptor, encryptor, workerPool, 0);
+
+        assertThrows(RekeyException.class, () -> pipeline.rekey(new ArrayList<>(), cfg));
+    }
+
+    private IvParameterSpec newIV() {
+        byte[] iv = new byte[16];
+        new SecureRandom().nextBytes(iv);
+        return new IvParameterSpec(iv);
+    }
+
+    private SecretKey newSecretKey() throws Exception {
+        return KeyGenerator.getInstance("AES").generateKey();
+    }
+}
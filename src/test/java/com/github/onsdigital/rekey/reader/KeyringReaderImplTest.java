@@ -0,0 +1,154 @@
+package com.github.onsdigital.rekey.reader;
+
+import com.github.onsdigital.rekey.RekeyException;
+import com.github.onsdigital.rekey.encryption.CollectionKey;
+import com.github.onsdigital.rekey.encryption.KeyDecryptorImpl;
+import com.github.onsdigital.rekey.encryption.KeyEncryptor;
+import com.github.onsdigital.rekey.encryption.KeyEncryptorImpl;
+import com.github.onsdigital.rekey.files.FilesHelperImpl;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class KeyringReaderImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path keyringDir;
+    private KeyEncryptor encryptor;
+    private KeyringReader reader;
+    private SecretKey newKey, oldKey;
+    private IvParameterSpec newIv, oldIv;
+
+    @Before
+    public void setUp() throws Exception {
+        this.keyringDir = folder.newFolder("keyring").toPath();
+        this.encryptor = new KeyEncryptorImpl();
+
+        this.newKey = newSecretKey();
+        this.oldKey = newSecretKey();
+        this.newIv = newIV();
+        this.oldIv = newIV();
+
+        this.reader = new KeyringReaderImpl(keyringDir, new KeyDecryptorImpl(new FilesHelperImpl(), (p) -> true),
+                newKey, newIv, oldKey, oldIv);
+    }
+
+    @Test
+    public void testReadKey_newKey() throws Exception {
+        SecretKey collectionKey = writeKey("abc123", newKey, newIv);
+
+        CollectionKey result = reader.readKey("abc123");
+
+        assertThat(result.getKey().getEncoded(), equalTo(collectionKey.getEncoded()));
+        assertThat(reader.getKeyVersion("abc123"), equalTo(KeyVersion.NEW));
+    }
+
+    @Test
+    public void testReadKey_oldKey_shouldFallBack() throws Exception {
+        SecretKey collectionKey = writeKey("abc123", oldKey, oldIv);
+        assertThat(reader.getKeyVersion("abc123"), nullValue());
+
+        CollectionKey result = reader.readKey("abc123");
+
+        assertThat(result.getKey().getEncoded(), equalTo(collectionKey.getEncoded()));
+        assertThat(reader.getKeyVersion("abc123"), equalTo(KeyVersion.OLD));
+    }
+
+    @Test
+    public void testReadKey_rekeyedAfterRead_shouldSwitchKeyVersion() throws Exception {
+        SecretKey collectionKey = writeKey("abc123", oldKey, oldIv);
+        reader.readKey("abc123");
+
+        encryptor.encryptToFile(Collections.singletonList(new CollectionKey(collectionKey, "abc123")), keyringDir,
+                newKey, newIv);
+        CollectionKey result = reader.readKey("abc123");
+
+        assertThat(result.getKey().getEncoded(), equalTo(collectionKey.getEncoded()));
+        assertThat(reader.getKeyVersion("abc123"), equalTo(KeyVersion.NEW));
+
+        reader.evict("abc123");
+        assertThat(reader.getKeyVersion("abc123"), nullValue());
+    }
+
+    @Test
+    public void testReadKey_unknownKey_shouldThrowEx() throws Exception {
+        writeKey("abc123", newSecretKey(), newIV());
+
+        assertThrows(RekeyException.class, () -> reader.readKey("abc123"));
+        assertThrows(RekeyException.class, () -> reader.readKey("missing"));
+        assertThat(reader.getKeyVersion("abc123"), nullValue());
+    }
+
+    @Test
+    public void testReadKey_movedToBackupDir_shouldReadBackupDir() throws Exception {
+        SecretKey collectionKey = writeKey("abc123", oldKey, oldIv);
+        Files.createDirectory(folder.getRoot().toPath().resolve("keyring-backup-20-01-01-000000000"));
+        Files.move(keyringDir, folder.getRoot().toPath().resolve("keyring-backup-21-01-01-000000000"));
+
+        // Between the keyring being moved and the new keyring dir being created.
+        CollectionKey result = reader.readKey("abc123");
+        assertThat(result.getKey().getEncoded(), equalTo(collectionKey.getEncoded()));
+
+        Files.createDirectory(keyringDir);
+        result = reader.readKey("abc123");
+
+        assertThat(result.getKey().getEncoded(), equalTo(collectionKey.getEncoded()));
+        assertThat(reader.getKeyVersion("abc123"), equalTo(KeyVersion.OLD));
+    }
+
+    @Test
+    public void testReadKey_backupDir_shouldReadBackupDir() throws Exception {
+        Path backupDir = folder.newFolder("backup").toPath();
+        SecretKey collectionKey = writeKey("abc123", oldKey, oldIv);
+        Files.move(keyringDir.resolve("abc123.txt"), backupDir.resolve("abc123.txt"));
+
+        KeyringReader backupReader = new KeyringReaderImpl(keyringDir, backupDir,
+                new KeyDecryptorImpl(new FilesHelperImpl(), (p) -> true), newKey, newIv, oldKey, oldIv);
+        CollectionKey result = backupReader.readKey("abc123");
+
+        assertThat(result.getKey().getEncoded(), equalTo(collectionKey.getEncoded()));
+        assertThat(backupReader.getKeyVersion("abc123"), equalTo(KeyVersion.OLD));
+    }
+
+    @Test
+    public void testIsValidKeyLength() {
+        assertTrue(KeyringReaderImpl.isValidKeyLength(16));
+        assertTrue(KeyringReaderImpl.isValidKeyLength(32));
+        assertFalse(KeyringReaderImpl.isValidKeyLength(31));
+    }
+
+    private SecretKey writeKey(String collectionID, SecretKey key, IvParameterSpec iv) throws Exception {
+        SecretKey collectionKey = newSecretKey();
+        encryptor.encryptToFile(Collections.singletonList(new CollectionKey(collectionKey, collectionID)),
+                keyringDir, key, iv);
+        return collectionKey;
+    }
+
+    private SecretKey newSecretKey() throws Exception {
+        return KeyGenerator.getInstance("AES").generateKey();
+    }
+
+    private IvParameterSpec newIV() {
+        byte[] iv = new byte[16];
+        new SecureRandom().nextBytes(iv);
+        return new IvParameterSpec(iv);
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.onsdigital.rekey.report;
+
+import com.github.onsdigital.rekey.RekeyException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ProgressLoggerTest {
+
+    private ProgressLogger progress;
+
+    @Before
+    public void setUp() {
+        this.progress = new ProgressLogger();
+    }
+
+    @After
+    public void tearDown() {
+        progress.close();
+    }
+
+    @Test
+    public void testStart_negativeInterval_shouldThrowEx() {
+        assertThrows(RekeyException.class, () -> progress.start(-1));
+    }
+
+    @Test
+    public void testStart_zeroInterval_shouldDisable() throws Exception {
+        progress.start(0);
+
+        assertFalse(progress.isStarted());
+        progress.track("tar", () -> {
+            throw new AssertionError("count should not be read when progress is disabled");
+        }).close();
+    }
+
+    @Test
+    public void testTrack_shouldReadCountEachInterval() throws Exception {
+        progress.start(10);
+        assertTrue(progress.isStarted());
+
+        CountDownLatch reads = new CountDownLatch(3);
+        try (RekeyReport.Phase p = progress.track("rekey", () -> {
+            reads.countDown();
+            return 0;
+        })) {
+            assertTrue(reads.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testProgressLine() {
+        long tenSeconds = TimeUnit.SECONDS.toNanos(10);
+
+        assertThat(ProgressLogger.progressLine("tar", 2500, 10000, tenSeconds),
+                equalTo("tar: 2500/10000 keys (250/s, eta 30s)"));
+        assertThat(ProgressLogger.progressLine("tar", 2500, 0, tenSeconds), equalTo("tar: 2500 keys (250/s)"));
+        assertThat(ProgressLogger.progressLine("tar", 0, 10000, tenSeconds),
+                equalTo("tar: 0/10000 keys (0/s, eta unknown)"));
+        assertThat(ProgressLogger.completedLine("rekey", 10000, tenSeconds), equalTo("rekey: 10000 keys in 10s (1000/s)"));
+    }
+
+    @Test
+    public void testDuration() {
+        assertThat(ProgressLogger.duration(59), equalTo("59s"));
+        assertThat(ProgressLogger.duration(125), equalTo("2m05s"));
+        assertThat(ProgressLogger.duration(3725), equalTo("1h02m05s"));
+    }
+}
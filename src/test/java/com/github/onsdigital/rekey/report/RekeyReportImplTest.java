@@ -0,0 +1,97 @@
+package com.github.onsdigital.rekey.report;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RekeyReportImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RekeyReport report;
+
+    @Before
+    public void setUp() {
+        this.report = new RekeyReportImpl();
+        report.start();
+    }
+
+    @Test
+    public void testPhase_shouldAddTimesTogether() throws Exception {
+        try (RekeyReport.Phase p = report.phase("move")) {
+            Thread.sleep(5);
+        }
+        long first = report.getPhaseNanos("move");
+
+        try (RekeyReport.Phase p = report.phase("move")) {
+            Thread.sleep(5);
+        }
+
+        assertTrue(first >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(report.getPhaseNanos("move") >= first + TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(report.getPhaseNanos("tar"), equalTo(0L));
+    }
+
+    @Test
+    public void testToJson() throws Exception {
+        try (RekeyReport.Phase p = report.phase("tar")) {
+            report.addBytesRead(32);
+        }
+        for (int i = 1; i <= 100; i++) {
+            report.recordLatency(Operation.DECRYPT, TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        report.addBytesWritten(48);
+        report.setKeyCount(2);
+        report.finish(true);
+
+        String json = report.toJson();
+
+        assertThat(json, containsString("\"status\": \"success\""));
+        assertThat(json, containsString("\"tar\": "));
+        assertThat(json, containsString("\"bytes\": {\"read\": 32, \"written\": 48}"));
+        assertThat(json, containsString("\"keys\": 2"));
+        assertThat(json, containsString("\"read\": {\"count\": 0, \"p50\": 0.000"));
+        assertThat(json, containsString("\"decrypt\": {\"count\": 100, \"p50\": 51.199, \"p90\": 90.111, " +
+                "\"p99\": 100.000, \"p999\": 100.000, \"max\": 100.000}"));
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        report.finish(false);
+        Path dest = folder.getRoot().toPath().resolve("report.json");
+
+        report.write(dest);
+
+        String json = new String(Files.readAllBytes(dest), StandardCharsets.UTF_8);
+        assertThat(json, equalTo(report.toJson()));
+        assertThat(json, containsString("\"status\": \"failed\""));
+    }
+
+    @Test
+    public void testLatencyHistogram_percentileShouldBeWithinBucketError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 1_000_000; v++) {
+            h.record(v);
+        }
+
+        assertThat(h.getCount(), equalTo(1_000_000L));
+        assertThat(h.getMax(), equalTo(1_000_000L));
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            double expected = 1_000_000 * p / 100;
+            double actual = h.getPercentile(p);
+            assertTrue(actual >= expected && actual <= expected * 1.07);
+        }
+    }
+}